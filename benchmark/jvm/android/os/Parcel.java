@@ -0,0 +1,187 @@
+package android.os;
+
+import java.util.Arrays;
+
+/**
+ * JVM上替换android-all中的同名类, 原实现全部是native方法
+ * <p>
+ * 只实现库用到的方法, 数据布局与系统实现相同: 小端, 每个值按4字节对齐, 字符串为长度加UTF-16字符和结尾的0。
+ * 写入开销与设备上不同, 只适合比较同一环境下的不同写法。
+ */
+public final class Parcel {
+
+    private byte[] mData = new byte[256];
+
+    private int mDataSize;
+
+    private int mDataPosition;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        mDataSize = 0;
+        mDataPosition = 0;
+    }
+
+    public int dataSize() {
+        return mDataSize;
+    }
+
+    public int dataPosition() {
+        return mDataPosition;
+    }
+
+    public int dataAvail() {
+        return Math.max(0, mDataSize - mDataPosition);
+    }
+
+    public void setDataPosition(int pos) {
+        mDataPosition = Math.max(0, Math.min(pos, mDataSize));
+    }
+
+    public void setDataSize(int size) {
+        ensureCapacity(size);
+        mDataSize = size;
+        mDataPosition = Math.min(mDataPosition, size);
+    }
+
+    public void writeInt(int val) {
+        int pos = grow(4);
+        putInt(pos, val);
+    }
+
+    public void writeLong(long val) {
+        int pos = grow(8);
+        putInt(pos, (int) val);
+        putInt(pos + 4, (int) (val >>> 32));
+    }
+
+    public void writeByte(byte val) {
+        writeInt(val);
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int length = val.length();
+        writeInt(length);
+        int pos = grow(align((length + 1) * 2));
+        for (int i = 0; i < length; i++) {
+            char c = val.charAt(i);
+            mData[pos++] = (byte) c;
+            mData[pos++] = (byte) (c >> 8);
+        }
+    }
+
+    public void writeByteArray(byte[] b) {
+        writeByteArray(b, 0, (b != null) ? b.length : 0);
+    }
+
+    public void writeByteArray(byte[] b, int offset, int len) {
+        if (b == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(len);
+        int pos = grow(align(len));
+        System.arraycopy(b, offset, mData, pos, len);
+    }
+
+    public int readInt() {
+        if (mDataPosition + 4 > mDataSize) {
+            return 0;
+        }
+        int val = getInt(mDataPosition);
+        mDataPosition += 4;
+        return val;
+    }
+
+    public long readLong() {
+        long low = readInt() & 0xffffffffL;
+        long high = readInt();
+        return (high << 32) | low;
+    }
+
+    public byte readByte() {
+        return (byte) readInt();
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        int size = align((length + 1) * 2);
+        if (mDataPosition + size > mDataSize) {
+            return null;
+        }
+        char[] chars = new char[length];
+        int pos = mDataPosition;
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((mData[pos] & 0xff) | ((mData[pos + 1] & 0xff) << 8));
+            pos += 2;
+        }
+        mDataPosition += size;
+        return new String(chars);
+    }
+
+    public byte[] createByteArray() {
+        int length = readInt();
+        if (length < 0 || mDataPosition + align(length) > mDataSize) {
+            return null;
+        }
+        byte[] b = Arrays.copyOfRange(mData, mDataPosition, mDataPosition + length);
+        mDataPosition += align(length);
+        return b;
+    }
+
+    public byte[] marshall() {
+        return Arrays.copyOf(mData, mDataSize);
+    }
+
+    public void unmarshall(byte[] data, int offset, int length) {
+        setDataSize(length);
+        System.arraycopy(data, offset, mData, 0, length);
+        mDataPosition = 0;
+    }
+
+    private static int align(int size) {
+        return (size + 3) & ~3;
+    }
+
+    // 在当前位置预留size字节, 返回起始位置
+    private int grow(int size) {
+        int pos = mDataPosition;
+        ensureCapacity(pos + size);
+        // 对齐填充清零, 与系统实现一致
+        Arrays.fill(mData, pos, pos + size, (byte) 0);
+        mDataPosition = pos + size;
+        mDataSize = Math.max(mDataSize, mDataPosition);
+        return pos;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > mData.length) {
+            mData = Arrays.copyOf(mData, Math.max(size, mData.length * 2));
+        }
+    }
+
+    private void putInt(int pos, int val) {
+        mData[pos] = (byte) val;
+        mData[pos + 1] = (byte) (val >> 8);
+        mData[pos + 2] = (byte) (val >> 16);
+        mData[pos + 3] = (byte) (val >> 24);
+    }
+
+    private int getInt(int pos) {
+        return (mData[pos] & 0xff) | ((mData[pos + 1] & 0xff) << 8) | ((mData[pos + 2] & 0xff) << 16)
+                | ((mData[pos + 3] & 0xff) << 24);
+    }
+}
@@ -0,0 +1,49 @@
+package android.os;
+
+/**
+ * JVM上替换android-all中的同名类, 原实现依赖native方法
+ * <p>
+ * 以JVM启动后的时间代替开机后的时间。
+ */
+public final class SystemClock {
+
+    private static final long START = System.nanoTime();
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return elapsedRealtimeNanos() / 1000000;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime() - START;
+    }
+
+    public static long uptimeMillis() {
+        return elapsedRealtime();
+    }
+
+    public static long currentThreadTimeMillis() {
+        return elapsedRealtime();
+    }
+
+    public static void sleep(long ms) {
+        long end = uptimeMillis() + ms;
+        boolean interrupted = false;
+        while (true) {
+            long remaining = end - uptimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                Thread.sleep(remaining);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package android.os;
+
+/**
+ * JVM上替换android-all中的同名类, 原实现依赖native方法
+ * <p>
+ * 只提供{@link Build}初始化需要的属性, 系统版本固定为targetSdkVersion。
+ */
+public class SystemProperties {
+
+    private static final String SDK = "19";
+
+    private static final String RELEASE = "4.4";
+
+    private SystemProperties() {
+    }
+
+    public static String get(String key) {
+        return get(key, "");
+    }
+
+    public static String get(String key, String def) {
+        if ("ro.build.version.sdk".equals(key)) {
+            return SDK;
+        }
+        if ("ro.build.version.release".equals(key)) {
+            return RELEASE;
+        }
+        return def;
+    }
+
+    public static int getInt(String key, int def) {
+        try {
+            return Integer.parseInt(get(key));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public static long getLong(String key, long def) {
+        try {
+            return Long.parseLong(get(key));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean def) {
+        String value = get(key);
+        if ("1".equals(value) || "true".equals(value)) {
+            return true;
+        }
+        if ("0".equals(value) || "false".equals(value)) {
+            return false;
+        }
+        return def;
+    }
+}
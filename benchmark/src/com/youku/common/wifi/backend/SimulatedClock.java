@@ -0,0 +1,57 @@
+package com.youku.common.wifi.backend;
+
+/**
+ * 手动推进的时钟, 与{@link SimulatedWifiBackend}一起使用
+ * <p>
+ * 时间只在调用{@link #advance(long)}或{@link #set(long)}时变化, 缓存过期、扫描预算和持续运行测试
+ * 可以不等待真实时间, 结果也不受机器快慢影响。
+ */
+public class SimulatedClock implements WifiClock {
+
+    private volatile long mNow;
+
+    public SimulatedClock() {
+        this(0);
+    }
+
+    /**
+     * @param start
+     *            初始时间(毫秒)
+     */
+    public SimulatedClock(long start) {
+        mNow = start;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return mNow;
+    }
+
+    /**
+     * 向前推进时间
+     *
+     * @param millis
+     *            毫秒, 不能为负
+     * @return 推进后的时间
+     */
+    public synchronized long advance(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis < 0: " + millis);
+        }
+        mNow += millis;
+        return mNow;
+    }
+
+    /**
+     * 设置当前时间, 不能倒退
+     *
+     * @param now
+     *            毫秒
+     */
+    public synchronized void set(long now) {
+        if (now < mNow) {
+            throw new IllegalArgumentException("time goes backwards: " + now + " < " + mNow);
+        }
+        mNow = now;
+    }
+}
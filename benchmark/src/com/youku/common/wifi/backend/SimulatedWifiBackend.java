@@ -0,0 +1,774 @@
+package com.youku.common.wifi.backend;
+
+import android.net.NetworkInfo;
+import android.net.wifi.ScanResult;
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiManager;
+import com.youku.common.wifi.model.ConnectPolicy;
+import com.youku.common.wifi.model.ConnectionSnapshot;
+import com.youku.common.wifi.model.ScanSnapshot;
+import com.youku.common.wifi.worker.ConfiguredNetworkIndex;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存中的Wi-Fi模拟, 用于在JVM上做吞吐和长时间运行的测试
+ * <p>
+ * AP列表、扫描延迟和失败率、信号抖动、supplicant状态序列及认证/连接失败都可以配置。
+ * 随机数由种子决定, 相同的种子和操作顺序得到相同的结果(不计线程调度)。
+ * 事件在构造时传入的执行器上回调, 时间来自构造时传入的{@link WifiClock}, 使用{@link SimulatedClock}可以手动推进。
+ * 扫描结果仍是ScanResult, 在JVM上运行需要android.jar的实现, 见pom.xml。
+ */
+public class SimulatedWifiBackend implements WifiBackend {
+
+    /**
+     * 默认扫描耗时(毫秒)
+     */
+    public static final long DEFAULT_SCAN_LATENCY = 1000;
+
+    /**
+     * 默认supplicant每个状态之间的间隔(毫秒)
+     */
+    public static final long DEFAULT_STEP_DELAY = 50;
+
+    private static final String[] CAPABILITIES = {
+            "[WPA2-PSK-CCMP][ESS]",
+            "[WPA-PSK-TKIP+CCMP][WPA2-PSK-TKIP+CCMP][ESS]",
+            "[ESS]",
+            "[WEP][ESS]",
+            "[WPA2-EAP-CCMP][ESS]",
+            "[RSN-SAE-CCMP][ESS]",
+    };
+
+    // 192.168.0.1, 低字节在前
+    private static final int GATEWAY = 0x0100A8C0;
+
+    private static final String MAC_ADDRESS = "02:00:00:00:00:00";
+
+    private static Constructor<ScanResult> sScanResultConstructor;
+
+    private static volatile Object sUnsafe;
+
+    private static Method sAllocateInstance;
+
+    private final ScheduledExecutorService mScheduler;
+
+    private final Random mRandom;
+
+    private final WifiClock mClock;
+
+    private final List<WifiEvent.Listener> mListeners = new CopyOnWriteArrayList<WifiEvent.Listener>();
+
+    // BSSID -> AP, 保持添加顺序
+    private final Map<String, SimulatedAp> mAccessPoints = new LinkedHashMap<String, SimulatedAp>();
+
+    private final Map<Integer, WifiConfiguration> mConfigs = new LinkedHashMap<Integer, WifiConfiguration>();
+
+    private final Set<String> mAuthFailureSsids = new HashSet<String>();
+
+    private int mNextNetworkId = 0;
+
+    private boolean mEnabled = true;
+
+    private boolean mIsScanning = false;
+
+    // 每次发起连接递增, 用于中止旧的状态序列
+    private int mConnectGeneration = 0;
+
+    private int mNetworkId = -1;
+
+    private SimulatedAp mCurrent;
+
+    private int mIpAddress = 0;
+
+    private long mScanLatency = DEFAULT_SCAN_LATENCY;
+
+    private float mScanFailureRate = 0;
+
+    private int mRssiJitter = 3;
+
+    private long mStepDelay = DEFAULT_STEP_DELAY;
+
+    private float mConnectFailureRate = 0;
+
+    private long mScanCount = 0;
+
+    private long mScanFailedCount = 0;
+
+    private long mConnectCount = 0;
+
+    private long mConnectedCount = 0;
+
+    private long mAuthFailedCount = 0;
+
+    private long mEventCount = 0;
+
+    /**
+     * 使用从创建时开始计时的真实时钟
+     *
+     * @param scheduler
+     *            模拟延迟和回调事件的执行器
+     * @param seed
+     *            随机数种子
+     */
+    public SimulatedWifiBackend(ScheduledExecutorService scheduler, long seed) {
+        this(scheduler, seed, new WifiClock() {
+
+            private final long mStartTime = System.nanoTime();
+
+            @Override
+            public long elapsedRealtime() {
+                return (System.nanoTime() - mStartTime) / 1000000;
+            }
+        });
+    }
+
+    /**
+     * @param scheduler
+     *            模拟延迟和回调事件的执行器
+     * @param seed
+     *            随机数种子
+     * @param clock
+     *            {@link #elapsedRealtime()}的来源, 如{@link SimulatedClock}, 不影响scheduler的延迟
+     */
+    public SimulatedWifiBackend(ScheduledExecutorService scheduler, long seed, WifiClock clock) {
+        mScheduler = scheduler;
+        mRandom = new Random(seed);
+        mClock = clock;
+    }
+
+    // ---------------- 配置 ----------------
+
+    /**
+     * 添加或替换一个AP
+     *
+     * @param ssid
+     *            不带引号的SSID
+     * @param bssid
+     *            如02:00:00:00:00:01
+     * @param capabilities
+     *            与ScanResult.capabilities格式相同
+     * @param frequency
+     *            MHz
+     * @param level
+     *            基准信号强度, 每次扫描在其上叠加抖动
+     */
+    public synchronized void addAccessPoint(String ssid, String bssid, String capabilities, int frequency, int level) {
+        mAccessPoints.put(bssid, new SimulatedAp(ssid, bssid, capabilities, frequency, level));
+    }
+
+    public synchronized void removeAccessPoint(String bssid) {
+        SimulatedAp ap = mAccessPoints.remove(bssid);
+        if (ap != null && ap == mCurrent) {
+            dropConnectionLocked();
+        }
+    }
+
+    /**
+     * 修改AP的基准信号强度, 用于模拟移动
+     *
+     * @param bssid
+     *            BSSID
+     * @param level
+     *            dBm
+     */
+    public synchronized void setLevel(String bssid, int level) {
+        SimulatedAp ap = mAccessPoints.get(bssid);
+        if (ap != null) {
+            ap.baseLevel = level;
+        }
+    }
+
+    /**
+     * 按种子生成一批AP, 每个SSID有若干个BSSID, 频段和加密方式轮流分配
+     *
+     * @param count
+     *            AP数量
+     * @param ssidCount
+     *            不同SSID的数量
+     */
+    public synchronized void generateAccessPoints(int count, int ssidCount) {
+        int base = mAccessPoints.size();
+        ssidCount = Math.max(1, ssidCount);
+        for (int i = 0; i < count; i++) {
+            int n = base + i;
+            int ssid = n % ssidCount;
+            String bssid = ScanSnapshot.formatBssid(0x020000000000L | n);
+            int frequency = (n % 3 == 0) ? 5180 + 20 * (n % 8) : 2412 + 5 * (n % 13);
+            int level = -40 - mRandom.nextInt(55);
+            addAccessPoint("sim-" + ssid, bssid, CAPABILITIES[ssid % CAPABILITIES.length], frequency, level);
+        }
+    }
+
+    public synchronized void clearAccessPoints() {
+        mAccessPoints.clear();
+        dropConnectionLocked();
+    }
+
+    public synchronized int getAccessPointCount() {
+        return mAccessPoints.size();
+    }
+
+    /**
+     * @param latency
+     *            从startScan()到发出扫描完成事件的时间(毫秒)
+     */
+    public synchronized void setScanLatency(long latency) {
+        mScanLatency = Math.max(0, latency);
+    }
+
+    /**
+     * @param rate
+     *            startScan()返回false的概率, 模拟系统限流
+     */
+    public synchronized void setScanFailureRate(float rate) {
+        mScanFailureRate = rate;
+    }
+
+    /**
+     * @param jitter
+     *            每次扫描信号强度的随机变化范围(dB)
+     */
+    public synchronized void setRssiJitter(int jitter) {
+        mRssiJitter = Math.max(0, jitter);
+    }
+
+    /**
+     * @param delay
+     *            supplicant每个状态之间的间隔(毫秒)
+     */
+    public synchronized void setStepDelay(long delay) {
+        mStepDelay = Math.max(0, delay);
+    }
+
+    /**
+     * @param rate
+     *            认证通过后连接失败的概率
+     */
+    public synchronized void setConnectFailureRate(float rate) {
+        mConnectFailureRate = rate;
+    }
+
+    /**
+     * 设置连接该SSID时是否报告认证错误, 模拟密码错误
+     *
+     * @param ssid
+     *            不带引号的SSID
+     * @param fail
+     *            是否失败
+     */
+    public synchronized void setAuthenticationFailure(String ssid, boolean fail) {
+        if (fail) {
+            mAuthFailureSsids.add(ssid);
+        } else {
+            mAuthFailureSsids.remove(ssid);
+        }
+    }
+
+    // ---------------- 统计 ----------------
+
+    public synchronized long getScanCount() {
+        return mScanCount;
+    }
+
+    public synchronized long getScanFailedCount() {
+        return mScanFailedCount;
+    }
+
+    public synchronized long getConnectCount() {
+        return mConnectCount;
+    }
+
+    public synchronized long getConnectedCount() {
+        return mConnectedCount;
+    }
+
+    public synchronized long getAuthFailedCount() {
+        return mAuthFailedCount;
+    }
+
+    public synchronized long getEventCount() {
+        return mEventCount;
+    }
+
+    // ---------------- WifiBackend ----------------
+
+    @Override
+    public long elapsedRealtime() {
+        return mClock.elapsedRealtime();
+    }
+
+    @Override
+    public synchronized boolean isWifiEnabled() {
+        return mEnabled;
+    }
+
+    @Override
+    public boolean setWifiEnabled(boolean enabled) {
+        List<WifiEvent> events = new ArrayList<WifiEvent>(2);
+        synchronized (this) {
+            if (mEnabled == enabled) {
+                return true;
+            }
+            mEnabled = enabled;
+            if (!enabled) {
+                mConnectGeneration++;
+                if (dropConnectionLocked()) {
+                    events.add(WifiEvent.networkStateChanged(NetworkInfo.DetailedState.DISCONNECTED));
+                }
+            }
+            events.add(WifiEvent.wifiStateChanged(enabled ? WifiManager.WIFI_STATE_ENABLED
+                    : WifiManager.WIFI_STATE_DISABLED));
+        }
+        post(events);
+        return true;
+    }
+
+    @Override
+    public boolean startScan() {
+        long latency;
+        synchronized (this) {
+            if (!mEnabled) {
+                return false;
+            }
+            mScanCount++;
+            if (mScanFailureRate > 0 && mRandom.nextFloat() < mScanFailureRate) {
+                mScanFailedCount++;
+                return false;
+            }
+            // 扫描进行中时合并
+            if (mIsScanning) {
+                return true;
+            }
+            mIsScanning = true;
+            latency = mScanLatency;
+        }
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                completeScan();
+            }
+        }, latency, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    @Override
+    public synchronized List<ScanResult> getScanResults() {
+        if (!mEnabled) {
+            return Collections.emptyList();
+        }
+        List<ScanResult> results = new ArrayList<ScanResult>(mAccessPoints.size());
+        for (SimulatedAp ap : mAccessPoints.values()) {
+            ScanResult result = newScanResult();
+            result.SSID = ap.ssid;
+            result.BSSID = ap.bssid;
+            result.capabilities = ap.capabilities;
+            result.frequency = ap.frequency;
+            result.level = ap.level;
+            results.add(result);
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized List<WifiConfiguration> getConfiguredNetworks() {
+        if (!mEnabled) {
+            return null;
+        }
+        return new ArrayList<WifiConfiguration>(mConfigs.values());
+    }
+
+    @Override
+    public int addNetwork(WifiConfiguration config) {
+        int networkId;
+        synchronized (this) {
+            if (config == null || config.SSID == null) {
+                return -1;
+            }
+            networkId = mNextNetworkId++;
+            config.networkId = networkId;
+            mConfigs.put(networkId, config);
+        }
+        post(WifiEvent.configuredNetworksChanged());
+        return networkId;
+    }
+
+    @Override
+    public int updateNetwork(WifiConfiguration config) {
+        synchronized (this) {
+            WifiConfiguration existing = (config != null) ? mConfigs.get(config.networkId) : null;
+            if (existing == null) {
+                return -1;
+            }
+            // 与系统相同, 为null的字段保留原值
+            if (config.SSID != null) {
+                existing.SSID = config.SSID;
+            }
+            if (config.BSSID != null) {
+                existing.BSSID = config.BSSID;
+            }
+        }
+        post(WifiEvent.configuredNetworksChanged());
+        return config.networkId;
+    }
+
+    @Override
+    public boolean enableNetwork(int networkId, boolean disableOthers) {
+        synchronized (this) {
+            if (!mEnabled || !mConfigs.containsKey(networkId)) {
+                return false;
+            }
+            mConnectCount++;
+        }
+        associate(networkId);
+        return true;
+    }
+
+    @Override
+    public boolean disableNetwork(int networkId) {
+        synchronized (this) {
+            if (!mConfigs.containsKey(networkId)) {
+                return false;
+            }
+            if (networkId != mNetworkId) {
+                return true;
+            }
+        }
+        return disconnect();
+    }
+
+    @Override
+    public boolean removeNetwork(int networkId) {
+        boolean current;
+        synchronized (this) {
+            if (mConfigs.remove(networkId) == null) {
+                return false;
+            }
+            current = networkId == mNetworkId;
+        }
+        if (current) {
+            disconnect();
+        }
+        post(WifiEvent.configuredNetworksChanged());
+        return true;
+    }
+
+    @Override
+    public boolean saveConfiguration() {
+        return true;
+    }
+
+    @Override
+    public boolean disconnect() {
+        synchronized (this) {
+            mConnectGeneration++;
+            if (!dropConnectionLocked()) {
+                return true;
+            }
+        }
+        List<WifiEvent> events = new ArrayList<WifiEvent>(2);
+        events.add(WifiEvent.supplicantStateChanged(SupplicantState.DISCONNECTED, false));
+        events.add(WifiEvent.networkStateChanged(NetworkInfo.DetailedState.DISCONNECTED));
+        post(events);
+        return true;
+    }
+
+    @Override
+    public boolean reconnect() {
+        int networkId;
+        synchronized (this) {
+            networkId = mNetworkId;
+        }
+        if (networkId >= 0) {
+            return true;
+        }
+        return reassociateLast();
+    }
+
+    @Override
+    public boolean reassociate() {
+        int networkId;
+        synchronized (this) {
+            networkId = mNetworkId;
+        }
+        if (networkId < 0) {
+            return reassociateLast();
+        }
+        associate(networkId);
+        return true;
+    }
+
+    @Override
+    public synchronized String getCurrentBssid() {
+        return (mCurrent != null) ? mCurrent.bssid : null;
+    }
+
+    @Override
+    public synchronized int getCurrentNetworkId() {
+        return mNetworkId;
+    }
+
+    @Override
+    public synchronized ConnectionSnapshot getConnectionSnapshot() {
+        if (mCurrent == null) {
+            return ConnectionSnapshot.EMPTY;
+        }
+        boolean connected = mIpAddress != 0;
+        return ConnectionSnapshot.create(connected, "\"" + mCurrent.ssid + "\"", mCurrent.bssid, mNetworkId,
+                mIpAddress, MAC_ADDRESS, ConnectPolicy.isHighBand(mCurrent.frequency) ? 433 : 72, mCurrent.level,
+                connected ? GATEWAY : 0, 0, connected ? GATEWAY : 0, elapsedRealtime());
+    }
+
+    @Override
+    public void addEventListener(WifiEvent.Listener listener) {
+        if (listener != null && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeEventListener(WifiEvent.Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    // ---------------- 内部实现 ----------------
+
+    private void completeScan() {
+        int rssi;
+        synchronized (this) {
+            mIsScanning = false;
+            if (!mEnabled) {
+                return;
+            }
+            for (SimulatedAp ap : mAccessPoints.values()) {
+                int jitter = (mRssiJitter > 0) ? mRandom.nextInt(mRssiJitter * 2 + 1) - mRssiJitter : 0;
+                ap.level = ap.baseLevel + jitter;
+            }
+            rssi = (mCurrent != null) ? mCurrent.level : Integer.MIN_VALUE;
+        }
+        List<WifiEvent> events = new ArrayList<WifiEvent>(2);
+        if (rssi != Integer.MIN_VALUE) {
+            events.add(WifiEvent.rssiChanged(rssi));
+        }
+        events.add(WifiEvent.scanResultsAvailable());
+        dispatch(events);
+    }
+
+    // 重新连接最后一个配置的网络
+    private boolean reassociateLast() {
+        int networkId = -1;
+        synchronized (this) {
+            for (Integer id : mConfigs.keySet()) {
+                networkId = id;
+            }
+        }
+        if (networkId < 0) {
+            return false;
+        }
+        associate(networkId);
+        return true;
+    }
+
+    private void associate(int networkId) {
+        int generation;
+        synchronized (this) {
+            generation = ++mConnectGeneration;
+        }
+        scheduleStep(generation, networkId, 0);
+    }
+
+    private void scheduleStep(final int generation, final int networkId, final int step) {
+        long delay;
+        synchronized (this) {
+            delay = mStepDelay;
+        }
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runStep(generation, networkId, step);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * supplicant状态序列: ASSOCIATING -> ASSOCIATED -> FOUR_WAY_HANDSHAKE -> GROUP_HANDSHAKE -> COMPLETED,
+     * 随后网络状态 OBTAINING_IPADDR -> CONNECTED。没有可用的AP时停留在ASSOCIATING, 由调用者超时。
+     */
+    private void runStep(int generation, int networkId, int step) {
+        List<WifiEvent> events = new ArrayList<WifiEvent>(2);
+        boolean next = false;
+        synchronized (this) {
+            WifiConfiguration config = mConfigs.get(networkId);
+            if (generation != mConnectGeneration || !mEnabled || config == null) {
+                return;
+            }
+            switch (step) {
+                case 0:
+                    if (dropConnectionLocked()) {
+                        events.add(WifiEvent.networkStateChanged(NetworkInfo.DetailedState.DISCONNECTED));
+                    }
+                    events.add(WifiEvent.supplicantStateChanged(SupplicantState.ASSOCIATING, false));
+                    next = findTarget(config) != null;
+                    break;
+                case 1:
+                    events.add(WifiEvent.supplicantStateChanged(SupplicantState.ASSOCIATED, false));
+                    next = true;
+                    break;
+                case 2:
+                    events.add(WifiEvent.supplicantStateChanged(SupplicantState.FOUR_WAY_HANDSHAKE, false));
+                    if (mAuthFailureSsids.contains(ConfiguredNetworkIndex.unquote(config.SSID))) {
+                        mAuthFailedCount++;
+                        events.add(WifiEvent.supplicantStateChanged(SupplicantState.DISCONNECTED, true));
+                    } else if (mConnectFailureRate > 0 && mRandom.nextFloat() < mConnectFailureRate) {
+                        events.add(WifiEvent.supplicantStateChanged(SupplicantState.DISCONNECTED, false));
+                    } else {
+                        next = true;
+                    }
+                    break;
+                case 3:
+                    events.add(WifiEvent.supplicantStateChanged(SupplicantState.GROUP_HANDSHAKE, false));
+                    next = true;
+                    break;
+                case 4:
+                    SimulatedAp target = findTarget(config);
+                    if (target == null) {
+                        events.add(WifiEvent.supplicantStateChanged(SupplicantState.DISCONNECTED, false));
+                        break;
+                    }
+                    mNetworkId = networkId;
+                    mCurrent = target;
+                    mIpAddress = 0;
+                    events.add(WifiEvent.supplicantStateChanged(SupplicantState.COMPLETED, false));
+                    events.add(WifiEvent.networkStateChanged(NetworkInfo.DetailedState.OBTAINING_IPADDR));
+                    next = true;
+                    break;
+                default:
+                    // 192.168.0.x
+                    mIpAddress = 0x0000A8C0 | ((2 + networkId % 250) << 24);
+                    mConnectedCount++;
+                    events.add(WifiEvent.networkStateChanged(NetworkInfo.DetailedState.CONNECTED));
+                    break;
+            }
+        }
+        dispatch(events);
+        if (next) {
+            scheduleStep(generation, networkId, step + 1);
+        }
+    }
+
+    // 配置固定了BSSID时只连接该AP, 否则连接同SSID中信号最强的
+    private SimulatedAp findTarget(WifiConfiguration config) {
+        if (config.BSSID != null && !"any".equals(config.BSSID)) {
+            SimulatedAp ap = mAccessPoints.get(config.BSSID);
+            return (ap != null && ap.ssid.equals(ConfiguredNetworkIndex.unquote(config.SSID))) ? ap : null;
+        }
+        String ssid = ConfiguredNetworkIndex.unquote(config.SSID);
+        SimulatedAp best = null;
+        for (SimulatedAp ap : mAccessPoints.values()) {
+            if (ap.ssid.equals(ssid) && (best == null || ap.level > best.level)) {
+                best = ap;
+            }
+        }
+        return best;
+    }
+
+    // 需持有锁, 返回之前是否有连接
+    private boolean dropConnectionLocked() {
+        boolean connected = mCurrent != null;
+        mNetworkId = -1;
+        mCurrent = null;
+        mIpAddress = 0;
+        return connected;
+    }
+
+    private void post(WifiEvent event) {
+        List<WifiEvent> events = new ArrayList<WifiEvent>(1);
+        events.add(event);
+        post(events);
+    }
+
+    // 在执行器上回调, 不在调用者线程
+    private void post(final List<WifiEvent> events) {
+        mScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(events);
+            }
+        });
+    }
+
+    private void dispatch(List<WifiEvent> events) {
+        synchronized (this) {
+            mEventCount += events.size();
+        }
+        for (WifiEvent event : events) {
+            for (WifiEvent.Listener listener : mListeners) {
+                listener.onWifiEvent(event);
+            }
+        }
+    }
+
+    // ScanResult的无参构造函数在部分版本中是隐藏的, 更早的版本中没有, 这时不经构造函数分配实例, 字段由调用者填写
+    private static ScanResult newScanResult() {
+        try {
+            if (sScanResultConstructor == null && sUnsafe == null) {
+                try {
+                    Constructor<ScanResult> constructor = ScanResult.class.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    sScanResultConstructor = constructor;
+                } catch (NoSuchMethodException e) {
+                    Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                    Field field = unsafeClass.getDeclaredField("theUnsafe");
+                    field.setAccessible(true);
+                    sAllocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+                    sUnsafe = field.get(null);
+                }
+            }
+            if (sScanResultConstructor != null) {
+                return sScanResultConstructor.newInstance();
+            }
+            return (ScanResult) sAllocateInstance.invoke(sUnsafe, ScanResult.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("cannot create ScanResult", e);
+        }
+    }
+
+    private static class SimulatedAp {
+
+        final String ssid;
+
+        final String bssid;
+
+        final String capabilities;
+
+        final int frequency;
+
+        int baseLevel;
+
+        // 最近一次扫描时的信号强度
+        int level;
+
+        SimulatedAp(String ssid, String bssid, String capabilities, int frequency, int level) {
+            this.ssid = ssid;
+            this.bssid = bssid;
+            this.capabilities = capabilities;
+            this.frequency = frequency;
+            this.baseLevel = level;
+            this.level = level;
+        }
+    }
+}
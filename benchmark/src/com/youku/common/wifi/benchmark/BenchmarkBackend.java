@@ -0,0 +1,51 @@
+package com.youku.common.wifi.benchmark;
+
+import android.net.wifi.ScanResult;
+import com.youku.common.wifi.backend.SimulatedWifiBackend;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 基准测试用的模拟实现
+ * <p>
+ * 由固定种子生成AP, 把中间的一个AP当作当前连接, 每次读取当前BSSID时消耗ipcCost个CPU单位, 模拟一次binder调用。
+ */
+class BenchmarkBackend extends SimulatedWifiBackend {
+
+    static final long SEED = 20150601L;
+
+    private final String mCurrentBssid;
+
+    private final long mIpcCost;
+
+    private long mIpcCount = 0;
+
+    BenchmarkBackend(ScheduledExecutorService scheduler, int apCount, long ipcCost) {
+        super(scheduler, SEED);
+        setRssiJitter(0);
+        generateAccessPoints(apCount, Math.max(1, apCount / 3));
+        List<ScanResult> results = getScanResults();
+        mCurrentBssid = results.isEmpty() ? null : results.get(results.size() / 2).BSSID;
+        mIpcCost = ipcCost;
+    }
+
+    @Override
+    public String getCurrentBssid() {
+        mIpcCount++;
+        if (mIpcCost > 0) {
+            Blackhole.consumeCPU(mIpcCost);
+        }
+        return mCurrentBssid;
+    }
+
+    /**
+     * 读取当前BSSID的次数, 不加锁, 只在单线程基准中使用
+     *
+     * @return count
+     */
+    long getIpcCount() {
+        return mIpcCount;
+    }
+}
@@ -0,0 +1,77 @@
+package com.youku.common.wifi.benchmark;
+
+import android.net.wifi.ScanResult;
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.AccessPointCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccessPoint列表的紧凑编码, 不依赖Parcel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({ "10", "100", "300", "1000" })
+    public int apCount;
+
+    private List<AccessPoint> mAccessPoints;
+
+    private byte[] mEncoded;
+
+    private ByteBuffer mBuffer;
+
+    @Setup
+    public void setUp() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            mAccessPoints = new ArrayList<AccessPoint>();
+            for (ScanResult result : new BenchmarkBackend(scheduler, apCount, 0).getScanResults()) {
+                mAccessPoints.add(AccessPoint.loadData(result));
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+        mEncoded = AccessPointCodec.encode(mAccessPoints);
+        mBuffer = ByteBuffer.allocateDirect(mEncoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return AccessPointCodec.encode(mAccessPoints);
+    }
+
+    @Benchmark
+    public List<AccessPoint> decode() {
+        return AccessPointCodec.decode(mEncoded);
+    }
+
+    @Benchmark
+    public List<AccessPoint> directBufferRoundTrip() {
+        mBuffer.clear();
+        AccessPointCodec.encode(mAccessPoints, mBuffer);
+        mBuffer.flip();
+        return AccessPointCodec.decode(mBuffer);
+    }
+}
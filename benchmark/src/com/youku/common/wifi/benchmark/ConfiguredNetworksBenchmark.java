@@ -0,0 +1,93 @@
+package com.youku.common.wifi.benchmark;
+
+import android.net.wifi.WifiConfiguration;
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.worker.ConfiguredNetworkIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已配置网络的转换
+ * <p>
+ * rebuildIndex与ConfiguredNetworkIndex失效后第一次查询的开销相同, 包括读取配置列表。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfiguredNetworksBenchmark {
+
+    private static final String[] KEY_MANAGEMENT = { "NONE", "WPA_PSK", "WPA_EAP" };
+
+    @Param({ "10", "100", "300", "1000" })
+    public int networkCount;
+
+    private ScheduledExecutorService mScheduler;
+
+    private BenchmarkBackend mBackend;
+
+    private ConfiguredNetworkIndex mIndex;
+
+    private List<WifiConfiguration> mConfigs;
+
+    @Setup
+    public void setUp() {
+        mScheduler = Executors.newSingleThreadScheduledExecutor();
+        mBackend = new BenchmarkBackend(mScheduler, 0, 0);
+        for (int i = 0; i < networkCount; i++) {
+            WifiConfiguration config = new WifiConfiguration();
+            config.SSID = "\"sim-" + i + "\"";
+            switch (i % KEY_MANAGEMENT.length) {
+                case 1:
+                    config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
+                    break;
+                case 2:
+                    config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_EAP);
+                    break;
+                default:
+                    config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+                    break;
+            }
+            config.status = WifiConfiguration.Status.ENABLED;
+            mBackend.addNetwork(config);
+        }
+        mConfigs = mBackend.getConfiguredNetworks();
+        // 不调用start(), 每次查询都重建索引
+        mIndex = new ConfiguredNetworkIndex(mBackend);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mScheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public void loadData(Blackhole blackhole) {
+        for (int i = 0; i < mConfigs.size(); i++) {
+            blackhole.consume(AccessPoint.loadData(mConfigs.get(i)));
+        }
+    }
+
+    @Benchmark
+    public List<AccessPoint> rebuildIndex() {
+        return mIndex.getAccessPoints();
+    }
+}
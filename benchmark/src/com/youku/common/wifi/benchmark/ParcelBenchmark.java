@@ -0,0 +1,102 @@
+package com.youku.common.wifi.benchmark;
+
+import android.net.wifi.ScanResult;
+import android.os.Parcel;
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.AccessPointCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccessPoint的Parcel序列化, writeCodec为整个列表使用AccessPointCodec
+ * <p>
+ * 需要可用的Parcel实现, 如在设备上运行或使用带本地库的android-all。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParcelBenchmark {
+
+    @Param({ "10", "100", "300", "1000" })
+    public int apCount;
+
+    private List<AccessPoint> mAccessPoints;
+
+    private Parcel mParcel;
+
+    @Setup
+    public void setUp() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            mAccessPoints = new ArrayList<AccessPoint>();
+            for (ScanResult result : new BenchmarkBackend(scheduler, apCount, 0).getScanResults()) {
+                mAccessPoints.add(AccessPoint.loadData(result));
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+        mParcel = Parcel.obtain();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mParcel.recycle();
+    }
+
+    @Benchmark
+    public int writeToParcel() {
+        Parcel parcel = mParcel;
+        parcel.setDataPosition(0);
+        parcel.setDataSize(0);
+        for (int i = 0; i < mAccessPoints.size(); i++) {
+            mAccessPoints.get(i).writeToParcel(parcel, 0);
+        }
+        return parcel.dataPosition();
+    }
+
+    @Benchmark
+    public int writeCodec() {
+        Parcel parcel = mParcel;
+        parcel.setDataPosition(0);
+        parcel.setDataSize(0);
+        AccessPointCodec.writeToParcel(mAccessPoints, parcel);
+        return parcel.dataPosition();
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        Parcel parcel = mParcel;
+        parcel.setDataPosition(0);
+        parcel.setDataSize(0);
+        for (int i = 0; i < mAccessPoints.size(); i++) {
+            mAccessPoints.get(i).writeToParcel(parcel, 0);
+        }
+        parcel.setDataPosition(0);
+        int count = 0;
+        for (int i = 0; i < mAccessPoints.size(); i++) {
+            if (AccessPoint.CREATOR.createFromParcel(parcel) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,121 @@
+package com.youku.common.wifi.benchmark;
+
+import android.net.wifi.ScanResult;
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.ApStatus;
+import com.youku.common.wifi.model.ScanSnapshot;
+import com.youku.common.wifi.worker.WifiSearcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扫描结果到AccessPoint的转换
+ * <p>
+ * receiverLoop与WiFiScanReceiver收到扫描完成事件后的转换相同, 每批结果读取一次当前BSSID;
+ * legacyLoop是原来的实现, 每个结果读取一次当前BSSID并把当前AP插入到列表头部, 用于对比。
+ * ipcCost为0时只计算本地开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanConversionBenchmark {
+
+    @Param({ "10", "100", "300", "1000" })
+    public int apCount;
+
+    /**
+     * 每次读取当前BSSID的开销, Blackhole.consumeCPU的单位
+     */
+    @Param({ "0", "2000" })
+    public long ipcCost;
+
+    private ScheduledExecutorService mScheduler;
+
+    private BenchmarkBackend mBackend;
+
+    private Searcher mSearcher;
+
+    private List<ScanResult> mScanResults;
+
+    @Setup
+    public void setUp() {
+        mScheduler = Executors.newSingleThreadScheduledExecutor();
+        mBackend = new BenchmarkBackend(mScheduler, apCount, ipcCost);
+        mSearcher = new Searcher(mBackend, mScheduler);
+        mScanResults = mBackend.getScanResults();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mScheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public void loadData(Blackhole blackhole) {
+        for (int i = 0; i < mScanResults.size(); i++) {
+            blackhole.consume(AccessPoint.loadData(mScanResults.get(i)));
+        }
+    }
+
+    @Benchmark
+    public List<AccessPoint> receiverLoop() {
+        return mSearcher.convert(mScanResults);
+    }
+
+    @Benchmark
+    public List<AccessPoint> legacyLoop() {
+        return mSearcher.legacyConvert(mScanResults);
+    }
+
+    @Benchmark
+    public ScanSnapshot snapshot() {
+        return ScanSnapshot.from(mScanResults, mBackend.getCurrentBssid(), 0);
+    }
+
+    // 通过子类调用protected的转换方法
+    private static class Searcher extends WifiSearcher {
+
+        Searcher(BenchmarkBackend backend, ScheduledExecutorService executor) {
+            super(backend, null, executor);
+        }
+
+        List<AccessPoint> convert(List<ScanResult> scanResults) {
+            return toAccessPoints(scanResults);
+        }
+
+        List<AccessPoint> legacyConvert(List<ScanResult> scanResults) {
+            List<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
+            for (ScanResult scanResult : scanResults) {
+                AccessPoint ap = AccessPoint.loadData(scanResult);
+                if (isCurrent(scanResult)) {
+                    ap.status = ApStatus.CURRENT;
+                    accessPoints.add(0, ap);
+                } else {
+                    ap.status = ApStatus.ENABLED;
+                    accessPoints.add(ap);
+                }
+            }
+            return accessPoints;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.youku.common.wifi.benchmark;
+
+import android.net.wifi.ScanResult;
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.SecurityInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 加密方式解析
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityBenchmark {
+
+    @Param({ "10", "100", "300", "1000" })
+    public int apCount;
+
+    private List<ScanResult> mScanResults;
+
+    private ScheduledExecutorService mScheduler;
+
+    @Setup
+    public void setUp() {
+        mScheduler = Executors.newSingleThreadScheduledExecutor();
+        mScanResults = new BenchmarkBackend(mScheduler, apCount, 0).getScanResults();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mScheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public void getSecurityString(Blackhole blackhole) {
+        for (int i = 0; i < mScanResults.size(); i++) {
+            blackhole.consume(Probe.securityString(mScanResults.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void securityInfo(Blackhole blackhole) {
+        for (int i = 0; i < mScanResults.size(); i++) {
+            blackhole.consume(SecurityInfo.of(mScanResults.get(i).capabilities));
+        }
+    }
+
+    // 通过子类调用protected的静态方法
+    private static class Probe extends AccessPoint {
+
+        static String securityString(ScanResult scanResult) {
+            return getSecurityString(scanResult);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.youku.common.wifi.model;
+
+import android.os.Parcel;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * AccessPointCodec和AccessPoint的Parcel编码
+ */
+public class AccessPointCodecTest {
+
+    @Test
+    public void roundTripKeepsFieldsAndNulls() {
+        List<AccessPoint> decoded = AccessPointCodec.decode(AccessPointCodec.encode(sample(), true));
+
+        assertEquals(3, decoded.size());
+        assertAccessPoint(sample().get(0), decoded.get(0));
+        AccessPoint empty = decoded.get(1);
+        assertNull(empty.ssid);
+        assertNull(empty.bssid);
+        assertNull(empty.securityString);
+        assertNull(empty.securityMode);
+        assertNull(empty.status);
+        assertEquals(-1, empty.networkId);
+        assertAccessPoint(sample().get(2), decoded.get(2));
+    }
+
+    @Test
+    public void nonCanonicalBssidIsKeptVerbatim() {
+        List<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
+        for (String bssid : new String[] { "00:11:22:AA:BB:CC", "0:1:2:3:4:5", "not a bssid", "02:00:00:00:00:01" }) {
+            AccessPoint ap = new AccessPoint();
+            ap.ssid = "guest";
+            ap.bssid = bssid;
+            accessPoints.add(ap);
+        }
+
+        List<AccessPoint> decoded = AccessPointCodec.decode(AccessPointCodec.encode(accessPoints));
+
+        for (int i = 0; i < accessPoints.size(); i++) {
+            assertEquals(accessPoints.get(i).bssid, decoded.get(i).bssid);
+        }
+    }
+
+    @Test
+    public void credentialsAreLeftOutByDefault() {
+        byte[] data = AccessPointCodec.encode(sample());
+
+        for (AccessPoint ap : AccessPointCodec.decode(data)) {
+            assertNull(ap.userName);
+            assertNull(ap.password);
+        }
+        assertFalse(new String(data).contains("secret-password"));
+        // ByteBuffer重载同样不包含
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        AccessPointCodec.encode(sample(), buffer);
+        buffer.flip();
+        assertEquals(3, AccessPointCodec.decode(buffer).size());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void parcelRoundTripIncludesCredentials() {
+        Parcel parcel = Parcel.obtain();
+        try {
+            AccessPointCodec.writeToParcel(sample(), parcel);
+            sample().get(0).writeToParcel(parcel, 0);
+            AccessPointCodec.writeToParcel(new ArrayList<AccessPoint>(), parcel);
+            parcel.setDataPosition(0);
+
+            List<AccessPoint> decoded = AccessPointCodec.readFromParcel(parcel);
+            for (int i = 0; i < decoded.size(); i++) {
+                assertAccessPoint(sample().get(i), decoded.get(i));
+            }
+            AccessPoint single = AccessPoint.CREATOR.createFromParcel(parcel);
+            assertAccessPoint(sample().get(0), single);
+            assertEquals(0, AccessPointCodec.readFromParcel(parcel).size());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void truncatedInputIsRejected() {
+        byte[] data = AccessPointCodec.encode(sample());
+        for (int length = 0; length < data.length; length++) {
+            try {
+                AccessPointCodec.decode(Arrays.copyOf(data, length));
+                fail("decoded " + length + " of " + data.length + " bytes");
+            } catch (IllegalArgumentException e) {
+                // 预期
+            }
+        }
+    }
+
+    @Test
+    public void wrongMagicOrVersionIsRejected() {
+        byte[] data = AccessPointCodec.encode(sample());
+        byte[] version = data.clone();
+        version[2] = (byte) (AccessPointCodec.VERSION + 1);
+        byte[] magic = data.clone();
+        magic[0] = 'X';
+        for (byte[] corrupted : new byte[][] { version, magic }) {
+            try {
+                AccessPointCodec.decode(corrupted);
+                fail("decoded " + Arrays.toString(corrupted));
+            } catch (IllegalArgumentException e) {
+                // 预期
+            }
+        }
+    }
+
+    @Test
+    public void negativeLengthsAreRejected() {
+        byte[] minusOne = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f };
+        byte[][] inputs = {
+                // 负的AP数量
+                concat(new byte[] { 'W', 'A', 1 }, minusOne, new byte[] { 0 }),
+                // 负的字符串数量
+                concat(new byte[] { 'W', 'A', 1, 0 }, minusOne),
+                // 负的字符串长度
+                concat(new byte[] { 'W', 'A', 1, 0, 1 }, minusOne, new byte[] { 'a', 'b', 'c' }),
+                // 负的字符串下标
+                concat(new byte[] { 'W', 'A', 1, 1, 0, 0 }, minusOne, new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 }) };
+        for (byte[] input : inputs) {
+            try {
+                AccessPointCodec.decode(input);
+                fail("decoded " + Arrays.toString(input));
+            } catch (IllegalArgumentException e) {
+                // 预期
+            }
+        }
+    }
+
+    @Test
+    public void emptyListRoundTrips() {
+        byte[] data = AccessPointCodec.encode(new ArrayList<AccessPoint>());
+        assertEquals(0, AccessPointCodec.decode(data).size());
+        assertArrayEquals(data, AccessPointCodec.encode(AccessPointCodec.decode(data)));
+    }
+
+    private static List<AccessPoint> sample() {
+        AccessPoint psk = new AccessPoint();
+        psk.ssid = "office";
+        psk.bssid = "02:00:00:00:00:0a";
+        psk.securityString = "[WPA2-PSK-CCMP][ESS]";
+        psk.securityMode = SecurityMode.PSK;
+        psk.status = ApStatus.CURRENT;
+        psk.password = "secret-password";
+        psk.networkId = 7;
+        psk.level = -48;
+        psk.frequency = 5180;
+
+        AccessPoint empty = new AccessPoint();
+        empty.networkId = -1;
+        empty.securityMode = null;
+        empty.status = null;
+
+        AccessPoint eap = new AccessPoint();
+        eap.ssid = "办公室";
+        eap.bssid = "02:00:00:00:00:0b";
+        eap.securityString = "[WPA2-EAP-CCMP]";
+        eap.securityMode = SecurityMode.EAP;
+        eap.status = ApStatus.ENABLED;
+        eap.userName = "user";
+        eap.password = "secret-password";
+        eap.networkId = 0;
+        eap.level = -90;
+        eap.frequency = 2412;
+        return Arrays.asList(psk, empty, eap);
+    }
+
+    private static void assertAccessPoint(AccessPoint expected, AccessPoint actual) {
+        assertEquals(expected.ssid, actual.ssid);
+        assertEquals(expected.bssid, actual.bssid);
+        assertEquals(expected.securityString, actual.securityString);
+        assertEquals(expected.securityMode, actual.securityMode);
+        assertEquals(expected.userName, actual.userName);
+        assertEquals(expected.password, actual.password);
+        assertEquals(expected.networkId, actual.networkId);
+        assertEquals(expected.level, actual.level);
+        assertEquals(expected.frequency, actual.frequency);
+        assertEquals(expected.status, actual.status);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.youku.common.wifi.worker;
+
+import android.net.wifi.WifiConfiguration;
+import com.youku.common.wifi.backend.SimulatedWifiBackend;
+import com.youku.common.wifi.model.AccessPoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 查询结果是副本, 修改后不影响索引
+ */
+public class ConfiguredNetworkIndexTest {
+
+    private ScheduledExecutorService mExecutor;
+
+    private ConfiguredNetworkIndex mIndex;
+
+    private int mNetworkId;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        SimulatedWifiBackend backend = new SimulatedWifiBackend(mExecutor, 1);
+        WifiConfiguration config = new WifiConfiguration();
+        config.SSID = "\"office\"";
+        config.preSharedKey = "\"12345678\"";
+        config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
+        mNetworkId = backend.addNetwork(config);
+        mIndex = new ConfiguredNetworkIndex(backend);
+        mIndex.start();
+    }
+
+    @After
+    public void tearDown() {
+        mIndex.stop();
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void configurationsAreCopies() {
+        WifiConfiguration first = mIndex.getBySsid("office");
+        first.BSSID = "00:11:22:33:44:55";
+        first.priority = 100;
+        first.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+
+        WifiConfiguration second = mIndex.getByNetworkId(mNetworkId);
+        assertNotSame(first, second);
+        assertEquals("\"office\"", second.SSID);
+        assertEquals("\"12345678\"", second.preSharedKey);
+        assertNull(second.BSSID);
+        assertEquals(0, second.priority);
+        assertTrue(second.allowedKeyManagement.get(WifiConfiguration.KeyMgmt.WPA_PSK));
+        assertTrue(!second.allowedKeyManagement.get(WifiConfiguration.KeyMgmt.NONE));
+    }
+
+    @Test
+    public void accessPointsAreFresh() {
+        AccessPoint first = mIndex.getAccessPoints().get(0);
+        first.password = "changed";
+
+        AccessPoint second = mIndex.getAccessPoints().get(0);
+        assertNotSame(first, second);
+        assertEquals("\"office\"", second.ssid);
+        assertNull(second.password);
+    }
+}
@@ -0,0 +1,177 @@
+package com.youku.common.wifi.worker;
+
+import com.youku.common.wifi.backend.SimulatedWifiBackend;
+import com.youku.common.wifi.model.ScanSnapshot;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 段文件的轮换、删除、重新打开和按时间查询, 写入在调用线程上同步进行
+ */
+public class ScanHistoryTest {
+
+    // 能放下1024条记录的最小段
+    private static final long SEGMENT_SIZE = ScanHistoryFormat.RECORDS_OFFSET
+            + 1024L * ScanHistoryFormat.RECORD_SIZE;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(mFolder.getRoot(), "history");
+    }
+
+    @Test
+    public void fullSegmentRotates() {
+        ScanHistoryRecorder recorder = new ScanHistoryRecorder(mDirectory, SEGMENT_SIZE, Long.MAX_VALUE, DIRECT);
+        ScanSnapshot snapshot = snapshot(400, false);
+        for (int i = 0; i < 3; i++) {
+            recorder.record(snapshot);
+        }
+        recorder.close();
+
+        assertFalse(recorder.isFailed());
+        assertEquals(1200, recorder.getRecordCount());
+        File[] files = ScanHistoryFormat.listSegments(mDirectory);
+        assertEquals(2, files.length);
+        assertEquals(SEGMENT_SIZE, files[0].length());
+        assertEquals(1200, count(new ScanHistoryReader(mDirectory).all()));
+    }
+
+    @Test
+    public void oldestSegmentsAreDeletedOverSizeCap() {
+        ScanHistoryRecorder recorder = new ScanHistoryRecorder(mDirectory, SEGMENT_SIZE, SEGMENT_SIZE * 2, DIRECT);
+        ScanSnapshot snapshot = snapshot(1000, false);
+        for (int i = 0; i < 5; i++) {
+            recorder.record(snapshot);
+        }
+        recorder.close();
+
+        assertEquals(5000, recorder.getRecordCount());
+        File[] files = ScanHistoryFormat.listSegments(mDirectory);
+        assertEquals(2, files.length);
+        assertEquals(3, ScanHistoryFormat.sequenceOf(files[0]));
+        assertEquals(4, ScanHistoryFormat.sequenceOf(files[1]));
+        // 前三个段已删除, 每段1024条
+        assertEquals(5000 - 3 * 1024, count(new ScanHistoryReader(mDirectory).all()));
+    }
+
+    @Test
+    public void fullSsidTableStartsNewSegment() {
+        long segmentSize = ScanHistoryFormat.RECORDS_OFFSET + 4096L * ScanHistoryFormat.RECORD_SIZE;
+        ScanHistoryRecorder recorder = new ScanHistoryRecorder(mDirectory, segmentSize, Long.MAX_VALUE, DIRECT);
+        int size = ScanHistoryFormat.SSID_CAPACITY + 100;
+        ScanSnapshot snapshot = snapshot(size, true);
+        recorder.record(snapshot);
+        recorder.close();
+
+        assertEquals(2, ScanHistoryFormat.listSegments(mDirectory).length);
+        ScanHistoryReader.Cursor cursor = new ScanHistoryReader(mDirectory).all();
+        try {
+            for (int i = 0; i < size; i++) {
+                assertTrue(cursor.next());
+                assertEquals(snapshot.getSsid(i), cursor.getSsid());
+                assertEquals(snapshot.getBssid(i), cursor.getBssid());
+            }
+            assertFalse(cursor.next());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void existingSegmentIsReopened() {
+        ScanSnapshot snapshot = snapshot(10, false);
+        ScanHistoryRecorder first = new ScanHistoryRecorder(mDirectory, SEGMENT_SIZE, Long.MAX_VALUE, DIRECT);
+        first.record(snapshot);
+        first.close();
+        ScanHistoryRecorder second = new ScanHistoryRecorder(mDirectory, SEGMENT_SIZE, Long.MAX_VALUE, DIRECT);
+        second.record(snapshot);
+        second.close();
+
+        assertEquals(1, ScanHistoryFormat.listSegments(mDirectory).length);
+        ScanHistoryReader.Cursor cursor = new ScanHistoryReader(mDirectory).all();
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertTrue(cursor.next());
+                assertEquals(snapshot.getSsid(i % 10), cursor.getSsid());
+            }
+            assertFalse(cursor.next());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void queryIncludesFromAndExcludesTo() throws InterruptedException {
+        ScanHistoryRecorder recorder = new ScanHistoryRecorder(mDirectory, SEGMENT_SIZE, Long.MAX_VALUE, DIRECT);
+        ScanHistoryReader reader = new ScanHistoryReader(mDirectory);
+        recorder.record(snapshot(3, false));
+        long first = reader.getLastTime();
+        waitPast(first);
+        recorder.record(snapshot(5, false));
+        long second = reader.getLastTime();
+        recorder.close();
+
+        assertTrue(second > first);
+        assertEquals(first, reader.getFirstTime());
+        assertEquals(3, count(reader.query(first, second)));
+        assertEquals(5, count(reader.query(first + 1, second + 1)));
+        assertEquals(8, count(reader.query(first, second + 1)));
+        assertEquals(0, count(reader.query(second, second)));
+        assertEquals(0, count(reader.query(second + 1, Long.MAX_VALUE)));
+        assertEquals(0, count(reader.query(Long.MIN_VALUE, first)));
+    }
+
+    /**
+     * @param distinctSsids
+     *            为true时每个AP的SSID不同, 否则所有AP使用同一个SSID
+     */
+    private static ScanSnapshot snapshot(int size, boolean distinctSsids) {
+        SimulatedWifiBackend backend = new SimulatedWifiBackend(null, 1);
+        for (int i = 0; i < size; i++) {
+            String ssid = distinctSsids ? "ap-" + i : "office";
+            String bssid = String.format("02:00:00:00:%02x:%02x", (i >> 8) & 0xff, i & 0xff);
+            backend.addAccessPoint(ssid, bssid, "[WPA2-PSK-CCMP][ESS]", 2412, -60);
+        }
+        return ScanSnapshot.from(backend.getScanResults(), null, 0);
+    }
+
+    private static int count(ScanHistoryReader.Cursor cursor) {
+        try {
+            int count = 0;
+            while (cursor.next()) {
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // 记录时间取自System.currentTimeMillis(), 等到下一毫秒后再写入
+    private static void waitPast(long time) throws InterruptedException {
+        while (System.currentTimeMillis() <= time) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.youku.common.wifi.worker;
+
+import com.youku.common.wifi.backend.SimulatedClock;
+import com.youku.common.wifi.backend.SimulatedWifiBackend;
+import com.youku.common.wifi.listener.WifiSearchListener;
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.ConnectPolicy;
+import com.youku.common.wifi.model.ConnectionSnapshot;
+import com.youku.common.wifi.model.ErrorType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 在JVM上通过{@link SimulatedWifiBackend}驱动WifiSearcher和WifiConnector
+ */
+public class SimulatedWifiTest {
+
+    private static final long TIMEOUT = 10000;
+
+    private ScheduledExecutorService mExecutor;
+
+    private SimulatedClock mClock;
+
+    private SimulatedWifiBackend mBackend;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newScheduledThreadPool(2);
+        mClock = new SimulatedClock();
+        mBackend = new SimulatedWifiBackend(mExecutor, 42, mClock);
+        mBackend.setScanLatency(5);
+        mBackend.setStepDelay(2);
+        mBackend.setRssiJitter(0);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void searchReturnsEverySimulatedAccessPoint() throws Exception {
+        mBackend.generateAccessPoints(1000, 200);
+        WifiSearcher searcher = new WifiSearcher(mBackend, null, mExecutor);
+
+        List<AccessPoint> results = searcher.searchAsync(TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(1000, results.size());
+        Set<String> bssids = new HashSet<String>();
+        for (AccessPoint accessPoint : results) {
+            bssids.add(accessPoint.bssid);
+        }
+        assertEquals(1000, bssids.size());
+        assertEquals(1, mBackend.getScanCount());
+    }
+
+    @Test
+    public void cacheExpiresWithSimulatedClock() throws Exception {
+        mBackend.generateAccessPoints(50, 10);
+        WifiSearcher searcher = new WifiSearcher(mBackend, null, mExecutor);
+        searcher.searchAsync(TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        // 缓存未过期时同步返回, 不扫描
+        mClock.advance(1000);
+        final List<List<AccessPoint>> delivered = new ArrayList<List<AccessPoint>>();
+        searcher.search(new WifiSearchListener() {
+            @Override
+            public void onSearchWifiFailed(ErrorType errorType) {
+                fail("unexpected " + errorType);
+            }
+
+            @Override
+            public void onSearchWifiSuccess(List<AccessPoint> results) {
+                delivered.add(results);
+            }
+        }, 10000);
+        assertEquals(1, delivered.size());
+        assertEquals(1, mBackend.getScanCount());
+
+        // 推进时钟后缓存过期, 重新扫描
+        mClock.advance(20000);
+        final CountDownLatch latch = new CountDownLatch(1);
+        searcher.search(new WifiSearchListener() {
+            @Override
+            public void onSearchWifiFailed(ErrorType errorType) {
+                fail("unexpected " + errorType);
+            }
+
+            @Override
+            public void onSearchWifiSuccess(List<AccessPoint> results) {
+                latch.countDown();
+            }
+        }, 10000);
+        assertTrue(latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(2, mBackend.getScanCount());
+    }
+
+    @Test
+    public void connectReachesConnectedState() throws Exception {
+        mBackend.generateAccessPoints(100, 20);
+        AccessPoint target = find(scan(), "sim-3");
+        target.password = "12345678";
+        WifiConnector connector = new WifiConnector(mBackend, null, mExecutor);
+
+        AccessPoint connected = connector.connectAsync(target, true, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertSame(target, connected);
+        ConnectionSnapshot snapshot = mBackend.getConnectionSnapshot();
+        assertTrue(snapshot.connected);
+        // 与系统一致, SSID带引号
+        assertEquals("\"sim-3\"", snapshot.ssid);
+        assertEquals(1, mBackend.getConnectedCount());
+    }
+
+    @Test
+    public void authenticationFailureIsReported() throws Exception {
+        mBackend.generateAccessPoints(100, 20);
+        mBackend.setAuthenticationFailure("sim-4", true);
+        AccessPoint target = find(scan(), "sim-4");
+        target.password = "wrong-password";
+        WifiConnector connector = new WifiConnector(mBackend, null, mExecutor);
+
+        try {
+            connector.connectAsync(target, false, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+            fail("connected with a rejected password");
+        } catch (ExecutionException e) {
+            // 预期失败
+        }
+        assertFalse(mBackend.getConnectionSnapshot().connected);
+        assertEquals(1, mBackend.getAuthFailedCount());
+    }
+
+    @Test
+    public void cancellingTheCurrentAttemptEndsConnectBest() throws Exception {
+        mBackend.generateAccessPoints(100, 20);
+        mBackend.setStepDelay(200);
+        List<AccessPoint> candidates = new ArrayList<AccessPoint>();
+        for (String ssid : new String[] { "sim-1", "sim-2", "sim-3" }) {
+            AccessPoint candidate = find(scan(), ssid);
+            candidate.password = "12345678";
+            candidates.add(candidate);
+        }
+        WifiConnector connector = new WifiConnector(mBackend, null, mExecutor);
+        WifiFuture<AccessPoint> future = connector.connectBest(candidates, ConnectPolicy.defaultPolicy());
+        Thread.sleep(50);
+
+        connector.cancel();
+
+        try {
+            future.get(1000, TimeUnit.MILLISECONDS);
+            fail("connectBest survived cancel()");
+        } catch (CancellationException e) {
+            assertEquals(ErrorType.CANCELLED, future.getError());
+        }
+    }
+
+    @Test
+    public void repeatedScansAndConnectionsStayConsistent() throws Exception {
+        mBackend.generateAccessPoints(300, 60);
+        WifiSearcher searcher = new WifiSearcher(mBackend, null, mExecutor);
+        WifiConnector connector = new WifiConnector(mBackend, null, mExecutor);
+        for (int i = 0; i < 50; i++) {
+            List<AccessPoint> results = searcher.searchAsync(TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertEquals(300, results.size());
+            AccessPoint target = find(results, "sim-" + (i % 60));
+            target.password = "12345678";
+            assertNotNull(connector.connectAsync(target, true, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS));
+            mClock.advance(60 * 1000);
+        }
+        assertEquals(50, mBackend.getScanCount());
+        assertEquals(50, mBackend.getConnectedCount());
+        assertEquals(0, mBackend.getAuthFailedCount());
+    }
+
+    private List<AccessPoint> scan() throws Exception {
+        return new WifiSearcher(mBackend, null, mExecutor).searchAsync(TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private static AccessPoint find(List<AccessPoint> accessPoints, String ssid) {
+        for (AccessPoint accessPoint : accessPoints) {
+            if (ssid.equals(accessPoint.ssid)) {
+                return accessPoint;
+            }
+        }
+        throw new AssertionError("no access point " + ssid);
+    }
+}
@@ -0,0 +1,103 @@
+package com.youku.common.netstate;
+
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+/**
+ * 某一时刻的网络连接状态, 不可变
+ */
+public final class NetState {
+
+    /**
+     * 没有任何网络
+     */
+    public static final NetState NONE = new NetState(false, false, false, NetType.NONE);
+
+    /**
+     * 当前活动网络是否可用
+     */
+    public final boolean networkConnected;
+
+    /**
+     * Wi-Fi是否可用
+     */
+    public final boolean wifiConnected;
+
+    /**
+     * 以太网是否可用
+     */
+    public final boolean ethernetConnected;
+
+    /**
+     * 当前活动网络的类型
+     */
+    public final NetType apnType;
+
+    public NetState(boolean networkConnected, boolean wifiConnected, boolean ethernetConnected, NetType apnType) {
+        this.networkConnected = networkConnected;
+        this.wifiConnected = wifiConnected;
+        this.ethernetConnected = ethernetConnected;
+        this.apnType = apnType;
+    }
+
+    /**
+     * 从ConnectivityManager读取当前状态
+     *
+     * @param connectivityManager
+     *            ConnectivityManager
+     * @return NetState
+     */
+    public static NetState query(ConnectivityManager connectivityManager) {
+        if (connectivityManager == null) {
+            return NONE;
+        }
+        NetworkInfo active = connectivityManager.getActiveNetworkInfo();
+        NetworkInfo wifi = connectivityManager.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
+        NetworkInfo ethernet = connectivityManager.getNetworkInfo(ConnectivityManager.TYPE_ETHERNET);
+        return new NetState(active != null && active.isAvailable(), wifi != null && wifi.isAvailable(),
+                ethernet != null && ethernet.isAvailable(), toNetType(active));
+    }
+
+    static NetType toNetType(NetworkInfo networkInfo) {
+        if (networkInfo == null) {
+            return NetType.NONE;
+        }
+        int nType = networkInfo.getType();
+        if (nType == ConnectivityManager.TYPE_WIFI) {
+            return NetType.WIFI;
+        } else if (nType == ConnectivityManager.TYPE_BLUETOOTH) {
+            return NetType.BLUETOOTH;
+        } else if (nType == ConnectivityManager.TYPE_ETHERNET) {
+            return NetType.ETHERNET;
+        }
+        return NetType.UNKNOWN;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NetState)) {
+            return false;
+        }
+        NetState other = (NetState) o;
+        return networkConnected == other.networkConnected && wifiConnected == other.wifiConnected
+                && ethernetConnected == other.ethernetConnected && apnType == other.apnType;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = networkConnected ? 1 : 0;
+        result = 31 * result + (wifiConnected ? 1 : 0);
+        result = 31 * result + (ethernetConnected ? 1 : 0);
+        result = 31 * result + apnType.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "NetState{network=" + networkConnected + ", wifi=" + wifiConnected + ", ethernet="
+                + ethernetConnected + ", type=" + apnType + "}";
+    }
+}
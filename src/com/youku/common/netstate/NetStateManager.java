@@ -1,19 +1,39 @@
-
 package com.youku.common.netstate;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
+import com.youku.common.wifi.worker.BroadcastHub;
+import com.youku.common.wifi.worker.WifiExecutors;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by MoiTempete.
+ * <p>
+ * 连接状态在第一次查询时读取一次, 之后随CONNECTIVITY_ACTION广播更新, 查询只读取volatile字段。
  */
 public class NetStateManager {
 
+    // 最近一次由任意实例更新的状态, 供静态的getAPNType使用
+    private static volatile NetState sLatestState;
+
     private Context mContext;
     private NetStateReceiver mReceiver;
 
+    private volatile NetState mState;
+    private boolean mIsTracking = false;
+    private final AtomicLong mTransitionCount = new AtomicLong();
+    private final BroadcastReceiver mStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            update();
+        }
+    };
+
     public NetStateManager(Context context) {
         mContext = context;
     }
@@ -24,10 +44,7 @@ public class NetStateManager {
      * @return
      */
     public boolean isNetworkConnected() {
-        ConnectivityManager mConnectivityManager = (ConnectivityManager) mContext
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo mNetworkInfo = mConnectivityManager.getActiveNetworkInfo();
-        return mNetworkInfo != null && mNetworkInfo.isAvailable();
+        return getState().networkConnected;
     }
 
     /**
@@ -36,10 +53,7 @@ public class NetStateManager {
      * @return
      */
     public boolean isWifiConnected() {
-        ConnectivityManager mConnectivityManager = (ConnectivityManager) mContext
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo mWiFiNetworkInfo = mConnectivityManager.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
-        return mWiFiNetworkInfo != null && mWiFiNetworkInfo.isAvailable();
+        return getState().wifiConnected;
     }
 
     /**
@@ -48,10 +62,50 @@ public class NetStateManager {
      * @return
      */
     public boolean isEthernetConnected() {
-        ConnectivityManager mConnectivityManager = (ConnectivityManager) mContext
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo mMobileNetworkInfo = mConnectivityManager.getNetworkInfo(ConnectivityManager.TYPE_ETHERNET);
-        return mMobileNetworkInfo != null && mMobileNetworkInfo.isAvailable();
+        return getState().ethernetConnected;
+    }
+
+    /**
+     * 当前活动网络的类型
+     *
+     * @return NetType
+     */
+    public NetType getNetType() {
+        return getState().apnType;
+    }
+
+    /**
+     * 当前的连接状态, 首次调用时读取并开始监听CONNECTIVITY_ACTION
+     *
+     * @return NetState
+     */
+    public NetState getState() {
+        NetState state = mState;
+        return (state != null) ? state : startTracking();
+    }
+
+    /**
+     * 连接状态变化的次数
+     *
+     * @return count
+     */
+    public long getTransitionCount() {
+        return mTransitionCount.get();
+    }
+
+    /**
+     * 停止监听CONNECTIVITY_ACTION, 之后的查询会重新开始监听
+     */
+    public synchronized void release() {
+        if (mIsTracking) {
+            BroadcastHub.get(mContext).unregisterReceiver(mStateReceiver);
+            mIsTracking = false;
+        }
+        // 不再更新的状态不能继续给getAPNType使用
+        if (sLatestState == mState) {
+            sLatestState = null;
+        }
+        mState = null;
     }
 
     /**
@@ -62,43 +116,90 @@ public class NetStateManager {
      */
 
     public static NetType getAPNType(Context context) {
-
+        // 有实例在监听时直接使用其状态
+        NetState state = sLatestState;
+        if (state != null) {
+            return state.apnType;
+        }
         ConnectivityManager connMgr = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
-        if (networkInfo == null) {
-            return NetType.NONE;
+        return NetState.toNetType(connMgr.getActiveNetworkInfo());
+    }
+
+    private synchronized NetState startTracking() {
+        if (!mIsTracking) {
+            BroadcastHub.get(mContext).registerReceiver(mStateReceiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            mIsTracking = true;
         }
-        int nType = networkInfo.getType();
-        if (nType == ConnectivityManager.TYPE_WIFI) {
-            return NetType.WIFI;
-        } else if (nType == ConnectivityManager.TYPE_BLUETOOTH) {
-            return NetType.BLUETOOTH;
-        } else if (nType == ConnectivityManager.TYPE_ETHERNET) {
-            return NetType.ETHERNET;
+        if (mState == null) {
+            update();
         }
-        return NetType.UNKNOWN;
+        return mState;
+    }
+
+    private synchronized void update() {
+        NetState state = NetState.query((ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE));
+        NetState previous = mState;
+        if (previous != null && !previous.equals(state)) {
+            mTransitionCount.incrementAndGet();
+        }
+        mState = state;
+        sLatestState = state;
     }
 
     /**
-     * 注册网络状态监听
+     * 注册网络状态监听, 在后台线程回调
      * @param listener
      */
     public void registerReceiver(NetStateListener listener) {
-        if (mReceiver == null) {
-            mReceiver = new NetStateReceiver();
+        registerReceiver(listener, WifiExecutors.shared());
+    }
+
+    /**
+     * 注册网络状态监听, 可以注册多个
+     * @param listener
+     * @param executor 回调使用的Executor
+     */
+    public synchronized void registerReceiver(NetStateListener listener, Executor executor) {
+        getReceiver().addListener(listener, executor);
+        mReceiver.register(mContext);
+    }
+
+    /**
+     * 设置状态变化的合并时间
+     * @param debounce 毫秒
+     */
+    public synchronized void setDebounce(long debounce) {
+        getReceiver().setDebounce(debounce);
+    }
+
+    /**
+     * 注销一个网络状态监听, 没有监听者时注销广播
+     * @param listener
+     */
+    public synchronized void unRegisterReceiver(NetStateListener listener) {
+        if (mReceiver != null) {
+            mReceiver.removeListener(listener);
+            if (!mReceiver.hasListeners()) {
+                mReceiver.unregister();
+            }
         }
-        mReceiver.setListener(listener);
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
-        mContext.registerReceiver(mReceiver, filter);
     }
 
     /**
-     * 注销网络状态监听
+     * 注销所有网络状态监听
      */
-    public void unRegisterReceiver() {
+    public synchronized void unRegisterReceiver() {
         if (mReceiver != null) {
-            mContext.unregisterReceiver(mReceiver);
+            mReceiver.unregister();
+            mReceiver.removeAllListeners();
+        }
+    }
+
+    private NetStateReceiver getReceiver() {
+        if (mReceiver == null) {
+            mReceiver = new NetStateReceiver();
         }
+        return mReceiver;
     }
 }
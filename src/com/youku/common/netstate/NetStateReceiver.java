@@ -1,36 +1,227 @@
-
 package com.youku.common.netstate;
 
 import android.annotation.TargetApi;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Build;
+import com.youku.common.wifi.worker.BroadcastHub;
+import com.youku.common.wifi.worker.WifiExecutors;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by MoiTempete.
+ * <p>
+ * 有线或Wi-Fi任一连接时视为已连接。广播到达后等待debounce时间, 期间的多次广播合并为一次,
+ * 状态与上一次通知不同时才在各监听者自己的Executor上回调。
  */
 public class NetStateReceiver extends BroadcastReceiver {
 
-    private NetStateListener mListener;
+    /**
+     * 默认的合并时间(毫秒)
+     */
+    public static final long DEFAULT_DEBOUNCE = 500;
+
+    private final List<Registration> mListeners = new CopyOnWriteArrayList<Registration>();
+
+    private final ScheduledExecutorService mScheduler;
+
+    private volatile long mDebounce = DEFAULT_DEBOUNCE;
+
+    private Context mContext;
+
+    private boolean mIsRegistered = false;
+
+    private ScheduledFuture<?> mPendingCheck;
+
+    // 最近一次通知的状态, 尚未通知时为null
+    private Boolean mLastConnected;
+
+    public NetStateReceiver() {
+        this(WifiExecutors.shared());
+    }
+
+    /**
+     * @param scheduler
+     *            检查网络状态和回调默认使用的执行器
+     */
+    public NetStateReceiver(ScheduledExecutorService scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * 设置合并时间
+     *
+     * @param debounce
+     *            毫秒, 为0时每次广播都检查
+     */
+    public void setDebounce(long debounce) {
+        mDebounce = Math.max(0, debounce);
+    }
+
+    /**
+     * 通过{@link BroadcastHub}注册广播并检查一次当前状态, 重复调用无效果
+     *
+     * @param context
+     *            Context
+     */
+    public synchronized void register(Context context) {
+        if (mIsRegistered) {
+            return;
+        }
+        mContext = context;
+        BroadcastHub.get(context).registerReceiver(this, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        mIsRegistered = true;
+        // 共享的接收者已注册时不会再收到粘性广播, 主动检查初始状态
+        scheduleCheck();
+    }
+
+    /**
+     * 注销广播, 未注册时无效果
+     */
+    public synchronized void unregister() {
+        if (!mIsRegistered) {
+            return;
+        }
+        BroadcastHub.get(mContext).unregisterReceiver(this);
+        mIsRegistered = false;
+        mLastConnected = null;
+        if (mPendingCheck != null) {
+            mPendingCheck.cancel(false);
+            mPendingCheck = null;
+        }
+    }
+
+    public synchronized boolean isRegistered() {
+        return mIsRegistered;
+    }
+
+    /**
+     * 只保留一个监听者, 在默认执行器上回调
+     *
+     * @param listener
+     *            NetStateListener
+     */
+    public void setListener(NetStateListener listener) {
+        mListeners.clear();
+        addListener(listener, mScheduler);
+    }
+
+    /**
+     * 添加监听者, 已存在时更新其Executor。已经通知过状态时立即把当前状态回调给新的监听者
+     *
+     * @param listener
+     *            NetStateListener
+     * @param executor
+     *            回调使用的Executor
+     */
+    public void addListener(NetStateListener listener, Executor executor) {
+        removeListener(listener);
+        Registration registration = new Registration(listener, executor);
+        // 与check()互斥, 保证新监听者不会漏掉或先收到较新的状态
+        synchronized (this) {
+            mListeners.add(registration);
+            if (mLastConnected != null) {
+                dispatch(registration, mLastConnected);
+            }
+        }
+    }
+
+    public void removeListener(NetStateListener listener) {
+        for (Registration registration : mListeners) {
+            if (registration.listener == listener) {
+                mListeners.remove(registration);
+            }
+        }
+    }
+
+    public void removeAllListeners() {
+        mListeners.clear();
+    }
+
+    public boolean hasListeners() {
+        return !mListeners.isEmpty();
+    }
 
-    @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR2)
     @Override
     public void onReceive(Context context, Intent intent) {
+        scheduleCheck();
+    }
+
+    // 在合并时间内到达的广播只推迟检查
+    private synchronized void scheduleCheck() {
+        if (mPendingCheck != null) {
+            mPendingCheck.cancel(false);
+        }
+        mPendingCheck = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, mDebounce, TimeUnit.MILLISECONDS);
+    }
+
+    private void check() {
+        Context context;
+        synchronized (this) {
+            mPendingCheck = null;
+            if (!mIsRegistered) {
+                return;
+            }
+            context = mContext;
+        }
+        boolean connected = isConnected(context);
+        synchronized (this) {
+            if (!mIsRegistered || (mLastConnected != null && mLastConnected == connected)) {
+                return;
+            }
+            mLastConnected = connected;
+            for (Registration registration : mListeners) {
+                dispatch(registration, connected);
+            }
+        }
+    }
+
+    private static void dispatch(final Registration registration, final boolean connected) {
+        registration.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (connected) {
+                    registration.listener.onConnect();
+                } else {
+                    registration.listener.onDisConnect();
+                }
+            }
+        });
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR2)
+    private static boolean isConnected(Context context) {
         ConnectivityManager connectMgr = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        // 没有以太网的设备上返回null
         NetworkInfo ethernetInfo = connectMgr.getNetworkInfo(ConnectivityManager.TYPE_ETHERNET);
         NetworkInfo wifiNetInfo = connectMgr.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
-
-        if (!ethernetInfo.isConnected() && !wifiNetInfo.isConnected()) {
-            mListener.onConnect();
-        } else {
-            mListener.onDisConnect();
-        }
+        return (ethernetInfo != null && ethernetInfo.isConnected()) || (wifiNetInfo != null && wifiNetInfo.isConnected());
     }
 
-    public void setListener(NetStateListener listener){
-        mListener = listener;
+    private static class Registration {
+
+        final NetStateListener listener;
+
+        final Executor executor;
+
+        Registration(NetStateListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
     }
-}
\ No newline at end of file
+}
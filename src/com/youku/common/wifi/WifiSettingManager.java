@@ -2,19 +2,38 @@
 package com.youku.common.wifi;
 
 import android.content.Context;
-import android.net.DhcpInfo;
 import android.net.wifi.WifiConfiguration;
-import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.text.format.Formatter;
+import com.youku.common.wifi.backend.AndroidWifiBackend;
+import com.youku.common.wifi.backend.WifiBackend;
 import com.youku.common.wifi.listener.WifiConnectListener;
+import com.youku.common.wifi.listener.WifiScanDiffListener;
 import com.youku.common.wifi.listener.WifiSearchListener;
 import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.ConnectPhase;
+import com.youku.common.wifi.model.ConnectPolicy;
+import com.youku.common.wifi.model.ConnectionSnapshot;
+import com.youku.common.wifi.model.RoamingPolicy;
+import com.youku.common.wifi.model.ScanPriority;
+import com.youku.common.wifi.model.ScanSnapshot;
+import com.youku.common.wifi.worker.ConfiguredNetworkIndex;
+import com.youku.common.wifi.worker.ConnectionMonitor;
+import com.youku.common.wifi.worker.RoamingEngine;
+import com.youku.common.wifi.worker.RssiTracker;
+import com.youku.common.wifi.worker.ScanBudget;
+import com.youku.common.wifi.worker.ScanHistoryReader;
+import com.youku.common.wifi.worker.ScanHistoryRecorder;
+import com.youku.common.wifi.worker.ScanScheduler;
+import com.youku.common.wifi.worker.ScanResultCache;
 import com.youku.common.wifi.worker.WifiConnector;
+import com.youku.common.wifi.worker.WifiExecutors;
+import com.youku.common.wifi.worker.WifiFuture;
 import com.youku.common.wifi.worker.WifiSearcher;
 
-import java.util.ArrayList;
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * WifiManager 封装类 Created by MoiTempete.
@@ -28,40 +47,112 @@ public class WifiSettingManager {
 
     private Context mContext;
 
-    private WifiManager mWifiManager;
+    private WifiBackend mBackend;
 
-    private WifiInfo mWifiInfo;
-
-    private DhcpInfo mDhcpInfo;
+    private ConnectionMonitor mConnectionMonitor;
 
     private WifiConnector mWifiConnector;
 
     private WifiSearcher mWifiSearcher;
 
+    private ScheduledExecutorService mExecutor;
+
+    private ConfiguredNetworkIndex mNetworkIndex;
+
+    private ScanScheduler mScanScheduler;
+
+    private RoamingEngine mRoamingEngine;
+
+    private ScanHistoryRecorder mHistoryRecorder;
+
     public WifiSettingManager(Context context) {
-        mContext = context;
-        mWifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-        mWifiInfo = mWifiManager.getConnectionInfo();
-        mDhcpInfo = mWifiManager.getDhcpInfo();
+        this(context, WifiExecutors.shared());
+    }
+
+    /**
+     * @param context
+     *            Context
+     * @param executor
+     *            运行所有扫描和连接任务的执行器, 默认为{@link WifiExecutors#shared()}
+     */
+    public WifiSettingManager(Context context, ScheduledExecutorService executor) {
+        this(context, executor, null);
+    }
+
+    /**
+     * @param context
+     *            Context, 不使用{@link AndroidWifiBackend}时可为null, 此时不保存连接信息
+     * @param executor
+     *            运行所有扫描和连接任务的执行器
+     * @param backend
+     *            Wi-Fi硬件的实现, 为null时使用{@link AndroidWifiBackend}
+     */
+    public WifiSettingManager(Context context, ScheduledExecutorService executor, WifiBackend backend) {
+        // 只保存ApplicationContext, 避免持有Activity
+        Context appContext = (context != null) ? context.getApplicationContext() : null;
+        mContext = (appContext != null) ? appContext : context;
+        mExecutor = executor;
+        // AndroidWifiBackend在第一次使用时才获取WifiManager
+        mBackend = (backend != null) ? backend : new AndroidWifiBackend(mContext);
+        // 不在构造时调用系统服务, 连接信息在后台读取, 读取完成前使用磁盘缓存
+        mConnectionMonitor = new ConnectionMonitor(mContext, mBackend, executor);
+        mConnectionMonitor.warmUp();
+    }
+
+    /**
+     * 当前使用的Wi-Fi硬件实现
+     *
+     * @return WifiBackend
+     */
+    public WifiBackend getBackend() {
+        return mBackend;
+    }
+
+    /**
+     * 释放注册的广播接收者
+     */
+    public synchronized void release() {
+        mConnectionMonitor.stop();
+        if (mRoamingEngine != null) {
+            mRoamingEngine.stop();
+        }
+        if (mScanScheduler != null) {
+            mScanScheduler.stop();
+        }
+        if (mNetworkIndex != null) {
+            mNetworkIndex.stop();
+        }
+        stopScanHistory();
+    }
+
+    /**
+     * get ConfiguredNetworkIndex, 首次使用时开始监听已配置网络的变化
+     *
+     * @return ConfiguredNetworkIndex
+     */
+    private synchronized ConfiguredNetworkIndex getNetworkIndex() {
+        if (mNetworkIndex == null) {
+            mNetworkIndex = new ConfiguredNetworkIndex(mBackend);
+        }
+        mNetworkIndex.start();
+        return mNetworkIndex;
     }
 
     /**
      * get WifiConnector
      *
-     * @param listener
-     *            WifiConnectListener
      * @return WifiConnector
      */
-    private WifiConnector getWifiConnector(WifiConnectListener listener) {
+    private synchronized WifiConnector getWifiConnector() {
         if (mWifiConnector == null) {
-            mWifiConnector = new WifiConnector(mContext, mWifiManager, listener);
+            mWifiConnector = new WifiConnector(mBackend, null, mExecutor);
+            mWifiConnector.setConfiguredNetworkIndex(getNetworkIndex());
         }
-        mWifiConnector.setListener(listener);
         return mWifiConnector;
     }
 
     /**
-     * connect Wi-Fi
+     * connect Wi-Fi, 只有在网络真正可用(DHCP完成)后才通知成功
      *
      * @param accessPoint
      *            AP实例中需要包含如下信息: ssid SSID securityMode 加密方式 password 密码
@@ -73,40 +164,310 @@ public class WifiSettingManager {
      */
     public void connect(AccessPoint accessPoint, boolean saveConfig, WifiConnectListener listener) {
         // TODO check data
-        getWifiConnector(listener).connect(accessPoint, saveConfig);
+        getWifiConnector().connect(accessPoint, saveConfig, listener);
+    }
+
+    /**
+     * 异步connect Wi-Fi
+     *
+     * @param accessPoint
+     *            AP实例中需要包含如下信息: ssid SSID securityMode 加密方式 password 密码
+     *            userName 用户名(only in EAP)
+     * @param saveConfig
+     *            disable | enable to save config
+     * @param deadline
+     *            截止时间(毫秒), 不大于0时只使用各阶段的超时
+     * @return WifiFuture, 可取消, 可在指定Executor上回调
+     */
+    public WifiFuture<AccessPoint> connectAsync(AccessPoint accessPoint, boolean saveConfig, long deadline) {
+        return getWifiConnector().connectAsync(accessPoint, saveConfig, deadline);
+    }
+
+    /**
+     * 从多个候选中连接最合适的一个, 按信号、频段和历史成功率排序, 失败或超时自动尝试下一个
+     *
+     * @param candidates
+     *            候选AP, 需包含连接信息以及level/frequency
+     * @param policy
+     *            ConnectPolicy, 为null时使用默认策略
+     * @return WifiFuture, 成功时结果为连接上的候选
+     */
+    public WifiFuture<AccessPoint> connectBest(List<AccessPoint> candidates, ConnectPolicy policy) {
+        return getWifiConnector().connectBest(candidates, policy);
+    }
+
+    /**
+     * 取消进行中的连接
+     */
+    public void cancelConnect() {
+        getWifiConnector().cancel();
+    }
+
+    /**
+     * 当前连接所处的阶段
+     *
+     * @return ConnectPhase
+     */
+    public ConnectPhase getConnectPhase() {
+        return getWifiConnector().getPhase();
     }
 
     /**
      * get WifiSearcher
      *
-     * @param listener
-     *            WifiSearchListener
      * @return WifiSearcher
      */
-    private WifiSearcher getWifiSearcher(WifiSearchListener listener) {
+    private synchronized WifiSearcher getWifiSearcher() {
         if (mWifiSearcher == null) {
-            mWifiSearcher = new WifiSearcher(mContext, mWifiManager, listener);
+            mWifiSearcher = new WifiSearcher(mBackend, null, mExecutor);
         }
-        mWifiSearcher.setListener(listener);
         return mWifiSearcher;
     }
 
     /**
-     * search Wi-Fi
+     * search Wi-Fi, 并发的请求会合并为一次扫描, 每个listener都会收到结果
      *
      * @param listener
      *            WifiSearchListener
      */
     public void search(WifiSearchListener listener) {
-        getWifiSearcher(listener).search();
+        getWifiSearcher().search(listener);
     }
 
     /**
-     * update Wi-Fi & DHCP info after disconnect & connect
+     * search Wi-Fi, 扫描预算不足时返回最近一次结果
+     *
+     * @param listener
+     *            WifiSearchListener, 实现WifiCachedSearchListener可区分结果是否来自缓存
+     * @param priority
+     *            请求优先级
+     */
+    public void search(WifiSearchListener listener, ScanPriority priority) {
+        getWifiSearcher().search(listener, priority);
+    }
+
+    /**
+     * 获取扫描预算, 可调整速率或读取被限流的次数
+     *
+     * @return ScanBudget
+     */
+    public ScanBudget getScanBudget() {
+        return getWifiSearcher().getScanBudget();
+    }
+
+    /**
+     * 异步search Wi-Fi
+     *
+     * @param deadline
+     *            截止时间(毫秒), 不大于0时使用默认的扫描超时
+     * @return WifiFuture, 可取消, 可在指定Executor上回调
+     */
+    public WifiFuture<List<AccessPoint>> searchAsync(long deadline) {
+        return getWifiSearcher().searchAsync(deadline);
+    }
+
+    /**
+     * search Wi-Fi, 缓存结果不超过maxAge时直接返回缓存, 并视情况在后台刷新
+     *
+     * @param listener
+     *            WifiSearchListener
+     * @param maxAge
+     *            可接受的最大缓存时间(毫秒)
+     */
+    public void search(WifiSearchListener listener, long maxAge) {
+        getWifiSearcher().search(listener, maxAge);
+    }
+
+    /**
+     * search Wi-Fi, 使用{@link #setScanCacheMaxAge(long)}设置的缓存有效期
+     *
+     * @param listener
+     *            WifiSearchListener
+     */
+    public void searchCached(WifiSearchListener listener) {
+        getWifiSearcher().searchCached(listener);
+    }
+
+    /**
+     * 获取最近一次扫描结果的列式快照, 比List<AccessPoint>占用更少内存
+     *
+     * @return ScanSnapshot, 尚未扫描时返回null
+     */
+    public ScanSnapshot getLastScanSnapshot() {
+        return getWifiSearcher().getLastSnapshot();
+    }
+
+    /**
+     * 添加增量扫描结果监听, 之后每次扫描只通知与上一次扫描的差异(按BSSID)
+     *
+     * @param listener
+     *            WifiScanDiffListener
+     */
+    public void addScanDiffListener(WifiScanDiffListener listener) {
+        getWifiSearcher().addDiffListener(listener);
+    }
+
+    /**
+     * 移除增量扫描结果监听
+     *
+     * @param listener
+     *            WifiScanDiffListener
+     */
+    public void removeScanDiffListener(WifiScanDiffListener listener) {
+        getWifiSearcher().removeDiffListener(listener);
+    }
+
+    /**
+     * 设置扫描结果缓存的有效期
+     *
+     * @param maxAge
+     *            毫秒
+     */
+    public void setScanCacheMaxAge(long maxAge) {
+        getWifiSearcher().getCache().setMaxAge(maxAge);
+    }
+
+    /**
+     * 获取跨扫描的信号统计, 扫描结果中的AccessPoint.rssiStats来自这里
+     *
+     * @return RssiTracker
+     */
+    public RssiTracker getRssiTracker() {
+        return getWifiSearcher().getRssiTracker();
+    }
+
+    /**
+     * 获取扫描结果缓存, 可读取命中/未命中/刷新次数
+     *
+     * @return ScanResultCache
+     */
+    public ScanResultCache getScanCache() {
+        return getWifiSearcher().getCache();
+    }
+
+    /**
+     * get ScanScheduler
+     *
+     * @return ScanScheduler, 可读取当前间隔和扫描次数
+     */
+    public synchronized ScanScheduler getScanScheduler() {
+        if (mScanScheduler == null) {
+            mScanScheduler = new ScanScheduler(mBackend, getWifiSearcher(), mExecutor);
+        }
+        return mScanScheduler;
+    }
+
+    /**
+     * 开始后台周期扫描, 间隔随扫描结果的变化程度自适应, 结果通过缓存和增量监听获取
+     */
+    public void startPeriodicScan() {
+        getScanScheduler().start();
+    }
+
+    /**
+     * 停止后台周期扫描
+     */
+    public synchronized void stopPeriodicScan() {
+        if (mScanScheduler != null) {
+            mScanScheduler.stop();
+        }
+    }
+
+    /**
+     * 开始同一SSID内的自动漫游, 在每次扫描后评估, 一般配合{@link #startPeriodicScan()}使用
+     *
+     * @param policy
+     *            漫游条件, 为null时使用默认值
+     */
+    public synchronized void startRoaming(RoamingPolicy policy) {
+        if (mRoamingEngine == null) {
+            mRoamingEngine = new RoamingEngine(mContext, mBackend, getWifiSearcher(), mExecutor);
+            mRoamingEngine.setConfiguredNetworkIndex(getNetworkIndex());
+        }
+        mRoamingEngine.setPolicy(policy != null ? policy : RoamingPolicy.defaultPolicy());
+        mRoamingEngine.start();
+    }
+
+    /**
+     * 停止自动漫游
+     */
+    public synchronized void stopRoaming() {
+        if (mRoamingEngine != null) {
+            mRoamingEngine.stop();
+        }
+    }
+
+    /**
+     * get RoamingEngine
+     *
+     * @return RoamingEngine, 没有调用过{@link #startRoaming(RoamingPolicy)}时返回null
+     */
+    public synchronized RoamingEngine getRoamingEngine() {
+        return mRoamingEngine;
+    }
+
+    /**
+     * 开始把每次扫描结果记录到directory下的段文件中, 使用默认的段大小和总大小上限
+     *
+     * @param directory
+     *            保存目录, 如getFilesDir()下的子目录
+     * @see ScanHistoryReader
+     */
+    public void startScanHistory(File directory) {
+        startScanHistory(directory, ScanHistoryRecorder.DEFAULT_SEGMENT_SIZE,
+                ScanHistoryRecorder.DEFAULT_MAX_TOTAL_SIZE);
+    }
+
+    /**
+     * 开始记录扫描历史, 已在记录时先停止之前的记录
+     *
+     * @param directory
+     *            保存目录
+     * @param segmentSize
+     *            每个段文件的大小
+     * @param maxTotalSize
+     *            所有段的总大小上限
+     */
+    public synchronized void startScanHistory(File directory, long segmentSize, long maxTotalSize) {
+        stopScanHistory();
+        mHistoryRecorder = new ScanHistoryRecorder(directory, segmentSize, maxTotalSize, mExecutor);
+        getWifiSearcher().setHistoryRecorder(mHistoryRecorder);
+    }
+
+    /**
+     * 停止记录扫描历史, 已写入的记录保留在磁盘上
+     */
+    public synchronized void stopScanHistory() {
+        if (mHistoryRecorder != null) {
+            getWifiSearcher().setHistoryRecorder(null);
+            mHistoryRecorder.close();
+            mHistoryRecorder = null;
+        }
+    }
+
+    /**
+     * get ScanHistoryRecorder
+     *
+     * @return 没有在记录时返回null
+     */
+    public synchronized ScanHistoryRecorder getScanHistoryRecorder() {
+        return mHistoryRecorder;
+    }
+
+    /**
+     * update Wi-Fi & DHCP info, 连接信息已随广播自动更新, 一般不需要调用
      */
     public void updateWifiStat() {
-        mWifiInfo = mWifiManager.getConnectionInfo();
-        mDhcpInfo = mWifiManager.getDhcpInfo();
+        mConnectionMonitor.refresh();
+    }
+
+    /**
+     * 获取当前连接信息, 随网络状态/信号变化自动更新, 不调用系统服务
+     *
+     * @return ConnectionSnapshot, 不会为null
+     */
+    public ConnectionSnapshot getConnectionSnapshot() {
+        return mConnectionMonitor.get();
     }
 
     /**
@@ -115,7 +476,7 @@ public class WifiSettingManager {
      * @return result
      */
     public boolean isWifiEnabled() {
-        return mWifiManager.isWifiEnabled();
+        return mBackend.isWifiEnabled();
     }
 
     /**
@@ -126,7 +487,7 @@ public class WifiSettingManager {
      * @return result
      */
     public boolean setWifiEnable(boolean wifiEnable) {
-        return mWifiManager.setWifiEnabled(wifiEnable);
+        return mBackend.setWifiEnabled(wifiEnable);
     }
 
     /**
@@ -150,17 +511,24 @@ public class WifiSettingManager {
      * @return result
      */
     public boolean disableNetwork(int netId) {
-        return mWifiManager.disableNetwork(netId);
+        boolean result = mBackend.disableNetwork(netId);
+        getNetworkIndex().invalidate();
+        return result;
     }
 
     /**
      * 断开当前的Wi-Fi连接
      */
     public void disconnectWifi() {
-        int netId = getNetworkId();
-        mWifiManager.disableNetwork(netId);
-        mWifiManager.disconnect();
-        mWifiInfo = null;
+        // 快照可能是从上次保存的值恢复的, 其中的id可能已被删除或重新编号, 必须读取当前值
+        int netId = mBackend.getCurrentNetworkId();
+        // 没有连接时为-1, 不能当作网络0
+        if (netId >= 0) {
+            mBackend.disableNetwork(netId);
+            getNetworkIndex().invalidate();
+        }
+        mBackend.disconnect();
+        mConnectionMonitor.clear();
     }
 
     /**
@@ -169,16 +537,16 @@ public class WifiSettingManager {
      * @return SSID
      */
     public String getSSID() {
-        return (mWifiInfo == null) ? "" : mWifiInfo.getSSID();
+        return mConnectionMonitor.get().ssid;
     }
 
     /**
-     * 获取当前netId
+     * 获取当前netId, 预热完成前可能是上次保存的值(见{@link ConnectionSnapshot#isRestored()}), 不要用于修改网络
      *
-     * @return Net Id
+     * @return Net Id, 没有连接时为-1
      */
     public int getNetworkId() {
-        return (mWifiInfo == null) ? 0 : mWifiInfo.getNetworkId();
+        return mConnectionMonitor.get().networkId;
     }
 
     /**
@@ -187,7 +555,7 @@ public class WifiSettingManager {
      * @return result
      */
     public int getIPAddress() {
-        return (mWifiInfo == null) ? 0 : mWifiInfo.getIpAddress();
+        return mConnectionMonitor.get().ipAddress;
     }
 
     /**
@@ -196,7 +564,7 @@ public class WifiSettingManager {
      * @return MAC-Address
      */
     public String getMacAddress() {
-        return (mWifiInfo == null) ? "" : mWifiInfo.getMacAddress();
+        return mConnectionMonitor.get().macAddress;
     }
 
     /**
@@ -205,7 +573,7 @@ public class WifiSettingManager {
      * @return BSSID
      */
     public String getBSSID() {
-        return (mWifiInfo == null) ? "" : mWifiInfo.getBSSID();
+        return mConnectionMonitor.get().bssid;
     }
 
     /**
@@ -215,7 +583,7 @@ public class WifiSettingManager {
      * @see #LINK_SPEED_UNITS
      */
     public int getLinkSpeed() {
-        return (mWifiInfo == null) ? 0 : mWifiInfo.getLinkSpeed();
+        return mConnectionMonitor.get().linkSpeed;
     }
 
     /**
@@ -224,7 +592,7 @@ public class WifiSettingManager {
      * @return the RSSI, in the range ??? to ???
      */
     public int getRssi() {
-        return (mWifiInfo == null) ? 0 : mWifiInfo.getRssi();
+        return mConnectionMonitor.get().rssi;
     }
 
     /**
@@ -233,7 +601,7 @@ public class WifiSettingManager {
      * @return 首选DNS地址
      */
     public String getDns1() {
-        return (mDhcpInfo == null) ? "" : FormatIP(mDhcpInfo.dns1);
+        return mConnectionMonitor.get().dns1;
     }
 
     /**
@@ -242,7 +610,7 @@ public class WifiSettingManager {
      * @return 备选DNS地址
      */
     public String getDns2() {
-        return (mDhcpInfo == null) ? "" : FormatIP(mDhcpInfo.dns2);
+        return mConnectionMonitor.get().dns2;
     }
 
     /**
@@ -251,7 +619,7 @@ public class WifiSettingManager {
      * @return 网关地址
      */
     public String getGateway() {
-        return (mDhcpInfo == null) ? "" : FormatIP(mDhcpInfo.gateway);
+        return mConnectionMonitor.get().gateway;
     }
 
     /**
@@ -260,12 +628,7 @@ public class WifiSettingManager {
      * @return List<AccessPoint>
      */
     public List<AccessPoint> getConfiguredNetworks() {
-        List<WifiConfiguration> configs = mWifiManager.getConfiguredNetworks();
-        List<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
-        for (WifiConfiguration config : configs) {
-            accessPoints.add(AccessPoint.loadData(config));
-        }
-        return accessPoints;
+        return getNetworkIndex().getAccessPoints();
     }
 
     /**
@@ -274,7 +637,7 @@ public class WifiSettingManager {
      * @return result
      */
     public boolean reassociate() {
-        return mWifiManager.reassociate();
+        return mBackend.reassociate();
     }
 
     /**
@@ -283,7 +646,7 @@ public class WifiSettingManager {
      * @return result
      */
     public boolean reconnect() {
-        return mWifiManager.reconnect();
+        return mBackend.reconnect();
     }
 
     /**
@@ -294,7 +657,9 @@ public class WifiSettingManager {
      * @return result
      */
     public boolean removeNetwork(int netId) {
-        return mWifiManager.removeNetwork(netId);
+        boolean result = mBackend.removeNetwork(netId);
+        getNetworkIndex().invalidate();
+        return result;
     }
 
     /**
@@ -305,13 +670,18 @@ public class WifiSettingManager {
      * @return 如果已经配置过则返回配置config，若未配置过，则返回null
      */
     public WifiConfiguration isExsits(String SSID) {
-        List<WifiConfiguration> existingConfigs = mWifiManager.getConfiguredNetworks();
-        for (WifiConfiguration existingConfig : existingConfigs) {
-            if (existingConfig.SSID.equals("\"" + SSID + "\"")) {
-                return existingConfig;
-            }
-        }
-        return null;
+        return getNetworkIndex().getBySsid(SSID);
+    }
+
+    /**
+     * 按networkId查找已配置的网络
+     *
+     * @param netId
+     *            网络ID
+     * @return 配置config, 没有时返回null
+     */
+    public WifiConfiguration getConfiguredNetwork(int netId) {
+        return getNetworkIndex().getByNetworkId(netId);
     }
 
     // IP地址转化为字符串格式
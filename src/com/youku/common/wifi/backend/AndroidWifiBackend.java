@@ -0,0 +1,235 @@
+package com.youku.common.wifi.backend;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.NetworkInfo;
+import android.net.wifi.ScanResult;
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.SystemClock;
+import com.youku.common.wifi.model.ConnectionSnapshot;
+import com.youku.common.wifi.worker.BroadcastHub;
+import com.youku.common.wifi.worker.ConfiguredNetworkIndex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于WifiManager和系统广播的默认实现
+ * <p>
+ * WifiManager在第一次使用时获取。有事件监听者时才通过{@link BroadcastHub}订阅广播,
+ * 事件在主线程回调。
+ */
+public class AndroidWifiBackend implements WifiBackend {
+
+    private Context mContext;
+
+    private WifiManager mWifiManager;
+
+    private final List<WifiEvent.Listener> mListeners = new CopyOnWriteArrayList<WifiEvent.Listener>();
+
+    private boolean mIsReceiverRegistered = false;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            WifiEvent event = toEvent(intent);
+            if (event == null) {
+                return;
+            }
+            for (WifiEvent.Listener listener : mListeners) {
+                listener.onWifiEvent(event);
+            }
+        }
+    };
+
+    /**
+     * 不调用任何系统服务
+     *
+     * @param context
+     *            Context
+     */
+    public AndroidWifiBackend(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * @param context
+     *            Context
+     * @param wifiManager
+     *            已获取的WifiManager, 为null时第一次使用时获取
+     */
+    public AndroidWifiBackend(Context context, WifiManager wifiManager) {
+        mContext = context;
+        mWifiManager = wifiManager;
+    }
+
+    /**
+     * 底层的WifiManager
+     *
+     * @return WifiManager
+     */
+    public synchronized WifiManager getWifiManager() {
+        if (mWifiManager == null) {
+            mWifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
+        }
+        return mWifiManager;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public boolean isWifiEnabled() {
+        return getWifiManager().isWifiEnabled();
+    }
+
+    @Override
+    public boolean setWifiEnabled(boolean enabled) {
+        return getWifiManager().setWifiEnabled(enabled);
+    }
+
+    @Override
+    public boolean startScan() {
+        return getWifiManager().startScan();
+    }
+
+    @Override
+    public List<ScanResult> getScanResults() {
+        List<ScanResult> results = getWifiManager().getScanResults();
+        return (results != null) ? results : Collections.<ScanResult> emptyList();
+    }
+
+    @Override
+    public List<WifiConfiguration> getConfiguredNetworks() {
+        return getWifiManager().getConfiguredNetworks();
+    }
+
+    @Override
+    public int addNetwork(WifiConfiguration config) {
+        return getWifiManager().addNetwork(config);
+    }
+
+    @Override
+    public int updateNetwork(WifiConfiguration config) {
+        return getWifiManager().updateNetwork(config);
+    }
+
+    @Override
+    public boolean enableNetwork(int networkId, boolean disableOthers) {
+        return getWifiManager().enableNetwork(networkId, disableOthers);
+    }
+
+    @Override
+    public boolean disableNetwork(int networkId) {
+        return getWifiManager().disableNetwork(networkId);
+    }
+
+    @Override
+    public boolean removeNetwork(int networkId) {
+        return getWifiManager().removeNetwork(networkId);
+    }
+
+    @Override
+    public boolean saveConfiguration() {
+        return getWifiManager().saveConfiguration();
+    }
+
+    @Override
+    public boolean disconnect() {
+        return getWifiManager().disconnect();
+    }
+
+    @Override
+    public boolean reconnect() {
+        return getWifiManager().reconnect();
+    }
+
+    @Override
+    public boolean reassociate() {
+        return getWifiManager().reassociate();
+    }
+
+    @Override
+    public String getCurrentBssid() {
+        WifiInfo info = getWifiManager().getConnectionInfo();
+        return (info != null) ? info.getBSSID() : null;
+    }
+
+    @Override
+    public int getCurrentNetworkId() {
+        WifiInfo info = getWifiManager().getConnectionInfo();
+        return (info != null) ? info.getNetworkId() : -1;
+    }
+
+    @Override
+    public ConnectionSnapshot getConnectionSnapshot() {
+        WifiManager wifiManager = getWifiManager();
+        return ConnectionSnapshot.from(wifiManager.getConnectionInfo(), wifiManager.getDhcpInfo(),
+                SystemClock.elapsedRealtime());
+    }
+
+    @Override
+    public synchronized void addEventListener(WifiEvent.Listener listener) {
+        if (listener == null || mListeners.contains(listener)) {
+            return;
+        }
+        mListeners.add(listener);
+        if (!mIsReceiverRegistered) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION);
+            filter.addAction(WifiManager.SUPPLICANT_STATE_CHANGED_ACTION);
+            filter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+            filter.addAction(WifiManager.RSSI_CHANGED_ACTION);
+            filter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+            filter.addAction(ConfiguredNetworkIndex.CONFIGURED_NETWORKS_CHANGED_ACTION);
+            BroadcastHub.get(mContext).registerReceiver(mReceiver, filter);
+            mIsReceiverRegistered = true;
+        }
+    }
+
+    @Override
+    public synchronized void removeEventListener(WifiEvent.Listener listener) {
+        mListeners.remove(listener);
+        if (mListeners.isEmpty() && mIsReceiverRegistered) {
+            BroadcastHub.get(mContext).unregisterReceiver(mReceiver);
+            mIsReceiverRegistered = false;
+        }
+    }
+
+    /**
+     * 把系统广播转换为WifiEvent
+     *
+     * @param intent
+     *            广播
+     * @return WifiEvent, 不支持的action返回null
+     */
+    static WifiEvent toEvent(Intent intent) {
+        String action = intent.getAction();
+        if (WifiManager.SCAN_RESULTS_AVAILABLE_ACTION.equals(action)) {
+            return WifiEvent.scanResultsAvailable();
+        } else if (WifiManager.SUPPLICANT_STATE_CHANGED_ACTION.equals(action)) {
+            SupplicantState state = intent.getParcelableExtra(WifiManager.EXTRA_NEW_STATE);
+            int error = intent.getIntExtra(WifiManager.EXTRA_SUPPLICANT_ERROR, -1);
+            return WifiEvent.supplicantStateChanged(state, error == WifiManager.ERROR_AUTHENTICATING);
+        } else if (WifiManager.NETWORK_STATE_CHANGED_ACTION.equals(action)) {
+            NetworkInfo networkInfo = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
+            return WifiEvent.networkStateChanged((networkInfo != null) ? networkInfo.getDetailedState() : null);
+        } else if (WifiManager.RSSI_CHANGED_ACTION.equals(action)) {
+            return WifiEvent.rssiChanged(intent.getIntExtra(WifiManager.EXTRA_NEW_RSSI, Integer.MIN_VALUE));
+        } else if (WifiManager.WIFI_STATE_CHANGED_ACTION.equals(action)) {
+            return WifiEvent.wifiStateChanged(intent.getIntExtra(WifiManager.EXTRA_WIFI_STATE,
+                    WifiManager.WIFI_STATE_UNKNOWN));
+        } else if (ConfiguredNetworkIndex.CONFIGURED_NETWORKS_CHANGED_ACTION.equals(action)) {
+            return WifiEvent.configuredNetworksChanged();
+        }
+        return null;
+    }
+}
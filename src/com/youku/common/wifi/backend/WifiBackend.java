@@ -0,0 +1,84 @@
+package com.youku.common.wifi.backend;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import com.youku.common.wifi.model.ConnectionSnapshot;
+
+import java.util.List;
+
+/**
+ * Wi-Fi硬件的抽象, 本库对WifiManager和系统广播的全部依赖都经过这里
+ * <p>
+ * 默认实现为{@link AndroidWifiBackend}; benchmark模块中的SimulatedWifiBackend在内存中模拟, 用于在JVM上做压力测试。
+ * 各方法的语义与WifiManager中的同名方法相同。
+ */
+public interface WifiBackend extends WifiClock {
+
+    boolean isWifiEnabled();
+
+    boolean setWifiEnabled(boolean enabled);
+
+    /**
+     * 请求扫描, 完成后发出{@link WifiEvent.Type#SCAN_RESULTS_AVAILABLE}
+     *
+     * @return 是否已开始, 被系统限流时返回false
+     */
+    boolean startScan();
+
+    /**
+     * 最近一次扫描结果
+     *
+     * @return 不会为null
+     */
+    List<ScanResult> getScanResults();
+
+    /**
+     * 已配置的网络
+     *
+     * @return Wi-Fi关闭时可能为null
+     */
+    List<WifiConfiguration> getConfiguredNetworks();
+
+    int addNetwork(WifiConfiguration config);
+
+    int updateNetwork(WifiConfiguration config);
+
+    boolean enableNetwork(int networkId, boolean disableOthers);
+
+    boolean disableNetwork(int networkId);
+
+    boolean removeNetwork(int networkId);
+
+    boolean saveConfiguration();
+
+    boolean disconnect();
+
+    boolean reconnect();
+
+    boolean reassociate();
+
+    /**
+     * 当前连接的BSSID, 只读取一次系统状态
+     *
+     * @return 没有连接时为null
+     */
+    String getCurrentBssid();
+
+    /**
+     * 当前连接的networkId
+     *
+     * @return 没有连接时为-1
+     */
+    int getCurrentNetworkId();
+
+    /**
+     * 当前连接的完整信息, 包括DHCP信息
+     *
+     * @return 不会为null
+     */
+    ConnectionSnapshot getConnectionSnapshot();
+
+    void addEventListener(WifiEvent.Listener listener);
+
+    void removeEventListener(WifiEvent.Listener listener);
+}
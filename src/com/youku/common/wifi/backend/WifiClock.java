@@ -0,0 +1,28 @@
+package com.youku.common.wifi.backend;
+
+import android.os.SystemClock;
+
+/**
+ * 时间来源, 返回值与{@link SystemClock#elapsedRealtime()}同义
+ * <p>
+ * 缓存、预算和超时都通过它取时间, 模拟器可以使用自己的时钟。
+ */
+public interface WifiClock {
+
+    /**
+     * 系统时钟
+     */
+    WifiClock SYSTEM = new WifiClock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    /**
+     * 开机后经过的时间
+     *
+     * @return 毫秒
+     */
+    long elapsedRealtime();
+}
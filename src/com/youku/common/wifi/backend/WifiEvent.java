@@ -0,0 +1,131 @@
+package com.youku.common.wifi.backend;
+
+import android.net.NetworkInfo;
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiManager;
+
+/**
+ * Wi-Fi事件, 对应WifiManager的各个广播, 不可变
+ * <p>
+ * 只携带本库用到的附加信息, 其他字段为默认值。
+ */
+public final class WifiEvent {
+
+    public enum Type {
+        /**
+         * 扫描完成, 对应{@link WifiManager#SCAN_RESULTS_AVAILABLE_ACTION}
+         */
+        SCAN_RESULTS_AVAILABLE,
+        /**
+         * 对应{@link WifiManager#SUPPLICANT_STATE_CHANGED_ACTION}
+         */
+        SUPPLICANT_STATE_CHANGED,
+        /**
+         * 对应{@link WifiManager#NETWORK_STATE_CHANGED_ACTION}
+         */
+        NETWORK_STATE_CHANGED,
+        /**
+         * 对应{@link WifiManager#RSSI_CHANGED_ACTION}
+         */
+        RSSI_CHANGED,
+        /**
+         * 对应{@link WifiManager#WIFI_STATE_CHANGED_ACTION}
+         */
+        WIFI_STATE_CHANGED,
+        /**
+         * 已配置网络发生变化
+         */
+        CONFIGURED_NETWORKS_CHANGED
+    }
+
+    /**
+     * 事件监听者, 回调所在的线程由WifiBackend的实现决定
+     */
+    public interface Listener {
+        void onWifiEvent(WifiEvent event);
+    }
+
+    public final Type type;
+
+    /**
+     * SUPPLICANT_STATE_CHANGED时的新状态, 其他事件为null
+     */
+    public final SupplicantState supplicantState;
+
+    /**
+     * SUPPLICANT_STATE_CHANGED时是否为认证错误
+     */
+    public final boolean authenticationFailed;
+
+    /**
+     * NETWORK_STATE_CHANGED时的连接状态, 其他事件为null
+     */
+    public final NetworkInfo.DetailedState networkState;
+
+    /**
+     * RSSI_CHANGED时的信号强度, 广播中没有时为{@link Integer#MIN_VALUE}
+     */
+    public final int rssi;
+
+    /**
+     * WIFI_STATE_CHANGED时的状态, 如{@link WifiManager#WIFI_STATE_ENABLED}
+     */
+    public final int wifiState;
+
+    private static final WifiEvent SCAN_RESULTS = new WifiEvent(Type.SCAN_RESULTS_AVAILABLE, null, false, null, 0,
+            WifiManager.WIFI_STATE_UNKNOWN);
+
+    private static final WifiEvent CONFIGURED_NETWORKS = new WifiEvent(Type.CONFIGURED_NETWORKS_CHANGED, null, false,
+            null, 0, WifiManager.WIFI_STATE_UNKNOWN);
+
+    private WifiEvent(Type type, SupplicantState supplicantState, boolean authenticationFailed,
+            NetworkInfo.DetailedState networkState, int rssi, int wifiState) {
+        this.type = type;
+        this.supplicantState = supplicantState;
+        this.authenticationFailed = authenticationFailed;
+        this.networkState = networkState;
+        this.rssi = rssi;
+        this.wifiState = wifiState;
+    }
+
+    public static WifiEvent scanResultsAvailable() {
+        return SCAN_RESULTS;
+    }
+
+    public static WifiEvent supplicantStateChanged(SupplicantState state, boolean authenticationFailed) {
+        return new WifiEvent(Type.SUPPLICANT_STATE_CHANGED, state, authenticationFailed, null, 0,
+                WifiManager.WIFI_STATE_UNKNOWN);
+    }
+
+    public static WifiEvent networkStateChanged(NetworkInfo.DetailedState state) {
+        return new WifiEvent(Type.NETWORK_STATE_CHANGED, null, false, state, 0, WifiManager.WIFI_STATE_UNKNOWN);
+    }
+
+    public static WifiEvent rssiChanged(int rssi) {
+        return new WifiEvent(Type.RSSI_CHANGED, null, false, null, rssi, WifiManager.WIFI_STATE_UNKNOWN);
+    }
+
+    public static WifiEvent wifiStateChanged(int wifiState) {
+        return new WifiEvent(Type.WIFI_STATE_CHANGED, null, false, null, 0, wifiState);
+    }
+
+    public static WifiEvent configuredNetworksChanged() {
+        return CONFIGURED_NETWORKS;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case SUPPLICANT_STATE_CHANGED:
+                return "WifiEvent{" + type + ", " + supplicantState + (authenticationFailed ? ", auth failed}" : "}");
+            case NETWORK_STATE_CHANGED:
+                return "WifiEvent{" + type + ", " + networkState + "}";
+            case RSSI_CHANGED:
+                return "WifiEvent{" + type + ", " + rssi + "}";
+            case WIFI_STATE_CHANGED:
+                return "WifiEvent{" + type + ", " + wifiState + "}";
+            default:
+                return "WifiEvent{" + type + "}";
+        }
+    }
+}
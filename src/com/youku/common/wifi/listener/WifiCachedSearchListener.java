@@ -0,0 +1,22 @@
+package com.youku.common.wifi.listener;
+
+import com.youku.common.wifi.model.AccessPoint;
+
+import java.util.List;
+
+/**
+ * 需要区分结果来源的扫描监听接口, 扫描被限流而使用缓存结果时调用{@link #onSearchWifiCached(List, long)}
+ * 代替{@link #onSearchWifiSuccess(List)}
+ */
+public interface WifiCachedSearchListener extends WifiSearchListener {
+
+    /**
+     * 扫描被限流, 返回最近一次扫描的结果
+     *
+     * @param results
+     *            缓存的结果
+     * @param age
+     *            缓存时间(毫秒)
+     */
+    public void onSearchWifiCached(List<AccessPoint> results, long age);
+}
@@ -0,0 +1,28 @@
+package com.youku.common.wifi.listener;
+
+import com.youku.common.wifi.model.ErrorType;
+
+/**
+ * 异步请求结果回调, 见WifiFuture
+ *
+ * @param <T>
+ *            结果类型
+ */
+public interface WifiCallback<T> {
+
+    /**
+     * 请求成功
+     *
+     * @param result
+     *            结果
+     */
+    public void onSuccess(T result);
+
+    /**
+     * 请求失败、超过期限或被取消({@link ErrorType#CANCELLED})
+     *
+     * @param errorType
+     *            失败原因
+     */
+    public void onFailure(ErrorType errorType);
+}
@@ -0,0 +1,17 @@
+package com.youku.common.wifi.listener;
+
+import com.youku.common.wifi.model.ErrorType;
+
+/**
+ * 需要失败原因的连接监听接口, 失败时调用{@link #OnWifiConnectFailed(ErrorType)}代替{@link #OnWifiConnectFailed()}
+ */
+public interface WifiConnectErrorListener extends WifiConnectListener {
+
+    /**
+     * 连接失败
+     *
+     * @param errorType
+     *            失败原因
+     */
+    public void OnWifiConnectFailed(ErrorType errorType);
+}
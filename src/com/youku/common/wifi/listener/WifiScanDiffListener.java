@@ -0,0 +1,26 @@
+package com.youku.common.wifi.listener;
+
+import com.youku.common.wifi.model.ErrorType;
+import com.youku.common.wifi.model.ScanDiff;
+
+/**
+ * 增量扫描结果的监听接口, 每次扫描只通知与上一次扫描相比的变化
+ */
+public interface WifiScanDiffListener {
+
+    /**
+     * 扫描网络错误
+     *
+     * @param errorType
+     *            错误类型
+     */
+    public void onSearchWifiFailed(ErrorType errorType);
+
+    /**
+     * 与上一次扫描相比的变化, 注册后的第一次回调中所有AP都在added中
+     *
+     * @param diff
+     *            新增/消失/变化的AP
+     */
+    public void onScanDiff(ScanDiff diff);
+}
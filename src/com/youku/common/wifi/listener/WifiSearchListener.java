@@ -21,6 +21,8 @@ public interface WifiSearchListener {
 
     /**
      * 扫描结果
+     * <p>
+     * 列表属于本监听者, 可以修改; 其中的AccessPoint与同一次扫描的其他监听者共享, 应视为只读, 需要修改时先复制。
      *
      * @param results
      *            ScanResult列表
@@ -74,6 +74,11 @@ public class AccessPoint implements Parcelable {
      */
     public int frequency;
 
+    /**
+     * 跨扫描的信号统计, only available in WifiSettingManager.search(), 不写入Parcel
+     */
+    public RssiStats rssiStats;
+
     public AccessPoint() {
 
     }
@@ -98,9 +103,10 @@ public class AccessPoint implements Parcelable {
             return null;
         }
         AccessPoint accessPoint = new AccessPoint();
+        SecurityInfo securityInfo = SecurityInfo.of(scanResult.capabilities);
         accessPoint.ssid = scanResult.SSID;
-        accessPoint.securityMode = getSecurity(scanResult);
-        accessPoint.securityString = getSecurityString(scanResult);
+        accessPoint.securityMode = securityInfo.mode;
+        accessPoint.securityString = securityInfo.securityString;
         accessPoint.bssid = scanResult.BSSID;
         accessPoint.level = scanResult.level;
         accessPoint.frequency = scanResult.frequency;
@@ -115,14 +121,7 @@ public class AccessPoint implements Parcelable {
      * @return 枚举类SecurityMode中的一种
      */
     protected static SecurityMode getSecurity(ScanResult result) {
-        if (result.capabilities.contains("WEP")) {
-            return SecurityMode.WEP;
-        } else if (result.capabilities.contains("PSK")) {
-            return SecurityMode.PSK;
-        } else if (result.capabilities.contains("EAP")) {
-            return SecurityMode.EAP;
-        }
-        return SecurityMode.OPEN;
+        return SecurityInfo.of(result.capabilities).mode;
     }
 
     /**
@@ -133,17 +132,7 @@ public class AccessPoint implements Parcelable {
      * @return 枚举类PskType中的一种
      */
     protected static PskType getPskType(ScanResult result) {
-        boolean wpa = result.capabilities.contains("WPA-PSK");
-        boolean wpa2 = result.capabilities.contains("WPA2-PSK");
-        if (wpa2 && wpa) {
-            return PskType.WPA_WPA2;
-        } else if (wpa2) {
-            return PskType.WPA2;
-        } else if (wpa) {
-            return PskType.WPA;
-        } else {
-            return PskType.UNKNOWN;
-        }
+        return SecurityInfo.of(result.capabilities).pskType;
     }
 
     /**
@@ -172,11 +161,24 @@ public class AccessPoint implements Parcelable {
      * @return 加密方式
      */
     protected static String getSecurityString(ScanResult scanResult) {
-        switch (getSecurity(scanResult)) {
+        return SecurityInfo.of(scanResult.capabilities).securityString;
+    }
+
+    /**
+     * 通过加密方式和PSK类型获取加密描述字符串
+     *
+     * @param mode
+     *            SecurityMode
+     * @param pskType
+     *            PskType, 仅在PSK时有效
+     * @return 加密方式
+     */
+    static String getSecurityString(SecurityMode mode, PskType pskType) {
+        switch (mode) {
             case EAP:
                 return SECURITY_STRING_EAP;
             case PSK:
-                switch (getPskType(scanResult)) {
+                switch (pskType) {
                     case WPA:
                         return SECURITY_STRING_WPA;
                     case WPA2:
@@ -233,17 +235,21 @@ public class AccessPoint implements Parcelable {
 		return 0;
 	}
 
+	/**
+	 * 枚举以序号写入, null为-1。列表请使用{@link AccessPointCodec}
+	 */
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(ssid);
         dest.writeString(securityString);
         dest.writeString(userName);
         dest.writeString(password);
+        dest.writeString(bssid);
         dest.writeInt(networkId);
         dest.writeInt(level);
         dest.writeInt(frequency);
-        dest.writeValue(securityMode); 
-        dest.writeValue(status);
+        dest.writeInt((securityMode != null) ? securityMode.ordinal() : -1);
+        dest.writeInt((status != null) ? status.ordinal() : -1);
 	}
 	
     public void readFromParcel(Parcel in) {
@@ -251,11 +257,16 @@ public class AccessPoint implements Parcelable {
     	securityString = in.readString();
     	userName = in.readString();
     	password = in.readString();
+    	bssid = in.readString();
     	networkId = in.readInt();
     	level = in.readInt();
     	frequency = in.readInt();
-    	securityMode = (SecurityMode) in.readValue(SecurityMode.class.getClassLoader());
-    	status = (ApStatus) in.readValue(ApStatus.class.getClassLoader());
+    	SecurityMode[] modes = SecurityMode.values();
+    	int mode = in.readInt();
+    	securityMode = (mode >= 0 && mode < modes.length) ? modes[mode] : null;
+    	ApStatus[] statuses = ApStatus.values();
+    	int apStatus = in.readInt();
+    	status = (apStatus >= 0 && apStatus < statuses.length) ? statuses[apStatus] : null;
     }
     
 	AccessPoint(Parcel in) {
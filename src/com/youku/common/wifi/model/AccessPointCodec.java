@@ -0,0 +1,388 @@
+package com.youku.common.wifi.model;
+
+import android.os.Parcel;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AccessPoint列表的紧凑二进制编码, 用于跨进程传递和保存到磁盘
+ * <p>
+ * 格式(版本1): 魔数"WA", 版本号, AP数量, 字符串表, 然后是每个AP的记录。
+ * 所有字符串(SSID、加密描述、用户名、密码)放入共享的字符串表, 记录中只保存下标;
+ * BSSID压缩为6字节; 枚举保存序号; 整数使用zigzag变长编码。rssiStats不编码。
+ * 枚举只能在末尾添加新值, 否则旧数据的序号会对应到错误的值。
+ * <p>
+ * 用户名和密码默认不编码, 解码结果中为null, 因此{@link #encode(List)}的结果可以直接保存到磁盘;
+ * 只有{@link #encode(List, boolean)}明确要求或写入Parcel时才包含, 这样的数据不能写入磁盘。
+ */
+public final class AccessPointCodec {
+
+    /**
+     * 当前格式版本
+     */
+    public static final int VERSION = 1;
+
+    private static final byte MAGIC_0 = 'W';
+
+    private static final byte MAGIC_1 = 'A';
+
+    // 记录标志: BSSID为压缩的6字节
+    private static final int FLAG_BSSID_PACKED = 1;
+
+    // 记录标志: BSSID格式不规范, 保存在字符串表中
+    private static final int FLAG_BSSID_STRING = 1 << 1;
+
+    private static final SecurityMode[] SECURITY_MODES = SecurityMode.values();
+
+    private static final ApStatus[] STATUSES = ApStatus.values();
+
+    private static final String CHARSET = "UTF-8";
+
+    private AccessPointCodec() {
+    }
+
+    /**
+     * 编码整个列表, 不包含用户名和密码
+     *
+     * @param accessPoints
+     *            AP列表, 不能包含null
+     * @return 编码结果
+     */
+    public static byte[] encode(List<AccessPoint> accessPoints) {
+        return encode(accessPoints, false);
+    }
+
+    /**
+     * 编码整个列表
+     *
+     * @param accessPoints
+     *            AP列表, 不能包含null
+     * @param includeCredentials
+     *            是否包含用户名和密码, 包含时结果是明文的敏感数据, 不能保存到磁盘
+     * @return 编码结果
+     */
+    public static byte[] encode(List<AccessPoint> accessPoints, boolean includeCredentials) {
+        int size = accessPoints.size();
+        Map<String, Integer> indexes = new HashMap<String, Integer>(size * 2);
+        List<String> strings = new ArrayList<String>(size);
+        // 每个AP约20字节, 外加字符串表
+        Output body = new Output(size * 20 + 16);
+        for (int i = 0; i < size; i++) {
+            AccessPoint ap = accessPoints.get(i);
+            int flags = 0;
+            long bssid = ScanSnapshot.INVALID_BSSID;
+            if (ap.bssid != null) {
+                if (isCanonicalBssid(ap.bssid)) {
+                    bssid = ScanSnapshot.packBssid(ap.bssid);
+                    flags |= FLAG_BSSID_PACKED;
+                } else {
+                    flags |= FLAG_BSSID_STRING;
+                }
+            }
+            body.writeByte(flags);
+            if ((flags & FLAG_BSSID_PACKED) != 0) {
+                for (int shift = 40; shift >= 0; shift -= 8) {
+                    body.writeByte((int) (bssid >>> shift));
+                }
+            } else if ((flags & FLAG_BSSID_STRING) != 0) {
+                body.writeVarint(indexOf(ap.bssid, indexes, strings));
+            }
+            body.writeVarint(indexOf(ap.ssid, indexes, strings));
+            body.writeVarint(indexOf(ap.securityString, indexes, strings));
+            body.writeVarint(includeCredentials ? indexOf(ap.userName, indexes, strings) : 0);
+            body.writeVarint(includeCredentials ? indexOf(ap.password, indexes, strings) : 0);
+            body.writeVarint((ap.securityMode != null) ? ap.securityMode.ordinal() + 1 : 0);
+            body.writeVarint((ap.status != null) ? ap.status.ordinal() + 1 : 0);
+            body.writeSignedVarint(ap.networkId);
+            body.writeSignedVarint(ap.level);
+            body.writeSignedVarint(ap.frequency);
+        }
+
+        Output out = new Output(body.size() + strings.size() * 12 + 16);
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeVarint(VERSION);
+        out.writeVarint(size);
+        out.writeVarint(strings.size());
+        for (int i = 0; i < strings.size(); i++) {
+            byte[] bytes = toBytes(strings.get(i));
+            out.writeVarint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.write(body.buffer(), 0, body.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * 编码整个列表并写入buffer的当前位置, 不包含用户名和密码
+     *
+     * @param accessPoints
+     *            AP列表
+     * @param buffer
+     *            目标, 空间不足时抛出BufferOverflowException
+     */
+    public static void encode(List<AccessPoint> accessPoints, ByteBuffer buffer) {
+        buffer.put(encode(accessPoints));
+    }
+
+    /**
+     * 解码
+     *
+     * @param data
+     *            {@link #encode(List)}的结果
+     * @return 新的列表
+     * @throws IllegalArgumentException
+     *             数据不完整、格式或版本不符
+     */
+    public static List<AccessPoint> decode(byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * 从buffer的当前位置解码, 完成后position位于数据之后
+     *
+     * @param buffer
+     *            数据
+     * @return 新的列表
+     * @throws IllegalArgumentException
+     *             数据不完整、格式或版本不符
+     */
+    public static List<AccessPoint> decode(ByteBuffer buffer) {
+        try {
+            if (buffer.get() != MAGIC_0 || buffer.get() != MAGIC_1) {
+                throw new IllegalArgumentException("not an AccessPoint list");
+            }
+            int version = readVarint(buffer);
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported version " + version);
+            }
+            int size = readLength(buffer);
+            int stringCount = readLength(buffer);
+            // 每个AP至少占10字节, 每个字符串至少1字节, 防止错误的长度导致分配过大的数组
+            if (size > buffer.remaining() / 10 || stringCount > buffer.remaining()) {
+                throw new IllegalArgumentException("corrupted length");
+            }
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                int length = readLength(buffer);
+                if (length > buffer.remaining()) {
+                    throw new IllegalArgumentException("corrupted string length");
+                }
+                strings[i] = readString(buffer, length);
+            }
+            List<AccessPoint> accessPoints = new ArrayList<AccessPoint>(size);
+            for (int i = 0; i < size; i++) {
+                AccessPoint ap = new AccessPoint();
+                int flags = buffer.get() & 0xff;
+                if ((flags & FLAG_BSSID_PACKED) != 0) {
+                    long bssid = 0;
+                    for (int b = 0; b < 6; b++) {
+                        bssid = (bssid << 8) | (buffer.get() & 0xff);
+                    }
+                    ap.bssid = ScanSnapshot.formatBssid(bssid);
+                } else if ((flags & FLAG_BSSID_STRING) != 0) {
+                    ap.bssid = stringAt(strings, readVarint(buffer));
+                }
+                ap.ssid = stringAt(strings, readVarint(buffer));
+                ap.securityString = stringAt(strings, readVarint(buffer));
+                ap.userName = stringAt(strings, readVarint(buffer));
+                ap.password = stringAt(strings, readVarint(buffer));
+                int mode = readVarint(buffer);
+                ap.securityMode = (mode > 0 && mode <= SECURITY_MODES.length) ? SECURITY_MODES[mode - 1] : null;
+                int status = readVarint(buffer);
+                ap.status = (status > 0 && status <= STATUSES.length) ? STATUSES[status - 1] : null;
+                ap.networkId = readSignedVarint(buffer);
+                ap.level = readSignedVarint(buffer);
+                ap.frequency = readSignedVarint(buffer);
+                accessPoints.add(ap);
+            }
+            return accessPoints;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated data", e);
+        }
+    }
+
+    /**
+     * 以一个byte数组写入Parcel, 与{@link AccessPoint#writeToParcel(Parcel, int)}一样包含用户名和密码
+     *
+     * @param accessPoints
+     *            AP列表
+     * @param dest
+     *            Parcel
+     */
+    public static void writeToParcel(List<AccessPoint> accessPoints, Parcel dest) {
+        dest.writeByteArray(encode(accessPoints, true));
+    }
+
+    /**
+     * 从Parcel读取{@link #writeToParcel(List, Parcel)}写入的列表
+     *
+     * @param in
+     *            Parcel
+     * @return 新的列表, 写入的是null时返回null
+     * @throws IllegalArgumentException
+     *             数据不完整、格式或版本不符
+     */
+    public static List<AccessPoint> readFromParcel(Parcel in) {
+        byte[] data = in.createByteArray();
+        return (data != null) ? decode(data) : null;
+    }
+
+    // 字符串表下标, 0表示null
+    private static int indexOf(String value, Map<String, Integer> indexes, List<String> strings) {
+        if (value == null) {
+            return 0;
+        }
+        Integer index = indexes.get(value);
+        if (index == null) {
+            strings.add(value);
+            index = strings.size();
+            indexes.put(value, index);
+        }
+        return index;
+    }
+
+    private static String stringAt(String[] strings, int index) {
+        if (index == 0) {
+            return null;
+        }
+        if (index < 0 || index > strings.length) {
+            throw new IllegalArgumentException("bad string index " + index);
+        }
+        return strings[index - 1];
+    }
+
+    // 小写、冒号分隔的BSSID才能压缩后原样还原
+    private static boolean isCanonicalBssid(String bssid) {
+        if (bssid.length() != 17) {
+            return false;
+        }
+        for (int i = 0; i < 17; i++) {
+            char c = bssid.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    // 数量和长度, 超过31位的变长整数读出来是负数
+    private static int readLength(ByteBuffer buffer) {
+        int value = readVarint(buffer);
+        if (value < 0) {
+            throw new IllegalArgumentException("corrupted length " + value);
+        }
+        return value;
+    }
+
+    private static int readSignedVarint(ByteBuffer buffer) {
+        int value = readVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] toBytes(String value) {
+        try {
+            return value.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        try {
+            if (buffer.hasArray()) {
+                int offset = buffer.arrayOffset() + buffer.position();
+                buffer.position(buffer.position() + length);
+                return new String(buffer.array(), offset, length, CHARSET);
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 可增长的输出缓冲
+    private static class Output {
+
+        private byte[] mBuffer;
+
+        private int mSize = 0;
+
+        Output(int capacity) {
+            mBuffer = new byte[Math.max(16, capacity)];
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            mBuffer[mSize++] = (byte) b;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, mBuffer, mSize, length);
+            mSize += length;
+        }
+
+        void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7f) != 0) {
+                mBuffer[mSize++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mSize++] = (byte) value;
+        }
+
+        void writeSignedVarint(int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        byte[] buffer() {
+            return mBuffer;
+        }
+
+        byte[] toByteArray() {
+            if (mSize == mBuffer.length) {
+                return mBuffer;
+            }
+            byte[] result = new byte[mSize];
+            System.arraycopy(mBuffer, 0, result, 0, mSize);
+            return result;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (mSize + extra > mBuffer.length) {
+                byte[] buffer = new byte[Math.max(mBuffer.length * 2, mSize + extra)];
+                System.arraycopy(mBuffer, 0, buffer, 0, mSize);
+                mBuffer = buffer;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.youku.common.wifi.model;
+
+/**
+ * 连接过程所处的阶段
+ */
+public enum ConnectPhase {
+    IDLE, // 没有进行中的连接
+    ASSOCIATING, // 等待与AP关联
+    AUTHENTICATING, // 关联完成, 等待认证(四次握手/EAP)完成
+    OBTAINING_IPADDR, // 认证完成, 等待DHCP分配地址
+    CONNECTED, // 连接可用
+    FAILED, // 连接失败
+}
@@ -0,0 +1,77 @@
+package com.youku.common.wifi.model;
+
+/**
+ * 多候选连接的排序和超时策略
+ */
+public class ConnectPolicy {
+
+    /**
+     * 所有候选的总截止时间(毫秒)
+     */
+    public long deadline = 45 * 1000;
+
+    /**
+     * 单个候选的最长连接时间(毫秒), 不大于0时只使用各阶段的超时
+     */
+    public long attemptTimeout = 20 * 1000;
+
+    /**
+     * 低于该信号强度的候选不尝试
+     */
+    public int minLevel = -90;
+
+    /**
+     * 5GHz/6GHz的加分, 与dBm同单位
+     */
+    public int highBandBonus = 8;
+
+    /**
+     * 历史连接成功率的最大加分, 与dBm同单位
+     */
+    public int historyBonus = 15;
+
+    /**
+     * 连接成功后是否保存配置
+     */
+    public boolean saveConfig = true;
+
+    /**
+     * 计算候选的分数, 越高越先尝试。有信号统计时使用平滑后的信号强度,
+     * 没有扫描信息(level为0)时按{@link #minLevel}计算, 不会排在有信号的候选之前
+     *
+     * @param accessPoint
+     *            候选AP
+     * @param successRate
+     *            该SSID的历史成功率(0~1), 没有历史时为-1
+     * @return 分数
+     */
+    public int score(AccessPoint accessPoint, float successRate) {
+        int score = (accessPoint.rssiStats != null) ? accessPoint.rssiStats.getSmoothedLevel() : accessPoint.level;
+        if (score == 0) {
+            score = minLevel;
+        }
+        if (isHighBand(accessPoint.frequency)) {
+            score += highBandBonus;
+        }
+        if (successRate >= 0) {
+            // 没有历史时视为0.5
+            score += Math.round((successRate - 0.5f) * 2 * historyBonus);
+        }
+        return score;
+    }
+
+    /**
+     * 是否为5GHz或6GHz频段
+     *
+     * @param frequency
+     *            MHz
+     * @return result
+     */
+    public static boolean isHighBand(int frequency) {
+        return frequency >= 4900;
+    }
+
+    public static ConnectPolicy defaultPolicy() {
+        return new ConnectPolicy();
+    }
+}
@@ -0,0 +1,264 @@
+package com.youku.common.wifi.model;
+
+import android.content.SharedPreferences;
+import android.net.DhcpInfo;
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiInfo;
+
+/**
+ * 当前Wi-Fi连接信息的快照, 不可变, 可在线程间共享
+ * <p>
+ * 由WifiInfo和DhcpInfo生成, IP/DNS/网关在生成时已格式化为字符串。没有连接信息时各字段为空字符串或0。
+ * 可保存到SharedPreferences, 从中恢复的快照timestamp为0。
+ */
+public final class ConnectionSnapshot {
+
+    /**
+     * 没有连接信息
+     */
+    public static final ConnectionSnapshot EMPTY = new ConnectionSnapshot(false, "", "", -1, 0, "", "", 0, 0, "", "",
+            "", 0, false);
+
+    /**
+     * 是否已连接并获得IP地址
+     */
+    public final boolean connected;
+
+    public final String ssid;
+
+    public final String bssid;
+
+    /**
+     * 没有连接时为-1, 与WifiInfo一致
+     */
+    public final int networkId;
+
+    public final int ipAddress;
+
+    /**
+     * 格式化后的IP地址
+     */
+    public final String ipString;
+
+    public final String macAddress;
+
+    /**
+     * 连接速度, 单位Mbps
+     */
+    public final int linkSpeed;
+
+    public final int rssi;
+
+    /**
+     * 首选DNS地址
+     */
+    public final String dns1;
+
+    /**
+     * 备选DNS地址
+     */
+    public final String dns2;
+
+    /**
+     * 网关地址
+     */
+    public final String gateway;
+
+    /**
+     * 生成时间, {@link android.os.SystemClock#elapsedRealtime()}
+     */
+    public final long timestamp;
+
+    // 是否从磁盘恢复, 只更新信号强度时保持不变
+    private final boolean restored;
+
+    // 保存格式的版本, 格式变化时旧数据被忽略
+    private static final int STORE_VERSION = 1;
+
+    private static final String KEY_VERSION = "version";
+
+    private ConnectionSnapshot(boolean connected, String ssid, String bssid, int networkId, int ipAddress,
+            String ipString, String macAddress, int linkSpeed, int rssi, String dns1, String dns2, String gateway,
+            long timestamp, boolean restored) {
+        this.connected = connected;
+        this.ssid = ssid;
+        this.bssid = bssid;
+        this.networkId = networkId;
+        this.ipAddress = ipAddress;
+        this.ipString = ipString;
+        this.macAddress = macAddress;
+        this.linkSpeed = linkSpeed;
+        this.rssi = rssi;
+        this.dns1 = dns1;
+        this.dns2 = dns2;
+        this.gateway = gateway;
+        this.timestamp = timestamp;
+        this.restored = restored;
+    }
+
+    /**
+     * 通过WifiInfo和DhcpInfo生成快照
+     *
+     * @param wifiInfo
+     *            WifiManager.getConnectionInfo(), 可为null
+     * @param dhcpInfo
+     *            WifiManager.getDhcpInfo(), 可为null
+     * @param timestamp
+     *            生成时间
+     * @return ConnectionSnapshot
+     */
+    public static ConnectionSnapshot from(WifiInfo wifiInfo, DhcpInfo dhcpInfo, long timestamp) {
+        if (wifiInfo == null && dhcpInfo == null) {
+            return EMPTY;
+        }
+        boolean connected = false;
+        String ssid = "";
+        String bssid = "";
+        int networkId = -1;
+        int ipAddress = 0;
+        String macAddress = "";
+        int linkSpeed = 0;
+        int rssi = 0;
+        if (wifiInfo != null) {
+            ipAddress = wifiInfo.getIpAddress();
+            connected = wifiInfo.getSupplicantState() == SupplicantState.COMPLETED && ipAddress != 0;
+            ssid = wifiInfo.getSSID();
+            bssid = wifiInfo.getBSSID();
+            networkId = wifiInfo.getNetworkId();
+            macAddress = wifiInfo.getMacAddress();
+            linkSpeed = wifiInfo.getLinkSpeed();
+            rssi = wifiInfo.getRssi();
+        }
+        String dns1 = "";
+        String dns2 = "";
+        String gateway = "";
+        if (dhcpInfo != null) {
+            dns1 = formatIpAddress(dhcpInfo.dns1);
+            dns2 = formatIpAddress(dhcpInfo.dns2);
+            gateway = formatIpAddress(dhcpInfo.gateway);
+        }
+        return new ConnectionSnapshot(connected, ssid, bssid, networkId, ipAddress,
+                formatIpAddress(ipAddress), macAddress, linkSpeed, rssi, dns1, dns2, gateway, timestamp, false);
+    }
+
+    /**
+     * 直接由各字段生成快照, 用于不经过WifiInfo的实现, 如模拟器
+     *
+     * @param ssid
+     *            带引号的SSID
+     * @param ipAddress
+     *            与WifiInfo.getIpAddress()相同的字节序
+     * @param timestamp
+     *            生成时间
+     * @return ConnectionSnapshot
+     */
+    public static ConnectionSnapshot create(boolean connected, String ssid, String bssid, int networkId,
+            int ipAddress, String macAddress, int linkSpeed, int rssi, int dns1, int dns2, int gateway,
+            long timestamp) {
+        return new ConnectionSnapshot(connected, ssid, bssid, networkId, ipAddress, formatIpAddress(ipAddress),
+                macAddress, linkSpeed, rssi, formatIpAddress(dns1), formatIpAddress(dns2), formatIpAddress(gateway),
+                timestamp, false);
+    }
+
+    /**
+     * 只更新信号强度
+     *
+     * @param newRssi
+     *            新的信号强度
+     * @param newTimestamp
+     *            更新时间
+     * @return 新的快照
+     */
+    public ConnectionSnapshot withRssi(int newRssi, long newTimestamp) {
+        if (this == EMPTY) {
+            return EMPTY;
+        }
+        return new ConnectionSnapshot(connected, ssid, bssid, networkId, ipAddress, ipString, macAddress, linkSpeed,
+                newRssi, dns1, dns2, gateway, newTimestamp, restored);
+    }
+
+    /**
+     * 是否是从磁盘恢复的, 可能已经过时
+     *
+     * @return result
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * 写入SharedPreferences
+     *
+     * @param editor
+     *            SharedPreferences.Editor, 由调用者提交
+     */
+    public void writeTo(SharedPreferences.Editor editor) {
+        editor.putInt(KEY_VERSION, STORE_VERSION);
+        editor.putBoolean("connected", connected);
+        editor.putString("ssid", ssid);
+        editor.putString("bssid", bssid);
+        editor.putInt("networkId", networkId);
+        editor.putInt("ipAddress", ipAddress);
+        editor.putString("macAddress", macAddress);
+        editor.putInt("linkSpeed", linkSpeed);
+        editor.putInt("rssi", rssi);
+        editor.putString("dns1", dns1);
+        editor.putString("dns2", dns2);
+        editor.putString("gateway", gateway);
+    }
+
+    /**
+     * 从SharedPreferences恢复
+     *
+     * @param preferences
+     *            SharedPreferences
+     * @return ConnectionSnapshot, 没有保存过或版本不符时返回null
+     */
+    public static ConnectionSnapshot readFrom(SharedPreferences preferences) {
+        if (preferences.getInt(KEY_VERSION, 0) != STORE_VERSION) {
+            return null;
+        }
+        int ipAddress = preferences.getInt("ipAddress", 0);
+        return new ConnectionSnapshot(preferences.getBoolean("connected", false), preferences.getString("ssid", ""),
+                preferences.getString("bssid", ""), preferences.getInt("networkId", -1), ipAddress,
+                formatIpAddress(ipAddress), preferences.getString("macAddress", ""),
+                preferences.getInt("linkSpeed", 0), preferences.getInt("rssi", 0), preferences.getString("dns1", ""),
+                preferences.getString("dns2", ""), preferences.getString("gateway", ""), 0, true);
+    }
+
+    /**
+     * 除rssi和时间外是否相同, 用于判断是否需要重新保存
+     *
+     * @param other
+     *            ConnectionSnapshot
+     * @return result
+     */
+    public boolean sameConnection(ConnectionSnapshot other) {
+        return other != null && connected == other.connected && networkId == other.networkId
+                && ipAddress == other.ipAddress && linkSpeed == other.linkSpeed && equals(ssid, other.ssid)
+                && equals(bssid, other.bssid) && equals(macAddress, other.macAddress) && equals(dns1, other.dns1)
+                && equals(dns2, other.dns2) && equals(gateway, other.gateway);
+    }
+
+    /**
+     * 与Formatter.formatIpAddress()相同, 低字节在前
+     *
+     * @param address
+     *            IPv4地址
+     * @return 如192.168.1.1
+     */
+    static String formatIpAddress(int address) {
+        return (address & 0xff) + "." + ((address >> 8) & 0xff) + "." + ((address >> 16) & 0xff) + "."
+                + ((address >>> 24) & 0xff);
+    }
+
+    private static boolean equals(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionSnapshot{connected=" + connected + ", ssid=" + ssid + ", bssid=" + bssid + ", ip="
+                + ipString + ", rssi=" + rssi + ", linkSpeed=" + linkSpeed + "}";
+    }
+}
@@ -7,4 +7,9 @@ package com.youku.common.wifi.model;
 public enum ErrorType {
     SEARCH_WIFI_TIMEOUT, // 扫描WIFI超时（一直搜不到结果）
     NO_WIFI_FOUND, // 扫描WIFI结束，没有找到任何WIFI信号
+    CONNECT_FAILED, // 添加或启用网络失败
+    CONNECT_TIMEOUT, // 连接某一阶段超时
+    AUTHENTICATION_FAILED, // 认证失败(密码错误等)
+    CANCELLED, // 请求被取消或被新的请求替代
+    SCAN_THROTTLED, // 扫描预算用完或被系统限流, 且没有可用的缓存结果
 }
@@ -0,0 +1,36 @@
+package com.youku.common.wifi.model;
+
+/**
+ * 同一SSID内切换BSSID的触发条件
+ */
+public class RoamingPolicy {
+
+    /**
+     * 当前AP平滑后的信号高于该值(dBm)时不漫游
+     */
+    public int triggerLevel = -70;
+
+    /**
+     * 候选AP平滑后的信号至少比当前AP强多少dB才漫游
+     */
+    public int hysteresis = 8;
+
+    /**
+     * 候选AP需要连续保持优势的时间(毫秒)
+     */
+    public long dwellTime = 10 * 1000;
+
+    /**
+     * 两次漫游之间的最短间隔(毫秒)
+     */
+    public long minRoamInterval = 60 * 1000;
+
+    /**
+     * 候选AP至少需要的采样次数
+     */
+    public int minSamples = 2;
+
+    public static RoamingPolicy defaultPolicy() {
+        return new RoamingPolicy();
+    }
+}
@@ -0,0 +1,74 @@
+package com.youku.common.wifi.model;
+
+/**
+ * 某个BSSID最近若干次扫描的信号统计, 不可变
+ */
+public final class RssiStats {
+
+    /**
+     * 累计采样次数
+     */
+    public final int sampleCount;
+
+    /**
+     * 最近一次的信号强度(dBm)
+     */
+    public final int last;
+
+    /**
+     * 指数加权平均(dBm), 用于显示和选择AP
+     */
+    public final float ewma;
+
+    /**
+     * 窗口内的最小值(dBm)
+     */
+    public final int min;
+
+    /**
+     * 窗口内的最大值(dBm)
+     */
+    public final int max;
+
+    /**
+     * 窗口内的方差
+     */
+    public final float variance;
+
+    /**
+     * 窗口内的线性趋势, 每次扫描变化的dB数, 正数表示信号在变强
+     */
+    public final float trend;
+
+    /**
+     * 最近一次出现的时间, {@link android.os.SystemClock#elapsedRealtime()}
+     */
+    public final long lastSeen;
+
+    public RssiStats(int sampleCount, int last, float ewma, int min, int max, float variance, float trend,
+            long lastSeen) {
+        this.sampleCount = sampleCount;
+        this.last = last;
+        this.ewma = ewma;
+        this.min = min;
+        this.max = max;
+        this.variance = variance;
+        this.trend = trend;
+        this.lastSeen = lastSeen;
+    }
+
+    /**
+     * 平滑后的信号强度
+     *
+     * @return dBm
+     */
+    public int getSmoothedLevel() {
+        return Math.round(ewma);
+    }
+
+    @Override
+    public String toString() {
+        return "RssiStats{n=" + sampleCount + ", last=" + last + ", ewma=" + ewma + ", min=" + min + ", max=" + max
+                + ", var=" + variance + ", trend=" + trend + "}";
+    }
+}
@@ -0,0 +1,112 @@
+package com.youku.common.wifi.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 两次扫描结果之间的差异, 以BSSID为键
+ */
+public class ScanDiff {
+
+    /**
+     * 新出现的AP
+     */
+    public final List<AccessPoint> added;
+
+    /**
+     * 已消失的AP(上一次扫描中的实例)
+     */
+    public final List<AccessPoint> removed;
+
+    /**
+     * level/frequency/加密方式发生变化的AP(本次扫描中的实例)
+     */
+    public final List<AccessPoint> changed;
+
+    public ScanDiff(List<AccessPoint> added, List<AccessPoint> removed, List<AccessPoint> changed) {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * 是否没有任何变化
+     *
+     * @return result
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * 变化的AP总数
+     *
+     * @return size
+     */
+    public int size() {
+        return added.size() + removed.size() + changed.size();
+    }
+
+    /**
+     * 以BSSID为键建立索引
+     *
+     * @param accessPoints
+     *            扫描结果
+     * @return BSSID -> AccessPoint
+     */
+    public static Map<String, AccessPoint> index(List<AccessPoint> accessPoints) {
+        Map<String, AccessPoint> map = new HashMap<String, AccessPoint>(accessPoints.size() * 4 / 3 + 1);
+        for (AccessPoint ap : accessPoints) {
+            if (ap.bssid != null) {
+                map.put(ap.bssid, ap);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 计算本次扫描相对上一次扫描的差异
+     *
+     * @param previous
+     *            上一次扫描结果的索引, 见{@link #index(List)}
+     * @param current
+     *            本次扫描结果
+     * @return ScanDiff
+     */
+    public static ScanDiff compute(Map<String, AccessPoint> previous, List<AccessPoint> current) {
+        List<AccessPoint> added = new ArrayList<AccessPoint>();
+        List<AccessPoint> changed = new ArrayList<AccessPoint>();
+        Map<String, AccessPoint> remaining = new HashMap<String, AccessPoint>(previous);
+        for (AccessPoint ap : current) {
+            if (ap.bssid == null) {
+                continue;
+            }
+            AccessPoint old = remaining.remove(ap.bssid);
+            if (old == null) {
+                if (!previous.containsKey(ap.bssid)) {
+                    added.add(ap);
+                }
+            } else if (isChanged(old, ap)) {
+                changed.add(ap);
+            }
+        }
+        return new ScanDiff(added, new ArrayList<AccessPoint>(remaining.values()), changed);
+    }
+
+    private static boolean isChanged(AccessPoint old, AccessPoint ap) {
+        return old.level != ap.level || old.frequency != ap.frequency || old.securityMode != ap.securityMode
+                || !equals(old.securityString, ap.securityString);
+    }
+
+    private static boolean equals(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanDiff{added=" + added.size() + ", removed=" + removed.size() + ", changed=" + changed.size() + "}";
+    }
+}
@@ -0,0 +1,10 @@
+package com.youku.common.wifi.model;
+
+/**
+ * 扫描请求的优先级, 决定扫描预算不足时是否还能发起真实扫描
+ */
+public enum ScanPriority {
+    HIGH, // 用户主动发起, 总是发起扫描, 由系统决定是否限流
+    NORMAL, // 默认, 只在系统拒绝扫描后的一段时间内使用缓存结果
+    LOW, // 后台刷新/周期扫描, 预算剩余不到一半时使用缓存结果
+}
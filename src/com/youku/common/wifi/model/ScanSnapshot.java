@@ -0,0 +1,348 @@
+package com.youku.common.wifi.model;
+
+import android.net.wifi.ScanResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列式存储的扫描结果快照
+ * <p>
+ * BSSID压缩为48位long, level/frequency存为int, 加密方式存为枚举序号, SSID通过字符串表去重。
+ * 无法无损还原的BSSID(大写、'-'分隔或格式不对)额外保存原始字符串, 保证缓存结果和实时结果的BSSID一致。
+ * 需要时再通过{@link #getAccessPoint(int)}生成AccessPoint。不可变, 可在线程间共享。
+ */
+public final class ScanSnapshot {
+
+    /**
+     * 无效的BSSID
+     */
+    public static final long INVALID_BSSID = -1L;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final SecurityMode[] SECURITY_MODES = SecurityMode.values();
+
+    private static final PskType[] PSK_TYPES = PskType.values();
+
+    private final long mTimestamp;
+
+    private final int mSize;
+
+    private final long[] mBssids;
+
+    private final int[] mLevels;
+
+    private final int[] mFrequencies;
+
+    private final byte[] mSecurityModes;
+
+    private final byte[] mPskTypes;
+
+    private final int[] mSsidIndexes;
+
+    private final String[] mSsids;
+
+    // 原始BSSID字符串, 只保存不能由mBssids还原的条目; 全部可还原时为null
+    private final String[] mRawBssids;
+
+    private final int mCurrentIndex;
+
+    private ScanSnapshot(long timestamp, int size, long[] bssids, String[] rawBssids, int[] levels,
+            int[] frequencies, byte[] securityModes, byte[] pskTypes, int[] ssidIndexes, String[] ssids,
+            int currentIndex) {
+        mTimestamp = timestamp;
+        mSize = size;
+        mBssids = bssids;
+        mRawBssids = rawBssids;
+        mLevels = levels;
+        mFrequencies = frequencies;
+        mSecurityModes = securityModes;
+        mPskTypes = pskTypes;
+        mSsidIndexes = ssidIndexes;
+        mSsids = ssids;
+        mCurrentIndex = currentIndex;
+    }
+
+    /**
+     * 通过系统扫描结果创建快照
+     *
+     * @param scanResults
+     *            WifiManager.getScanResults()
+     * @param currentBssid
+     *            当前连接的BSSID, 可为null
+     * @param timestamp
+     *            扫描时间
+     * @return ScanSnapshot
+     */
+    public static ScanSnapshot from(List<ScanResult> scanResults, String currentBssid, long timestamp) {
+        int size = (scanResults == null) ? 0 : scanResults.size();
+        long[] bssids = new long[size];
+        String[] rawBssids = null;
+        int[] levels = new int[size];
+        int[] frequencies = new int[size];
+        byte[] securityModes = new byte[size];
+        byte[] pskTypes = new byte[size];
+        int[] ssidIndexes = new int[size];
+        SsidTable ssids = new SsidTable(size);
+        long current = packBssid(currentBssid);
+        int currentIndex = -1;
+        for (int i = 0; i < size; i++) {
+            ScanResult result = scanResults.get(i);
+            bssids[i] = packBssid(result.BSSID);
+            if (result.BSSID != null && !isCanonical(result.BSSID, bssids[i])) {
+                if (rawBssids == null) {
+                    rawBssids = new String[size];
+                }
+                rawBssids[i] = result.BSSID;
+            }
+            levels[i] = result.level;
+            frequencies[i] = result.frequency;
+            SecurityInfo securityInfo = SecurityInfo.of(result.capabilities);
+            securityModes[i] = (byte) securityInfo.mode.ordinal();
+            pskTypes[i] = (byte) securityInfo.pskType.ordinal();
+            ssidIndexes[i] = ssids.indexOf(result.SSID);
+            if (currentIndex < 0 && current != INVALID_BSSID && bssids[i] == current) {
+                currentIndex = i;
+            }
+        }
+        return new ScanSnapshot(timestamp, size, bssids, rawBssids, levels, frequencies, securityModes, pskTypes,
+                ssidIndexes, ssids.toArray(), currentIndex);
+    }
+
+    /**
+     * 扫描时间
+     *
+     * @return timestamp
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * 当前连接的AP的下标
+     *
+     * @return 下标, 不在结果中时返回-1
+     */
+    public int getCurrentIndex() {
+        return mCurrentIndex;
+    }
+
+    public long getBssid(int index) {
+        return mBssids[index];
+    }
+
+    /**
+     * BSSID字符串, 与系统扫描结果中的原始值相同
+     *
+     * @param index
+     *            AP下标
+     * @return BSSID
+     */
+    public String getBssidString(int index) {
+        if (mRawBssids != null && mRawBssids[index] != null) {
+            return mRawBssids[index];
+        }
+        return formatBssid(mBssids[index]);
+    }
+
+    public String getSsid(int index) {
+        return mSsids[mSsidIndexes[index]];
+    }
+
+    /**
+     * SSID在字符串表中的下标, 相同SSID的下标相同
+     *
+     * @param index
+     *            AP下标
+     * @return SSID下标
+     */
+    public int getSsidIndex(int index) {
+        return mSsidIndexes[index];
+    }
+
+    /**
+     * 去重后的SSID数量
+     *
+     * @return count
+     */
+    public int getSsidCount() {
+        return mSsids.length;
+    }
+
+    public int getLevel(int index) {
+        return mLevels[index];
+    }
+
+    public int getFrequency(int index) {
+        return mFrequencies[index];
+    }
+
+    public SecurityMode getSecurityMode(int index) {
+        return SECURITY_MODES[mSecurityModes[index]];
+    }
+
+    public PskType getPskType(int index) {
+        return PSK_TYPES[mPskTypes[index]];
+    }
+
+    public String getSecurityString(int index) {
+        return AccessPoint.getSecurityString(getSecurityMode(index), getPskType(index));
+    }
+
+    /**
+     * 查找BSSID对应的下标
+     *
+     * @param bssid
+     *            压缩后的BSSID
+     * @return 下标, 找不到时返回-1
+     */
+    public int indexOf(long bssid) {
+        for (int i = 0; i < mSize; i++) {
+            if (mBssids[i] == bssid) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 生成下标对应的AccessPoint
+     *
+     * @param index
+     *            下标
+     * @return AccessPoint
+     */
+    public AccessPoint getAccessPoint(int index) {
+        AccessPoint ap = new AccessPoint();
+        ap.ssid = getSsid(index);
+        ap.bssid = getBssidString(index);
+        ap.securityMode = getSecurityMode(index);
+        ap.securityString = getSecurityString(index);
+        ap.level = mLevels[index];
+        ap.frequency = mFrequencies[index];
+        ap.status = (index == mCurrentIndex) ? ApStatus.CURRENT : ApStatus.ENABLED;
+        return ap;
+    }
+
+    /**
+     * 生成全部AccessPoint, 当前连接的AP排在第一位
+     *
+     * @return List<AccessPoint>
+     */
+    public List<AccessPoint> toAccessPoints() {
+        List<AccessPoint> accessPoints = new ArrayList<AccessPoint>(mSize);
+        if (mCurrentIndex >= 0) {
+            accessPoints.add(getAccessPoint(mCurrentIndex));
+        }
+        for (int i = 0; i < mSize; i++) {
+            if (i != mCurrentIndex) {
+                accessPoints.add(getAccessPoint(i));
+            }
+        }
+        return accessPoints;
+    }
+
+    /**
+     * 把"aa:bb:cc:dd:ee:ff"格式的BSSID压缩为48位long
+     *
+     * @param bssid
+     *            BSSID
+     * @return 压缩结果, 格式不对时返回{@link #INVALID_BSSID}
+     */
+    public static long packBssid(String bssid) {
+        if (bssid == null || bssid.length() != 17) {
+            return INVALID_BSSID;
+        }
+        long value = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = bssid.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':' && c != '-') {
+                    return INVALID_BSSID;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return INVALID_BSSID;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    // formatBssid(packed)能否得到与bssid完全相同的字符串
+    private static boolean isCanonical(String bssid, long packed) {
+        if (packed == INVALID_BSSID) {
+            return false;
+        }
+        for (int i = 0; i < 17; i++) {
+            char c = bssid.charAt(i);
+            if (i % 3 == 2 ? c != ':' : (c >= 'A' && c <= 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把压缩的BSSID还原为"aa:bb:cc:dd:ee:ff"格式
+     *
+     * @param bssid
+     *            压缩后的BSSID
+     * @return BSSID, 无效时返回null
+     */
+    public static String formatBssid(long bssid) {
+        if (bssid < 0) {
+            return null;
+        }
+        char[] chars = new char[17];
+        for (int i = 0; i < 6; i++) {
+            int b = (int) (bssid >>> (40 - i * 8)) & 0xff;
+            chars[i * 3] = HEX_DIGITS[b >>> 4];
+            chars[i * 3 + 1] = HEX_DIGITS[b & 0x0f];
+            if (i < 5) {
+                chars[i * 3 + 2] = ':';
+            }
+        }
+        return new String(chars);
+    }
+
+    // 构建快照时使用的SSID去重表
+    private static class SsidTable {
+
+        private final Map<String, Integer> mIndexes;
+
+        private final List<String> mSsids;
+
+        SsidTable(int capacity) {
+            mIndexes = new HashMap<String, Integer>();
+            mSsids = new ArrayList<String>(Math.min(capacity, 16));
+        }
+
+        int indexOf(String ssid) {
+            Integer index = mIndexes.get(ssid);
+            if (index == null) {
+                index = mSsids.size();
+                mSsids.add(ssid);
+                mIndexes.put(ssid, index);
+            }
+            return index;
+        }
+
+        String[] toArray() {
+            return mSsids.toArray(new String[mSsids.size()]);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.youku.common.wifi.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 由ScanResult.capabilities解析出的加密信息, 不可变
+ * <p>
+ * capabilities形如"[WPA-PSK-TKIP+CCMP][WPA2-PSK-CCMP][WPS][ESS]", 只遍历一次。
+ * 同一环境下不同的capabilities很少, 解析结果按字符串缓存。
+ */
+public final class SecurityInfo {
+
+    // 缓存上限, 超过后不再缓存新的值
+    private static final int MAX_CACHE_SIZE = 256;
+
+    private static final ConcurrentHashMap<String, SecurityInfo> sCache = new ConcurrentHashMap<String, SecurityInfo>();
+
+    /**
+     * 网络加密方式
+     */
+    public final SecurityMode mode;
+
+    /**
+     * PSK的具体类型, 非PSK时为{@link PskType#UNKNOWN}
+     */
+    public final PskType pskType;
+
+    /**
+     * 加密描述字符串
+     */
+    public final String securityString;
+
+    /**
+     * 支持CCMP(AES)
+     */
+    public final boolean ccmp;
+
+    /**
+     * 支持TKIP
+     */
+    public final boolean tkip;
+
+    /**
+     * WPA3(SAE或Suite-B)
+     */
+    public final boolean wpa3;
+
+    /**
+     * 支持WPS
+     */
+    public final boolean wps;
+
+    private SecurityInfo(SecurityMode mode, PskType pskType, boolean ccmp, boolean tkip, boolean wpa3, boolean wps) {
+        this.mode = mode;
+        this.pskType = pskType;
+        this.securityString = AccessPoint.getSecurityString(mode, pskType);
+        this.ccmp = ccmp;
+        this.tkip = tkip;
+        this.wpa3 = wpa3;
+        this.wps = wps;
+    }
+
+    /**
+     * 获取capabilities对应的加密信息, 结果会被缓存
+     *
+     * @param capabilities
+     *            ScanResult.capabilities
+     * @return SecurityInfo
+     */
+    public static SecurityInfo of(String capabilities) {
+        if (capabilities == null) {
+            capabilities = "";
+        }
+        SecurityInfo info = sCache.get(capabilities);
+        if (info == null) {
+            info = parse(capabilities);
+            if (sCache.size() < MAX_CACHE_SIZE) {
+                sCache.putIfAbsent(capabilities, info);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * 解析capabilities, 不使用缓存
+     *
+     * @param capabilities
+     *            ScanResult.capabilities
+     * @return SecurityInfo
+     */
+    static SecurityInfo parse(String capabilities) {
+        boolean wep = false, psk = false, eap = false, sae = false, suiteB = false;
+        boolean wpaPsk = false, wpa2Psk = false;
+        boolean ccmp = false, tkip = false, wps = false;
+        // 当前方括号内的协议(第一个token): 0 其他, 1 WPA, 2 WPA2/RSN
+        int protocol = 0;
+        int tokenIndex = 0;
+        int start = 0;
+        int length = capabilities.length();
+        for (int i = 0; i <= length; i++) {
+            char c = (i < length) ? capabilities.charAt(i) : ']';
+            if (c != '[' && c != ']' && c != '-' && c != '+') {
+                continue;
+            }
+            if (i > start) {
+                int from = start;
+                // FT/PSK, FT/EAP, FT/SAE
+                if (capabilities.startsWith("FT/", from)) {
+                    from += 3;
+                }
+                if (tokenIndex == 0) {
+                    if (regionEquals(capabilities, from, i, "WPA")) {
+                        protocol = 1;
+                    } else if (regionEquals(capabilities, from, i, "WPA2") || regionEquals(capabilities, from, i, "RSN")) {
+                        protocol = 2;
+                    } else {
+                        protocol = 0;
+                    }
+                }
+                if (regionEquals(capabilities, from, i, "WEP")) {
+                    wep = true;
+                } else if (regionEquals(capabilities, from, i, "WPS")) {
+                    wps = true;
+                } else if (regionEquals(capabilities, from, i, "CCMP")) {
+                    ccmp = true;
+                } else if (regionEquals(capabilities, from, i, "TKIP")) {
+                    tkip = true;
+                } else if (capabilities.startsWith("SAE", from)) {
+                    sae = true;
+                } else if (capabilities.startsWith("PSK", from)) {
+                    psk = true;
+                    if (protocol == 1) {
+                        wpaPsk = true;
+                    } else if (protocol == 2) {
+                        wpa2Psk = true;
+                    }
+                } else if (capabilities.startsWith("EAP", from)) {
+                    eap = true;
+                    if (capabilities.startsWith("EAP_SUITE_B", from)) {
+                        suiteB = true;
+                    }
+                }
+                tokenIndex++;
+            }
+            if (c == '[' || c == ']') {
+                tokenIndex = 0;
+                protocol = 0;
+            }
+            start = i + 1;
+        }
+
+        SecurityMode mode;
+        if (wep) {
+            mode = SecurityMode.WEP;
+        } else if (psk || sae) {
+            mode = SecurityMode.PSK;
+        } else if (eap) {
+            mode = SecurityMode.EAP;
+        } else {
+            mode = SecurityMode.OPEN;
+        }
+
+        PskType pskType = PskType.UNKNOWN;
+        if (mode == SecurityMode.PSK) {
+            if (wpa2Psk && wpaPsk) {
+                pskType = PskType.WPA_WPA2;
+            } else if (wpa2Psk) {
+                pskType = PskType.WPA2;
+            } else if (wpaPsk) {
+                pskType = PskType.WPA;
+            }
+        }
+        return new SecurityInfo(mode, pskType, ccmp, tkip, sae || suiteB, wps);
+    }
+
+    private static boolean regionEquals(String s, int from, int to, String token) {
+        return to - from == token.length() && s.startsWith(token, from);
+    }
+
+    @Override
+    public String toString() {
+        return "SecurityInfo{" + securityString + (ccmp ? ", CCMP" : "") + (tkip ? ", TKIP" : "")
+                + (wpa3 ? ", WPA3" : "") + (wps ? ", WPS" : "") + "}";
+    }
+}
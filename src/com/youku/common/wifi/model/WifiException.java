@@ -0,0 +1,20 @@
+package com.youku.common.wifi.model;
+
+/**
+ * 异步请求失败时由WifiFuture.get()抛出的原因
+ */
+public class WifiException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ErrorType mErrorType;
+
+    public WifiException(ErrorType errorType) {
+        super(String.valueOf(errorType));
+        mErrorType = errorType;
+    }
+
+    public ErrorType getErrorType() {
+        return mErrorType;
+    }
+}
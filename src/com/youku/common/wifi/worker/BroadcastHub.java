@@ -0,0 +1,188 @@
+package com.youku.common.wifi.worker;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.wifi.WifiManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内共享的Wi-Fi/网络广播分发
+ * <p>
+ * 只向系统注册一个接收者, 监听扫描结果、supplicant状态、网络状态、信号、Wi-Fi开关、已配置网络和连接变化,
+ * 再按action分发给订阅者。订阅和取消只是列表操作; 订阅者全部取消一段时间后才向系统注销,
+ * 避免频繁注册。用法与LocalBroadcastManager相同, 订阅者的onReceive在主线程调用。
+ */
+public final class BroadcastHub {
+
+    // 没有订阅者后延迟注销的时间
+    private static final long IDLE_UNREGISTER_DELAY = 30 * 1000;
+
+    private static final String[] SUPPORTED_ACTIONS = {
+            WifiManager.SCAN_RESULTS_AVAILABLE_ACTION,
+            WifiManager.SUPPLICANT_STATE_CHANGED_ACTION,
+            WifiManager.NETWORK_STATE_CHANGED_ACTION,
+            WifiManager.RSSI_CHANGED_ACTION,
+            WifiManager.WIFI_STATE_CHANGED_ACTION,
+            ConfiguredNetworkIndex.CONFIGURED_NETWORKS_CHANGED_ACTION,
+            ConnectivityManager.CONNECTIVITY_ACTION,
+    };
+
+    private static BroadcastHub sInstance;
+
+    private final Context mContext;
+
+    private final ScheduledExecutorService mScheduler;
+
+    private final Map<String, List<BroadcastReceiver>> mReceivers = new ConcurrentHashMap<String, List<BroadcastReceiver>>();
+
+    // 所有action的订阅总数
+    private int mSubscriptionCount = 0;
+
+    private boolean mIsRegistered = false;
+
+    private int mRegistrationCount = 0;
+
+    private ScheduledFuture<?> mPendingUnregister;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            List<BroadcastReceiver> receivers = mReceivers.get(intent.getAction());
+            if (receivers == null) {
+                return;
+            }
+            for (BroadcastReceiver receiver : receivers) {
+                receiver.onReceive(context, intent);
+            }
+        }
+    };
+
+    private BroadcastHub(Context context, ScheduledExecutorService scheduler) {
+        mContext = context;
+        mScheduler = scheduler;
+        for (String action : SUPPORTED_ACTIONS) {
+            mReceivers.put(action, new CopyOnWriteArrayList<BroadcastReceiver>());
+        }
+    }
+
+    /**
+     * 获取进程内唯一的实例
+     *
+     * @param context
+     *            Context, 只保存ApplicationContext
+     * @return BroadcastHub
+     */
+    public static synchronized BroadcastHub get(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new BroadcastHub((appContext != null) ? appContext : context, WifiExecutors.shared());
+        }
+        return sInstance;
+    }
+
+    /**
+     * 订阅filter中的action, 重复订阅无效果
+     *
+     * @param receiver
+     *            BroadcastReceiver
+     * @param filter
+     *            只能包含本类支持的action
+     * @throws IllegalArgumentException
+     *             包含不支持的action
+     */
+    public void registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        int added = 0;
+        for (int i = 0; i < filter.countActions(); i++) {
+            List<BroadcastReceiver> receivers = mReceivers.get(filter.getAction(i));
+            if (receivers == null) {
+                throw new IllegalArgumentException("unsupported action: " + filter.getAction(i));
+            }
+            if (((CopyOnWriteArrayList<BroadcastReceiver>) receivers).addIfAbsent(receiver)) {
+                added++;
+            }
+        }
+        synchronized (this) {
+            mSubscriptionCount += added;
+            if (mSubscriptionCount == 0) {
+                return;
+            }
+            if (mPendingUnregister != null) {
+                mPendingUnregister.cancel(false);
+                mPendingUnregister = null;
+            }
+            if (!mIsRegistered) {
+                IntentFilter all = new IntentFilter();
+                for (String action : SUPPORTED_ACTIONS) {
+                    all.addAction(action);
+                }
+                mContext.registerReceiver(mReceiver, all);
+                mIsRegistered = true;
+                mRegistrationCount++;
+            }
+        }
+    }
+
+    /**
+     * 取消receiver的全部订阅, 没有订阅时无效果
+     *
+     * @param receiver
+     *            BroadcastReceiver
+     */
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+        int removed = 0;
+        for (List<BroadcastReceiver> receivers : mReceivers.values()) {
+            if (receivers.remove(receiver)) {
+                removed++;
+            }
+        }
+        synchronized (this) {
+            mSubscriptionCount -= removed;
+            if (removed == 0 || mSubscriptionCount > 0 || !mIsRegistered || mPendingUnregister != null) {
+                return;
+            }
+            mPendingUnregister = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    unregisterIfIdle();
+                }
+            }, IDLE_UNREGISTER_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 向系统注册的次数, 用于确认注册没有反复发生
+     *
+     * @return count
+     */
+    public synchronized int getRegistrationCount() {
+        return mRegistrationCount;
+    }
+
+    /**
+     * 当前的订阅总数
+     *
+     * @return count
+     */
+    public synchronized int getSubscriptionCount() {
+        return mSubscriptionCount;
+    }
+
+    private synchronized void unregisterIfIdle() {
+        mPendingUnregister = null;
+        if (mSubscriptionCount > 0 || !mIsRegistered) {
+            return;
+        }
+        mContext.unregisterReceiver(mReceiver);
+        mIsRegistered = false;
+    }
+}
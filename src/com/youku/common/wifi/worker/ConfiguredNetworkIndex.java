@@ -0,0 +1,251 @@
+package com.youku.common.wifi.worker;
+
+import android.content.Context;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiManager;
+import com.youku.common.wifi.backend.AndroidWifiBackend;
+import com.youku.common.wifi.backend.WifiBackend;
+import com.youku.common.wifi.backend.WifiEvent;
+import com.youku.common.wifi.model.AccessPoint;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 已配置网络的内存索引
+ * <p>
+ * 以去掉引号的SSID和networkId为键, 只在系统广播已配置网络变化或本库自己添加/删除网络后才重建,
+ * 查询不再每次调用getConfiguredNetworks()。查询返回副本, 调用者修改后不影响索引和其他调用者。
+ */
+public class ConfiguredNetworkIndex {
+
+    /**
+     * 系统隐藏的广播, 已配置网络发生变化时发出
+     */
+    public static final String CONFIGURED_NETWORKS_CHANGED_ACTION = "android.net.wifi.CONFIGURED_NETWORKS_CHANGE";
+
+    private WifiBackend mBackend;
+
+    private final ConfigChangeListener mListener = new ConfigChangeListener();
+
+    private boolean mIsReceiverRegistered = false;
+
+    private volatile Index mIndex;
+
+    // WifiConfiguration中需要复制的公开字段
+    private static volatile Field[] sConfigFields;
+
+    // 每次失效递增, 避免重建期间收到的变化被覆盖
+    private final AtomicInteger mVersion = new AtomicInteger();
+
+    public ConfiguredNetworkIndex(Context context, WifiManager wifiManager) {
+        this(new AndroidWifiBackend(context, wifiManager));
+    }
+
+    public ConfiguredNetworkIndex(WifiBackend backend) {
+        mBackend = backend;
+    }
+
+    /**
+     * 开始监听已配置网络的变化
+     */
+    public synchronized void start() {
+        if (mIsReceiverRegistered) {
+            return;
+        }
+        mBackend.addEventListener(mListener);
+        mIsReceiverRegistered = true;
+    }
+
+    /**
+     * 停止监听, 之后的查询每次都会重建索引
+     */
+    public synchronized void stop() {
+        if (mIsReceiverRegistered) {
+            mBackend.removeEventListener(mListener);
+            mIsReceiverRegistered = false;
+        }
+        mIndex = null;
+    }
+
+    /**
+     * 使索引失效, 下次查询时重建
+     */
+    public void invalidate() {
+        mVersion.incrementAndGet();
+        mIndex = null;
+    }
+
+    /**
+     * 按SSID查找已配置的网络
+     *
+     * @param ssid
+     *            不带引号的SSID
+     * @return WifiConfiguration的副本, 没有时返回null
+     */
+    public WifiConfiguration getBySsid(String ssid) {
+        WifiConfiguration config = getIndex().bySsid.get(ssid);
+        return (config != null) ? copyOf(config) : null;
+    }
+
+    /**
+     * 按networkId查找已配置的网络
+     *
+     * @param networkId
+     *            net ID
+     * @return WifiConfiguration的副本, 没有时返回null
+     */
+    public WifiConfiguration getByNetworkId(int networkId) {
+        WifiConfiguration config = getIndex().byNetworkId.get(networkId);
+        return (config != null) ? copyOf(config) : null;
+    }
+
+    /**
+     * 全部已配置网络
+     *
+     * @return 新的列表, 元素为副本
+     */
+    public List<WifiConfiguration> getConfigurations() {
+        List<WifiConfiguration> configs = getIndex().configurations;
+        List<WifiConfiguration> copies = new ArrayList<WifiConfiguration>(configs.size());
+        for (int i = 0; i < configs.size(); i++) {
+            copies.add(copyOf(configs.get(i)));
+        }
+        return copies;
+    }
+
+    /**
+     * 全部已配置网络, 每次新转换为AccessPoint
+     *
+     * @return 新的列表
+     */
+    public List<AccessPoint> getAccessPoints() {
+        List<WifiConfiguration> configs = getIndex().configurations;
+        List<AccessPoint> accessPoints = new ArrayList<AccessPoint>(configs.size());
+        for (int i = 0; i < configs.size(); i++) {
+            accessPoints.add(AccessPoint.loadData(configs.get(i)));
+        }
+        return accessPoints;
+    }
+
+    /**
+     * 复制WifiConfiguration: 系统的拷贝构造函数是隐藏的, 这里复制所有公开字段, BitSet和数组复制内容,
+     * EAP配置由{@link EnterpriseConfigurator}复制。其他对象类型的字段仍与source共享
+     *
+     * @param source
+     *            WifiConfiguration
+     * @return 副本
+     */
+    public static WifiConfiguration copyOf(WifiConfiguration source) {
+        WifiConfiguration copy = new WifiConfiguration();
+        for (Field field : configFields()) {
+            try {
+                Object value = field.get(source);
+                if (value instanceof BitSet) {
+                    value = ((BitSet) value).clone();
+                } else if (value instanceof String[]) {
+                    value = ((String[]) value).clone();
+                }
+                field.set(copy, value);
+            } catch (IllegalAccessException e) {
+                // 公开字段, 不会发生
+                throw new IllegalStateException(e);
+            }
+        }
+        EnterpriseConfigurator.get().copy(source, copy);
+        return copy;
+    }
+
+    private static Field[] configFields() {
+        Field[] fields = sConfigFields;
+        if (fields == null) {
+            List<Field> list = new ArrayList<Field>();
+            for (Field field : WifiConfiguration.class.getFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)
+                        && !"enterpriseConfig".equals(field.getName())) {
+                    list.add(field);
+                }
+            }
+            fields = list.toArray(new Field[list.size()]);
+            sConfigFields = fields;
+        }
+        return fields;
+    }
+
+    private Index getIndex() {
+        Index index = mIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = mIndex;
+                if (index == null) {
+                    int version = mVersion.get();
+                    List<WifiConfiguration> configs = mBackend.getConfiguredNetworks();
+                    index = new Index(configs);
+                    // Wi-Fi关闭时系统返回null, 不缓存, 等Wi-Fi打开后再取
+                    if (configs != null && mIsReceiverRegistered && version == mVersion.get()) {
+                        mIndex = index;
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 去掉SSID两端的引号
+     *
+     * @param ssid
+     *            WifiConfiguration.SSID
+     * @return SSID
+     */
+    public static String unquote(String ssid) {
+        if (ssid != null && ssid.length() >= 2 && ssid.charAt(0) == '"' && ssid.charAt(ssid.length() - 1) == '"') {
+            return ssid.substring(1, ssid.length() - 1);
+        }
+        return ssid;
+    }
+
+    private static class Index {
+
+        final Map<String, WifiConfiguration> bySsid;
+
+        final Map<Integer, WifiConfiguration> byNetworkId;
+
+        final List<WifiConfiguration> configurations;
+
+        Index(List<WifiConfiguration> configs) {
+            int size = (configs == null) ? 0 : configs.size();
+            bySsid = new HashMap<String, WifiConfiguration>(size * 4 / 3 + 1);
+            byNetworkId = new HashMap<Integer, WifiConfiguration>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                WifiConfiguration config = configs.get(i);
+                String ssid = unquote(config.SSID);
+                if (ssid != null && !bySsid.containsKey(ssid)) {
+                    bySsid.put(ssid, config);
+                }
+                byNetworkId.put(config.networkId, config);
+            }
+            configurations = (configs == null) ? Collections.<WifiConfiguration> emptyList() : Collections
+                    .unmodifiableList(new ArrayList<WifiConfiguration>(configs));
+        }
+    }
+
+    // 已配置网络变化或Wi-Fi开关变化时使索引失效
+    private class ConfigChangeListener implements WifiEvent.Listener {
+        @Override
+        public void onWifiEvent(WifiEvent event) {
+            if (event.type == WifiEvent.Type.CONFIGURED_NETWORKS_CHANGED
+                    || event.type == WifiEvent.Type.WIFI_STATE_CHANGED) {
+                invalidate();
+            }
+        }
+    }
+}
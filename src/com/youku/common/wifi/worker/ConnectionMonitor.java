@@ -0,0 +1,275 @@
+package com.youku.common.wifi.worker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.youku.common.wifi.backend.AndroidWifiBackend;
+import com.youku.common.wifi.backend.WifiBackend;
+import com.youku.common.wifi.backend.WifiEvent;
+import com.youku.common.wifi.model.ConnectionSnapshot;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 维护当前连接的{@link ConnectionSnapshot}
+ * <p>
+ * 网络状态变化(包括DHCP完成后的CONNECTED)和Wi-Fi开关时在后台线程重新读取WifiInfo/DhcpInfo,
+ * 信号变化时只替换rssi, 不调用系统服务。读取快照只是一次volatile读, 不加锁。
+ * 第一次读取系统状态之前返回上次保存在磁盘上的快照, 磁盘缓存在后台加载, 加载完成前返回EMPTY。
+ */
+public class ConnectionMonitor {
+
+    private static final String PREFERENCES_NAME = "wifi_connection_snapshot";
+
+    private Context mContext;
+
+    private WifiBackend mBackend;
+
+    private Executor mExecutor;
+
+    private SharedPreferences mPreferences;
+
+    // 恢复或读取之前为null
+    private volatile ConnectionSnapshot mSnapshot;
+
+    // 发起刷新的序号和已发布的序号, 防止较早的刷新覆盖较新的结果
+    private long mRequestedSeq = 0;
+
+    private long mPublishedSeq = 0;
+
+    private boolean mIsReceiverRegistered = false;
+
+    private boolean mIsRestoring = false;
+
+    // 等待写入磁盘的快照, 只写最新的一个
+    private ConnectionSnapshot mPendingSave;
+
+    private boolean mIsSaving = false;
+
+    private final MonitorListener mListener = new MonitorListener();
+
+    /**
+     * 不调用任何系统服务, WifiManager在第一次需要时获取
+     *
+     * @param context
+     *            Context
+     * @param executor
+     *            读取系统状态和写磁盘的执行器
+     */
+    public ConnectionMonitor(Context context, Executor executor) {
+        this(context, new AndroidWifiBackend(context), executor);
+    }
+
+    /**
+     * @param context
+     *            用于保存快照, 为null时不读写磁盘
+     * @param backend
+     *            WifiBackend
+     * @param executor
+     *            读取系统状态和写磁盘的执行器
+     */
+    public ConnectionMonitor(Context context, WifiBackend backend, Executor executor) {
+        mContext = context;
+        mBackend = backend;
+        mExecutor = executor;
+    }
+
+    /**
+     * 在后台线程读取当前状态并开始监听, 同时开始加载磁盘缓存
+     */
+    public void warmUp() {
+        restoreAsync();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+                start();
+            }
+        });
+    }
+
+    /**
+     * 开始监听连接变化
+     */
+    public synchronized void start() {
+        if (mIsReceiverRegistered) {
+            return;
+        }
+        mBackend.addEventListener(mListener);
+        mIsReceiverRegistered = true;
+    }
+
+    public synchronized void stop() {
+        if (!mIsReceiverRegistered) {
+            return;
+        }
+        mBackend.removeEventListener(mListener);
+        mIsReceiverRegistered = false;
+    }
+
+    /**
+     * 当前连接信息, 还没有读取过系统状态时返回磁盘缓存; 不读磁盘, 缓存还没加载完成时返回EMPTY
+     *
+     * @return ConnectionSnapshot, 不会为null
+     * @see ConnectionSnapshot#isRestored()
+     */
+    public ConnectionSnapshot get() {
+        ConnectionSnapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        restoreAsync();
+        return ConnectionSnapshot.EMPTY;
+    }
+
+    /**
+     * 在当前线程重新读取WifiInfo/DhcpInfo
+     *
+     * @return 新的快照
+     */
+    public ConnectionSnapshot refresh() {
+        long seq;
+        synchronized (this) {
+            seq = ++mRequestedSeq;
+        }
+        return load(seq);
+    }
+
+    /**
+     * 在后台线程重新读取
+     */
+    public void refreshAsync() {
+        final long seq;
+        synchronized (this) {
+            seq = ++mRequestedSeq;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load(seq);
+            }
+        });
+    }
+
+    /**
+     * 清空连接信息, 如主动断开后
+     */
+    public void clear() {
+        synchronized (this) {
+            mPublishedSeq = ++mRequestedSeq;
+            mSnapshot = ConnectionSnapshot.EMPTY;
+        }
+        save(ConnectionSnapshot.EMPTY);
+    }
+
+    private synchronized SharedPreferences getPreferences() {
+        if (mPreferences == null && mContext != null) {
+            mPreferences = mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        }
+        return mPreferences;
+    }
+
+    // 在后台线程加载磁盘缓存, 只加载一次
+    private void restoreAsync() {
+        synchronized (this) {
+            if (mIsRestoring || mSnapshot != null) {
+                return;
+            }
+            mIsRestoring = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                restore();
+            }
+        });
+    }
+
+    private void restore() {
+        // 读磁盘时不持有锁
+        SharedPreferences preferences = getPreferences();
+        ConnectionSnapshot restored = (preferences != null) ? ConnectionSnapshot.readFrom(preferences) : null;
+        synchronized (this) {
+            // 已经读取过系统状态时丢弃
+            if (mSnapshot == null) {
+                mSnapshot = (restored != null) ? restored : ConnectionSnapshot.EMPTY;
+            }
+        }
+    }
+
+    private ConnectionSnapshot load(long seq) {
+        ConnectionSnapshot snapshot = mBackend.getConnectionSnapshot();
+        ConnectionSnapshot previous;
+        synchronized (this) {
+            if (seq < mPublishedSeq) {
+                return mSnapshot;
+            }
+            previous = mSnapshot;
+            mPublishedSeq = seq;
+            mSnapshot = snapshot;
+        }
+        if (previous == null || previous.isRestored() || !snapshot.sameConnection(previous)) {
+            save(snapshot);
+        }
+        return snapshot;
+    }
+
+    // 在后台线程写磁盘, 信号变化不写
+    private void save(ConnectionSnapshot snapshot) {
+        if (mContext == null) {
+            return;
+        }
+        synchronized (this) {
+            mPendingSave = snapshot;
+            if (mIsSaving) {
+                return;
+            }
+            mIsSaving = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    ConnectionSnapshot pending;
+                    synchronized (ConnectionMonitor.this) {
+                        pending = mPendingSave;
+                        mPendingSave = null;
+                        if (pending == null) {
+                            mIsSaving = false;
+                            return;
+                        }
+                    }
+                    SharedPreferences.Editor editor = getPreferences().edit().clear();
+                    if (pending != ConnectionSnapshot.EMPTY) {
+                        pending.writeTo(editor);
+                    }
+                    editor.commit();
+                }
+            }
+        });
+    }
+
+    private synchronized void updateRssi(int rssi) {
+        if (mSnapshot != null) {
+            mSnapshot = mSnapshot.withRssi(rssi, mBackend.elapsedRealtime());
+        }
+    }
+
+    private class MonitorListener implements WifiEvent.Listener {
+        @Override
+        public void onWifiEvent(WifiEvent event) {
+            switch (event.type) {
+                case RSSI_CHANGED:
+                    if (event.rssi != Integer.MIN_VALUE) {
+                        updateRssi(event.rssi);
+                    }
+                    break;
+                case NETWORK_STATE_CHANGED:
+                case WIFI_STATE_CHANGED:
+                    refreshAsync();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
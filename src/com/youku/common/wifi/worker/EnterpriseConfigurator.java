@@ -0,0 +1,201 @@
+package com.youku.common.wifi.worker;
+
+import android.annotation.TargetApi;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiEnterpriseConfig;
+import android.os.Build;
+import android.util.Log;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * EAP配置的写入/读取
+ * <p>
+ * API 18及以上使用公开的{@link WifiEnterpriseConfig}; 更早的版本通过反射访问WifiConfiguration.EnterpriseField,
+ * 反射句柄按ClassLoader解析一次后缓存复用。
+ */
+final class EnterpriseConfigurator {
+
+    private static final String TAG = "EnterpriseConfigurator";
+
+    /**
+     * 默认的EAP方法
+     */
+    static final String ENTERPRISE_EAP = "PEAP";
+
+    private static final Map<ClassLoader, EnterpriseConfigurator> sCache = new WeakHashMap<ClassLoader, EnterpriseConfigurator>();
+
+    // 以下句柄在不支持EnterpriseField的系统上为null
+    private final Method mSetValue;
+
+    private final Method mValue;
+
+    private final Field mEap;
+
+    private final Field mIdentity;
+
+    private final Field mPassword;
+
+    private EnterpriseConfigurator(Class<?> configClass) {
+        Class<?> enterpriseField = null;
+        for (Class<?> clazz : configClass.getClasses()) {
+            if (clazz.getName().contains("EnterpriseField")) {
+                enterpriseField = clazz;
+                break;
+            }
+        }
+        mSetValue = getMethod(enterpriseField, "setValue", String.class);
+        mValue = getMethod(enterpriseField, "value");
+        mEap = getField(configClass, "eap");
+        mIdentity = getField(configClass, "identity");
+        mPassword = getField(configClass, "password");
+    }
+
+    /**
+     * 获取当前ClassLoader下的反射句柄, 只在第一次调用时解析
+     *
+     * @return EnterpriseConfigurator
+     */
+    static EnterpriseConfigurator get() {
+        ClassLoader loader = WifiConfiguration.class.getClassLoader();
+        synchronized (sCache) {
+            EnterpriseConfigurator configurator = sCache.get(loader);
+            if (configurator == null) {
+                configurator = new EnterpriseConfigurator(WifiConfiguration.class);
+                sCache.put(loader, configurator);
+            }
+            return configurator;
+        }
+    }
+
+    /**
+     * 写入EAP方法/用户名/密码
+     *
+     * @param config
+     *            WifiConfiguration
+     * @param eap
+     *            EAP方法, 如"PEAP"
+     * @param identity
+     *            用户名
+     * @param password
+     *            密码
+     */
+    void apply(WifiConfiguration config, String eap, String identity, String password) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            applyEnterpriseConfig(config, eap, identity, password);
+            return;
+        }
+        if (mSetValue == null || mEap == null || mIdentity == null || mPassword == null) {
+            Log.w(TAG, "EnterpriseField not supported");
+            return;
+        }
+        try {
+            mSetValue.invoke(mEap.get(config), eap);
+            mSetValue.invoke(mIdentity.get(config), identity);
+            mSetValue.invoke(mPassword.get(config), password);
+        } catch (Exception e) {
+            Log.e(TAG, "apply EnterpriseField failed", e);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void applyEnterpriseConfig(WifiConfiguration config, String eap, String identity, String password) {
+        WifiEnterpriseConfig enterpriseConfig = new WifiEnterpriseConfig();
+        enterpriseConfig.setEapMethod(toEapMethod(eap));
+        enterpriseConfig.setIdentity(identity);
+        enterpriseConfig.setPassword(password);
+        config.enterpriseConfig = enterpriseConfig;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static int toEapMethod(String eap) {
+        if ("TLS".equals(eap)) {
+            return WifiEnterpriseConfig.Eap.TLS;
+        } else if ("TTLS".equals(eap)) {
+            return WifiEnterpriseConfig.Eap.TTLS;
+        } else if ("PWD".equals(eap)) {
+            return WifiEnterpriseConfig.Eap.PWD;
+        }
+        return WifiEnterpriseConfig.Eap.PEAP;
+    }
+
+    /**
+     * 复制EAP配置, 用于复制WifiConfiguration
+     *
+     * @param from
+     *            源
+     * @param to
+     *            目标
+     */
+    void copy(WifiConfiguration from, WifiConfiguration to) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            copyEnterpriseConfig(from, to);
+            return;
+        }
+        if (mSetValue == null) {
+            return;
+        }
+        for (Field field : WifiConfiguration.class.getFields()) {
+            Object value = readValue(from, field);
+            if (value == null) {
+                continue;
+            }
+            try {
+                mSetValue.invoke(field.get(to), value);
+            } catch (Exception e) {
+                Log.e(TAG, "copy EnterpriseField failed", e);
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void copyEnterpriseConfig(WifiConfiguration from, WifiConfiguration to) {
+        to.enterpriseConfig = (from.enterpriseConfig != null) ? new WifiEnterpriseConfig(from.enterpriseConfig) : null;
+    }
+
+    /**
+     * 读取EnterpriseField类型字段的值
+     *
+     * @param config
+     *            WifiConfiguration
+     * @param field
+     *            WifiConfiguration的字段
+     * @return 字段值, 不是EnterpriseField时返回null
+     */
+    Object readValue(WifiConfiguration config, Field field) {
+        if (mValue == null) {
+            return null;
+        }
+        try {
+            Object enterpriseField = field.get(config);
+            if (enterpriseField == null || !mValue.getDeclaringClass().isInstance(enterpriseField)) {
+                return null;
+            }
+            return mValue.invoke(enterpriseField);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Method getMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        if (clazz == null) {
+            return null;
+        }
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Field getField(Class<?> clazz, String name) {
+        try {
+            return clazz.getField(name);
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+}
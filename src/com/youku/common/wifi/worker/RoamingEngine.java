@@ -0,0 +1,361 @@
+package com.youku.common.wifi.worker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.wifi.WifiConfiguration;
+import android.util.Log;
+import com.youku.common.wifi.backend.WifiBackend;
+import com.youku.common.wifi.listener.WifiScanDiffListener;
+import com.youku.common.wifi.model.ErrorType;
+import com.youku.common.wifi.model.RoamingPolicy;
+import com.youku.common.wifi.model.RssiStats;
+import com.youku.common.wifi.model.ScanDiff;
+import com.youku.common.wifi.model.ScanSnapshot;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一SSID(ESS)内的漫游
+ * <p>
+ * 每次扫描后比较当前BSSID与同SSID其他BSSID平滑后的信号, 候选AP的优势超过hysteresis并保持dwellTime后,
+ * 把网络配置的BSSID固定为候选AP并reassociate, 关联完成后恢复为任意BSSID。漫游次数受minRoamInterval限制。
+ * 本身不发起扫描, 需要配合周期扫描或其他扫描请求使用。
+ * <p>
+ * 评估和所有系统调用都在执行器上进行。固定的BSSID保存在磁盘上, 超时后在执行器上自动恢复;
+ * 进程在固定期间退出时, 下次start()会先恢复遗留的BSSID。
+ */
+public class RoamingEngine {
+
+    private static final String TAG = "RoamingEngine";
+
+    // 固定BSSID后等待关联完成的最长时间
+    private static final long ROAM_TIMEOUT = 15 * 1000;
+
+    // WifiConfiguration.BSSID为该值时表示不限制BSSID
+    private static final String ANY_BSSID = "any";
+
+    private static final String PREFERENCES_NAME = "wifi_roaming";
+
+    private static final String KEY_NETWORK_ID = "pinnedNetworkId";
+
+    private static final String KEY_BSSID = "pinnedBssid";
+
+    private Context mContext;
+
+    private WifiBackend mBackend;
+
+    private WifiSearcher mSearcher;
+
+    private ScheduledExecutorService mExecutor;
+
+    private ConfiguredNetworkIndex mNetworkIndex;
+
+    private volatile RoamingPolicy mPolicy = RoamingPolicy.defaultPolicy();
+
+    private boolean mIsRunning = false;
+
+    // 正在观察的候选AP及其开始占优的时间
+    private long mCandidate = ScanSnapshot.INVALID_BSSID;
+
+    private long mCandidateSince;
+
+    private long mLastRoamTime = -1;
+
+    // 已固定BSSID的网络, 没有时为-1
+    private int mPinnedNetworkId = -1;
+
+    private long mPinnedBssid = ScanSnapshot.INVALID_BSSID;
+
+    // 固定后到期自动恢复的任务
+    private ScheduledFuture<?> mUnpinFuture;
+
+    private int mRoamCount = 0;
+
+    private final WifiScanDiffListener mListener = new WifiScanDiffListener() {
+        @Override
+        public void onSearchWifiFailed(ErrorType errorType) {
+        }
+
+        @Override
+        public void onScanDiff(ScanDiff diff) {
+            final ScanSnapshot snapshot = mSearcher.getLastSnapshot();
+            if (snapshot == null) {
+                return;
+            }
+            // 扫描结果在主线程分发, 评估中的系统调用放到执行器上
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    evaluate(snapshot);
+                }
+            });
+        }
+    };
+
+    private final Runnable mUnpinTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (RoamingEngine.this) {
+                mUnpinFuture = null;
+                unpin();
+            }
+        }
+    };
+
+    public RoamingEngine(WifiBackend backend, WifiSearcher searcher) {
+        this(null, backend, searcher, WifiExecutors.shared());
+    }
+
+    /**
+     * @param context
+     *            用于保存固定的BSSID, 为null时不读写磁盘
+     * @param backend
+     *            WifiBackend
+     * @param searcher
+     *            提供扫描结果和信号统计
+     * @param executor
+     *            评估和系统调用使用的执行器
+     */
+    public RoamingEngine(Context context, WifiBackend backend, WifiSearcher searcher,
+            ScheduledExecutorService executor) {
+        mContext = context;
+        mBackend = backend;
+        mSearcher = searcher;
+        mExecutor = executor;
+    }
+
+    /**
+     * 设置已配置网络索引, 修改BSSID时以已保存的配置为基础
+     *
+     * @param index
+     *            ConfiguredNetworkIndex
+     */
+    public void setConfiguredNetworkIndex(ConfiguredNetworkIndex index) {
+        mNetworkIndex = index;
+    }
+
+    public void setPolicy(RoamingPolicy policy) {
+        mPolicy = policy;
+    }
+
+    public RoamingPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * 开始在每次扫描后评估是否需要漫游, 先恢复上次进程遗留的固定BSSID
+     */
+    public synchronized void start() {
+        if (mIsRunning) {
+            return;
+        }
+        mIsRunning = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                restorePin();
+            }
+        });
+        mSearcher.addDiffListener(mListener);
+    }
+
+    /**
+     * 停止漫游, 在执行器上恢复被固定的BSSID
+     */
+    public synchronized void stop() {
+        if (!mIsRunning) {
+            return;
+        }
+        mIsRunning = false;
+        mSearcher.removeDiffListener(mListener);
+        mCandidate = ScanSnapshot.INVALID_BSSID;
+        mExecutor.execute(mUnpinTask);
+    }
+
+    public synchronized boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /**
+     * 已触发的漫游次数
+     *
+     * @return count
+     */
+    public synchronized int getRoamCount() {
+        return mRoamCount;
+    }
+
+    /**
+     * 根据一次扫描结果评估是否漫游
+     *
+     * @param snapshot
+     *            ScanSnapshot
+     */
+    synchronized void evaluate(ScanSnapshot snapshot) {
+        if (!mIsRunning) {
+            return;
+        }
+        long now = snapshot.getTimestamp();
+        int current = snapshot.getCurrentIndex();
+        if (mPinnedNetworkId >= 0) {
+            // 上一次漫游已完成或超时
+            if ((current >= 0 && snapshot.getBssid(current) == mPinnedBssid) || now - mLastRoamTime > ROAM_TIMEOUT) {
+                unpin();
+            }
+            return;
+        }
+        if (current < 0) {
+            mCandidate = ScanSnapshot.INVALID_BSSID;
+            return;
+        }
+        RoamingPolicy policy = mPolicy;
+        RssiTracker tracker = mSearcher.getRssiTracker();
+        RssiStats currentStats = tracker.get(snapshot.getBssid(current));
+        float currentLevel = (currentStats != null) ? currentStats.ewma : snapshot.getLevel(current);
+        if (currentLevel >= policy.triggerLevel) {
+            mCandidate = ScanSnapshot.INVALID_BSSID;
+            return;
+        }
+        // 同一SSID中平滑信号最强的其他BSSID
+        int ssidIndex = snapshot.getSsidIndex(current);
+        long best = ScanSnapshot.INVALID_BSSID;
+        float bestLevel = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (i == current || snapshot.getSsidIndex(i) != ssidIndex) {
+                continue;
+            }
+            RssiStats stats = tracker.get(snapshot.getBssid(i));
+            if (stats == null || stats.sampleCount < policy.minSamples) {
+                continue;
+            }
+            if (stats.ewma > bestLevel) {
+                bestLevel = stats.ewma;
+                best = snapshot.getBssid(i);
+            }
+        }
+        if (best == ScanSnapshot.INVALID_BSSID || bestLevel - currentLevel < policy.hysteresis) {
+            mCandidate = ScanSnapshot.INVALID_BSSID;
+            return;
+        }
+        if (best != mCandidate) {
+            mCandidate = best;
+            mCandidateSince = now;
+        }
+        if (now - mCandidateSince < policy.dwellTime) {
+            return;
+        }
+        if (mLastRoamTime >= 0 && now - mLastRoamTime < policy.minRoamInterval) {
+            return;
+        }
+        roam(best, now);
+    }
+
+    private void roam(long bssid, long now) {
+        int networkId = mBackend.getCurrentNetworkId();
+        if (networkId < 0) {
+            return;
+        }
+        mLastRoamTime = now;
+        mCandidate = ScanSnapshot.INVALID_BSSID;
+        if (!setBssid(networkId, ScanSnapshot.formatBssid(bssid))) {
+            Log.w(TAG, "pin BSSID failed, networkId=" + networkId);
+            return;
+        }
+        mPinnedNetworkId = networkId;
+        mPinnedBssid = bssid;
+        mRoamCount++;
+        savePin();
+        // 没有新的扫描结果时同样按时恢复
+        mUnpinFuture = mExecutor.schedule(mUnpinTask, ROAM_TIMEOUT, TimeUnit.MILLISECONDS);
+        Log.d(TAG, "roam to " + ScanSnapshot.formatBssid(bssid));
+        mBackend.reassociate();
+    }
+
+    private void unpin() {
+        if (mUnpinFuture != null) {
+            mUnpinFuture.cancel(false);
+            mUnpinFuture = null;
+        }
+        if (mPinnedNetworkId < 0) {
+            return;
+        }
+        if (!setBssid(mPinnedNetworkId, ANY_BSSID)) {
+            Log.w(TAG, "unpin BSSID failed, networkId=" + mPinnedNetworkId);
+        }
+        mPinnedNetworkId = -1;
+        mPinnedBssid = ScanSnapshot.INVALID_BSSID;
+        savePin();
+    }
+
+    // 恢复进程退出前没有恢复的BSSID
+    private synchronized void restorePin() {
+        SharedPreferences preferences = getPreferences();
+        if (mPinnedNetworkId >= 0 || preferences == null) {
+            return;
+        }
+        int networkId = preferences.getInt(KEY_NETWORK_ID, -1);
+        if (networkId < 0) {
+            return;
+        }
+        Log.d(TAG, "restore pinned BSSID, networkId=" + networkId);
+        mPinnedNetworkId = networkId;
+        mPinnedBssid = preferences.getLong(KEY_BSSID, ScanSnapshot.INVALID_BSSID);
+        unpin();
+    }
+
+    private void savePin() {
+        SharedPreferences preferences = getPreferences();
+        if (preferences == null) {
+            return;
+        }
+        SharedPreferences.Editor editor = preferences.edit().clear();
+        if (mPinnedNetworkId >= 0) {
+            editor.putInt(KEY_NETWORK_ID, mPinnedNetworkId);
+            editor.putLong(KEY_BSSID, mPinnedBssid);
+        }
+        editor.commit();
+    }
+
+    private SharedPreferences getPreferences() {
+        return (mContext != null) ? mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE) : null;
+    }
+
+    /**
+     * 以已保存配置的副本为基础只修改BSSID, 避免旧系统上updateNetwork覆盖hiddenSSID等未设置的字段
+     */
+    private boolean setBssid(int networkId, String bssid) {
+        WifiConfiguration config = findConfig(networkId);
+        if (config == null) {
+            return false;
+        }
+        config.BSSID = bssid;
+        if (mBackend.updateNetwork(config) < 0) {
+            return false;
+        }
+        ConfiguredNetworkIndex index = mNetworkIndex;
+        if (index != null) {
+            index.invalidate();
+        }
+        return true;
+    }
+
+    // 返回副本, 可以直接修改
+    private WifiConfiguration findConfig(int networkId) {
+        ConfiguredNetworkIndex index = mNetworkIndex;
+        if (index != null) {
+            return index.getByNetworkId(networkId);
+        }
+        List<WifiConfiguration> configs = mBackend.getConfiguredNetworks();
+        if (configs != null) {
+            for (WifiConfiguration config : configs) {
+                if (config.networkId == networkId) {
+                    return ConfiguredNetworkIndex.copyOf(config);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,334 @@
+package com.youku.common.wifi.worker;
+
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.RssiStats;
+import com.youku.common.wifi.model.ScanSnapshot;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按BSSID记录跨扫描的信号历史
+ * <p>
+ * 每个BSSID占用一个槽位, 槽位内是固定长度的byte环形缓冲; BSSID到槽位的映射是long键的开放寻址表,
+ * 全部为基本类型数组, 内存固定。槽位用满时淘汰最久没有出现的BSSID, 超过maxIdle没有出现的BSSID也会被淘汰。
+ */
+public class RssiTracker {
+
+    /**
+     * 默认最多记录的BSSID数
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * 默认每个BSSID保留的采样数
+     */
+    public static final int DEFAULT_WINDOW = 8;
+
+    /**
+     * 默认淘汰时间(毫秒)
+     */
+    public static final long DEFAULT_MAX_IDLE = 5 * 60 * 1000;
+
+    private static final float EWMA_ALPHA = 0.3f;
+
+    // 哈希表的空位, 与ScanSnapshot.INVALID_BSSID相同, 不会是有效的BSSID
+    private static final long EMPTY = ScanSnapshot.INVALID_BSSID;
+
+    private final int mCapacity;
+
+    private final int mWindow;
+
+    private volatile long mMaxIdle = DEFAULT_MAX_IDLE;
+
+    // BSSID -> 槽位
+    private final long[] mTableKeys;
+
+    private final int[] mTableSlots;
+
+    private final int mMask;
+
+    // 以下按槽位存储
+    private final long[] mKeys;
+
+    private final byte[] mSamples;
+
+    private final int[] mPositions;
+
+    private final int[] mCounts;
+
+    private final float[] mEwmas;
+
+    private final long[] mLastSeen;
+
+    // LRU双向链表, mHead为最近出现的槽位
+    private final int[] mPrev;
+
+    private final int[] mNext;
+
+    private int mHead = -1;
+
+    private int mTail = -1;
+
+    // 空闲槽位栈
+    private final int[] mFree;
+
+    private int mFreeCount;
+
+    public RssiTracker() {
+        this(DEFAULT_CAPACITY, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param capacity
+     *            最多记录的BSSID数
+     * @param window
+     *            每个BSSID保留的采样数
+     */
+    public RssiTracker(int capacity, int window) {
+        mCapacity = Math.max(1, capacity);
+        mWindow = Math.max(1, window);
+        int tableSize = Integer.highestOneBit(mCapacity * 2 - 1) << 1;
+        mTableKeys = new long[tableSize];
+        mTableSlots = new int[tableSize];
+        mMask = tableSize - 1;
+        mKeys = new long[mCapacity];
+        mSamples = new byte[mCapacity * mWindow];
+        mPositions = new int[mCapacity];
+        mCounts = new int[mCapacity];
+        mEwmas = new float[mCapacity];
+        mLastSeen = new long[mCapacity];
+        mPrev = new int[mCapacity];
+        mNext = new int[mCapacity];
+        mFree = new int[mCapacity];
+        clear();
+    }
+
+    /**
+     * 设置淘汰时间
+     *
+     * @param maxIdle
+     *            超过该时间(毫秒)没有出现的BSSID会被淘汰
+     */
+    public void setMaxIdle(long maxIdle) {
+        mMaxIdle = maxIdle;
+    }
+
+    /**
+     * 记录一次扫描结果
+     *
+     * @param snapshot
+     *            ScanSnapshot
+     */
+    public synchronized void update(ScanSnapshot snapshot) {
+        long now = snapshot.getTimestamp();
+        for (int i = 0; i < snapshot.size(); i++) {
+            long bssid = snapshot.getBssid(i);
+            if (bssid == EMPTY) {
+                continue;
+            }
+            int slot = find(bssid);
+            if (slot < 0) {
+                slot = allocate(bssid);
+            } else {
+                unlink(slot);
+            }
+            record(slot, snapshot.getLevel(i), now);
+            linkFirst(slot);
+        }
+        long maxIdle = mMaxIdle;
+        while (mTail >= 0 && now - mLastSeen[mTail] > maxIdle) {
+            release(mTail);
+        }
+    }
+
+    /**
+     * 获取BSSID的信号统计
+     *
+     * @param bssid
+     *            压缩后的BSSID
+     * @return RssiStats, 没有记录时返回null
+     */
+    public synchronized RssiStats get(long bssid) {
+        int slot = (bssid == EMPTY) ? -1 : find(bssid);
+        return (slot < 0) ? null : computeStats(slot);
+    }
+
+    /**
+     * 获取BSSID的信号统计
+     *
+     * @param bssid
+     *            "aa:bb:cc:dd:ee:ff"格式的BSSID
+     * @return RssiStats, 没有记录时返回null
+     */
+    public RssiStats get(String bssid) {
+        return get(ScanSnapshot.packBssid(bssid));
+    }
+
+    /**
+     * 为扫描结果设置{@link AccessPoint#rssiStats}
+     *
+     * @param accessPoints
+     *            扫描结果
+     */
+    public synchronized void attach(List<AccessPoint> accessPoints) {
+        for (AccessPoint accessPoint : accessPoints) {
+            accessPoint.rssiStats = get(ScanSnapshot.packBssid(accessPoint.bssid));
+        }
+    }
+
+    /**
+     * 当前记录的BSSID数
+     *
+     * @return count
+     */
+    public synchronized int size() {
+        return mCapacity - mFreeCount;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(mTableKeys, EMPTY);
+        mHead = -1;
+        mTail = -1;
+        for (int i = 0; i < mCapacity; i++) {
+            mFree[i] = mCapacity - 1 - i;
+        }
+        mFreeCount = mCapacity;
+    }
+
+    private void record(int slot, int level, long now) {
+        int value = Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, level));
+        mSamples[slot * mWindow + mPositions[slot]] = (byte) value;
+        mPositions[slot] = (mPositions[slot] + 1) % mWindow;
+        if (mCounts[slot] == 0) {
+            mEwmas[slot] = value;
+        } else {
+            mEwmas[slot] += EWMA_ALPHA * (value - mEwmas[slot]);
+        }
+        if (mCounts[slot] < Integer.MAX_VALUE) {
+            mCounts[slot]++;
+        }
+        mLastSeen[slot] = now;
+    }
+
+    private RssiStats computeStats(int slot) {
+        int n = Math.min(mCounts[slot], mWindow);
+        int base = slot * mWindow;
+        // 从最早的采样开始
+        int start = (mPositions[slot] - n + mWindow) % mWindow;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        long sum = 0;
+        long weightedSum = 0;
+        int last = 0;
+        for (int i = 0; i < n; i++) {
+            int value = mSamples[base + (start + i) % mWindow];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            weightedSum += (long) i * value;
+            last = value;
+        }
+        float mean = (float) sum / n;
+        float variance = 0;
+        for (int i = 0; i < n; i++) {
+            float d = mSamples[base + (start + i) % mWindow] - mean;
+            variance += d * d;
+        }
+        variance /= n;
+        // 最小二乘斜率, x为0..n-1
+        float trend = 0;
+        if (n > 1) {
+            float meanX = (n - 1) / 2f;
+            float sxx = n * (n * n - 1) / 12f;
+            trend = (weightedSum - meanX * sum) / sxx;
+        }
+        return new RssiStats(mCounts[slot], last, mEwmas[slot], min, max, variance, trend, mLastSeen[slot]);
+    }
+
+    private int allocate(long bssid) {
+        if (mFreeCount == 0) {
+            release(mTail);
+        }
+        int slot = mFree[--mFreeCount];
+        mKeys[slot] = bssid;
+        mPositions[slot] = 0;
+        mCounts[slot] = 0;
+        int index = hash(bssid);
+        while (mTableKeys[index] != EMPTY) {
+            index = (index + 1) & mMask;
+        }
+        mTableKeys[index] = bssid;
+        mTableSlots[index] = slot;
+        return slot;
+    }
+
+    // 淘汰槽位, 并从哈希表中删除(线性探测的后移删除)
+    private void release(int slot) {
+        unlink(slot);
+        mFree[mFreeCount++] = slot;
+        int index = hash(mKeys[slot]);
+        while (mTableKeys[index] != mKeys[slot]) {
+            index = (index + 1) & mMask;
+        }
+        int next = (index + 1) & mMask;
+        while (mTableKeys[next] != EMPTY) {
+            int ideal = hash(mTableKeys[next]);
+            // ideal不在(index, next]之间时可以前移
+            boolean movable = (index <= next) ? (ideal <= index || ideal > next) : (ideal <= index && ideal > next);
+            if (movable) {
+                mTableKeys[index] = mTableKeys[next];
+                mTableSlots[index] = mTableSlots[next];
+                index = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        mTableKeys[index] = EMPTY;
+    }
+
+    private int find(long bssid) {
+        int index = hash(bssid);
+        long key;
+        while ((key = mTableKeys[index]) != EMPTY) {
+            if (key == bssid) {
+                return mTableSlots[index];
+            }
+            index = (index + 1) & mMask;
+        }
+        return -1;
+    }
+
+    private int hash(long bssid) {
+        long h = bssid * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mMask;
+    }
+
+    private void unlink(int slot) {
+        int prev = mPrev[slot];
+        int next = mNext[slot];
+        if (prev >= 0) {
+            mNext[prev] = next;
+        } else {
+            mHead = next;
+        }
+        if (next >= 0) {
+            mPrev[next] = prev;
+        } else {
+            mTail = prev;
+        }
+        mPrev[slot] = -1;
+        mNext[slot] = -1;
+    }
+
+    private void linkFirst(int slot) {
+        mPrev[slot] = -1;
+        mNext[slot] = mHead;
+        if (mHead >= 0) {
+            mPrev[mHead] = slot;
+        }
+        mHead = slot;
+        if (mTail < 0) {
+            mTail = slot;
+        }
+    }
+}
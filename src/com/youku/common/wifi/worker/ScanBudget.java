@@ -0,0 +1,212 @@
+package com.youku.common.wifi.worker;
+
+import android.os.Build;
+import com.youku.common.wifi.backend.AndroidWifiBackend;
+import com.youku.common.wifi.backend.WifiBackend;
+import com.youku.common.wifi.backend.WifiClock;
+import com.youku.common.wifi.model.ScanPriority;
+
+/**
+ * 进程内共享的扫描预算(令牌桶)
+ * <p>
+ * Android 9起系统限制前台应用每两分钟只能调用几次startScan(), 超出后只返回旧结果或一直等不到结果。
+ * 每次真实扫描消耗一个令牌, 令牌按固定间隔补充。只有{@link ScanPriority#LOW}需要桶内保留一半令牌,
+ * 不足时由调用者改用缓存结果; HIGH/NORMAL只在系统真正拒绝扫描后才受限。加入正在进行的扫描不消耗令牌。
+ * 更早的系统没有限流, 默认不限制。
+ */
+public class ScanBudget {
+
+    /**
+     * 不限制扫描次数的桶容量
+     */
+    public static final int UNLIMITED = 0;
+
+    /**
+     * Android 9及以上的默认桶容量
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * 默认补满整个桶的时间(毫秒)
+     */
+    public static final long DEFAULT_PERIOD = 2 * 60 * 1000;
+
+    // Build.VERSION_CODES.P
+    private static final int VERSION_P = 28;
+
+    private static final ScanBudget sShared = new ScanBudget(defaultCapacity(), DEFAULT_PERIOD);
+
+    private int mCapacity;
+
+    // 补充一个令牌的间隔
+    private long mRefillInterval;
+
+    private int mTokens;
+
+    private long mLastRefill;
+
+    // 系统拒绝扫描后, 在该时间之前NORMAL请求也使用缓存
+    private long mThrottledUntil;
+
+    private long mGrantedCount = 0;
+
+    private long mThrottledCount = 0;
+
+    private final WifiClock mClock;
+
+    /**
+     * @param capacity
+     *            桶容量, 即period内最多扫描次数, {@link #UNLIMITED}表示不限制
+     * @param period
+     *            补满整个桶的时间(毫秒)
+     */
+    public ScanBudget(int capacity, long period) {
+        this(capacity, period, WifiClock.SYSTEM);
+    }
+
+    /**
+     * @param capacity
+     *            桶容量, {@link #UNLIMITED}表示不限制
+     * @param period
+     *            补满整个桶的时间(毫秒)
+     * @param clock
+     *            补充令牌使用的时钟
+     */
+    public ScanBudget(int capacity, long period, WifiClock clock) {
+        mClock = clock;
+        setRate(capacity, period);
+        mTokens = mCapacity;
+        mLastRefill = clock.elapsedRealtime();
+        mThrottledUntil = mLastRefill;
+    }
+
+    /**
+     * 进程内所有使用系统Wi-Fi的WifiSearcher默认共享的预算, 容量由系统版本决定
+     *
+     * @return ScanBudget
+     */
+    public static ScanBudget shared() {
+        return sShared;
+    }
+
+    /**
+     * backend对应的默认预算: {@link AndroidWifiBackend}共享{@link #shared()}, 系统按应用限流;
+     * 其他后端(如模拟器)各自新建一份, 使用后端自己的时钟
+     *
+     * @param backend
+     *            WifiBackend
+     * @return ScanBudget
+     */
+    public static ScanBudget forBackend(WifiBackend backend) {
+        if (backend instanceof AndroidWifiBackend) {
+            return sShared;
+        }
+        return new ScanBudget(defaultCapacity(), DEFAULT_PERIOD, backend);
+    }
+
+    /**
+     * 当前系统版本的默认桶容量
+     *
+     * @return Android 9及以上为{@link #DEFAULT_CAPACITY}, 否则为{@link #UNLIMITED}
+     */
+    public static int defaultCapacity() {
+        return (Build.VERSION.SDK_INT >= VERSION_P) ? DEFAULT_CAPACITY : UNLIMITED;
+    }
+
+    /**
+     * 设置速率, 可按系统版本调整
+     *
+     * @param capacity
+     *            桶容量, {@link #UNLIMITED}表示不限制
+     * @param period
+     *            补满整个桶的时间(毫秒)
+     */
+    public synchronized void setRate(int capacity, long period) {
+        mCapacity = Math.max(UNLIMITED, capacity);
+        mRefillInterval = Math.max(1, period / Math.max(1, mCapacity));
+        mTokens = Math.min(mTokens, mCapacity);
+    }
+
+    /**
+     * 是否不限制扫描次数
+     *
+     * @return result
+     */
+    public synchronized boolean isUnlimited() {
+        return mCapacity == UNLIMITED;
+    }
+
+    /**
+     * 尝试为一次真实扫描获取令牌
+     *
+     * @param priority
+     *            请求优先级
+     * @return 是否获取成功
+     */
+    public synchronized boolean tryAcquire(ScanPriority priority) {
+        long now = mClock.elapsedRealtime();
+        refill(now);
+        boolean granted;
+        switch (priority) {
+            case HIGH:
+                // 由系统决定是否限流
+                granted = true;
+                break;
+            case LOW:
+                granted = now >= mThrottledUntil && (mCapacity == UNLIMITED || mTokens - 1 >= mCapacity / 2);
+                break;
+            default:
+                granted = now >= mThrottledUntil;
+                break;
+        }
+        if (!granted) {
+            mThrottledCount++;
+            return false;
+        }
+        if (mTokens > 0) {
+            mTokens--;
+        }
+        mGrantedCount++;
+        return true;
+    }
+
+    /**
+     * 系统拒绝了扫描, 说明实际预算已经用完: 清空令牌, 一个补充间隔内NORMAL/LOW请求使用缓存
+     */
+    public synchronized void onThrottled() {
+        long now = mClock.elapsedRealtime();
+        mTokens = 0;
+        mLastRefill = now;
+        mThrottledUntil = now + ((mCapacity == UNLIMITED) ? DEFAULT_PERIOD / DEFAULT_CAPACITY : mRefillInterval);
+    }
+
+    /**
+     * 当前可用的令牌数
+     *
+     * @return count, 不限制时为0
+     */
+    public synchronized int getAvailableTokens() {
+        refill(mClock.elapsedRealtime());
+        return mTokens;
+    }
+
+    public synchronized long getGrantedCount() {
+        return mGrantedCount;
+    }
+
+    public synchronized long getThrottledCount() {
+        return mThrottledCount;
+    }
+
+    private void refill(long now) {
+        if (mTokens >= mCapacity) {
+            mLastRefill = now;
+            return;
+        }
+        long count = (now - mLastRefill) / mRefillInterval;
+        if (count > 0) {
+            mTokens = (int) Math.min(mCapacity, mTokens + count);
+            mLastRefill += count * mRefillInterval;
+        }
+    }
+}
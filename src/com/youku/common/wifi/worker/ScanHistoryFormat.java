@@ -0,0 +1,295 @@
+package com.youku.common.wifi.worker;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 扫描历史段文件的布局, 由{@link ScanHistoryRecorder}和{@link ScanHistoryReader}共用
+ * <p>
+ * 每个段文件大小固定: 64字节文件头, SSID表(SSID_CAPACITY个33字节的条目: 1字节长度 + 最多32字节UTF-8),
+ * 然后是24字节的定长记录:
+ * <pre>
+ *  0  long  时间(System.currentTimeMillis(), 单调不减)
+ *  8  6字节 BSSID
+ * 14  short 段内SSID编号
+ * 16  short 频率(MHz)
+ * 18  byte  信号强度(dBm)
+ * 19  byte  加密方式: 低4位SecurityMode序号, 高4位PskType序号, 0xf为null
+ * 20  byte  标志, 见FLAG_CURRENT
+ * 21  3字节 保留
+ * </pre>
+ * 文件头中的记录数和SSID数只在一批记录写完后更新, 读取时只看已提交的部分。
+ * <p>
+ * 映射内存的普通读写在线程间没有可见性保证, 所以同一进程内的写入者每次提交后还通过{@link #publish}
+ * 发布一份{@link Commit}, 读取者优先使用它, 保证看不到写了一半的扫描。
+ * 其他进程读取时只能依赖文件头, 没有这一保证。
+ */
+final class ScanHistoryFormat {
+
+    static final int MAGIC = 0x5753484c; // "WSHL"
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int RECORD_SIZE = 24;
+
+    static final int SSID_CAPACITY = 1024;
+
+    static final int SSID_MAX_BYTES = 32;
+
+    static final int SSID_ENTRY_SIZE = 1 + SSID_MAX_BYTES;
+
+    static final int RECORDS_OFFSET = HEADER_SIZE + SSID_CAPACITY * SSID_ENTRY_SIZE;
+
+    // 文件头字段的位置
+    static final int OFFSET_MAGIC = 0;
+
+    static final int OFFSET_VERSION = 4;
+
+    static final int OFFSET_RECORD_SIZE = 8;
+
+    static final int OFFSET_SSID_COUNT = 12;
+
+    static final int OFFSET_RECORD_COUNT = 16;
+
+    static final int OFFSET_FIRST_TIME = 24;
+
+    static final int OFFSET_LAST_TIME = 32;
+
+    // 记录字段的位置
+    static final int FIELD_TIME = 0;
+
+    static final int FIELD_BSSID = 8;
+
+    static final int FIELD_SSID = 14;
+
+    static final int FIELD_FREQUENCY = 16;
+
+    static final int FIELD_LEVEL = 18;
+
+    static final int FIELD_SECURITY = 19;
+
+    static final int FIELD_FLAGS = 20;
+
+    /**
+     * 记录标志: 记录时的当前连接
+     */
+    static final int FLAG_CURRENT = 1;
+
+    static final int NULL_ORDINAL = 0x0f;
+
+    private static final String PREFIX = "scan-";
+
+    private static final String SUFFIX = ".seg";
+
+    // 本进程内已发布的提交状态, 段文件绝对路径 -> Commit
+    private static final ConcurrentHashMap<String, Commit> sCommits = new ConcurrentHashMap<String, Commit>();
+
+    private ScanHistoryFormat() {
+    }
+
+    static String segmentName(long sequence) {
+        String digits = Long.toString(sequence);
+        StringBuilder builder = new StringBuilder(PREFIX);
+        for (int i = digits.length(); i < 10; i++) {
+            builder.append('0');
+        }
+        return builder.append(digits).append(SUFFIX).toString();
+    }
+
+    /**
+     * 段文件的序号
+     *
+     * @param file
+     *            段文件
+     * @return 序号, 不是段文件时返回-1
+     */
+    static long sequenceOf(File file) {
+        String name = file.getName();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 目录中的段文件, 按序号从旧到新排列
+     *
+     * @param directory
+     *            目录
+     * @return 不会为null
+     */
+    static File[] listSegments(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // 序号补零到相同位数, 按文件名排序即按序号排序
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * 段文件中最多能保存的记录数
+     *
+     * @param segmentSize
+     *            段文件大小
+     * @return count
+     */
+    static int recordCapacity(long segmentSize) {
+        return (int) Math.max(0, (segmentSize - RECORDS_OFFSET) / RECORD_SIZE);
+    }
+
+    /**
+     * 读取SSID表中的条目
+     *
+     * @param buffer
+     *            段文件
+     * @param id
+     *            段内SSID编号
+     * @return SSID
+     */
+    static String readSsid(ByteBuffer buffer, int id) {
+        int offset = HEADER_SIZE + id * SSID_ENTRY_SIZE;
+        int length = Math.min(SSID_MAX_BYTES, buffer.get(offset) & 0xff);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 1 + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * SSID写入SSID表后再读出的值, 超过SSID_MAX_BYTES的部分被截断
+     *
+     * @param ssid
+     *            SSID
+     * @return 截断后的SSID, 用作SSID表的键
+     */
+    static String storedSsid(String ssid) {
+        // UTF-8每个char最多3字节, 足够短时不需要编码
+        if (ssid.length() * 3 <= SSID_MAX_BYTES) {
+            return ssid;
+        }
+        byte[] bytes = toBytes(ssid);
+        int length = truncatedLength(bytes);
+        if (length == bytes.length) {
+            return ssid;
+        }
+        try {
+            return new String(bytes, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 发布段文件的提交状态, 在写完记录和文件头之后调用
+     *
+     * @param file
+     *            段文件
+     * @param commit
+     *            Commit
+     */
+    static void publish(File file, Commit commit) {
+        sCommits.put(file.getAbsolutePath(), commit);
+    }
+
+    /**
+     * 段文件被删除后移除其提交状态
+     *
+     * @param file
+     *            段文件
+     */
+    static void unpublish(File file) {
+        sCommits.remove(file.getAbsolutePath());
+    }
+
+    /**
+     * 读取段文件已提交的状态: 本进程内有写入者时使用其发布的状态, 否则读文件头
+     *
+     * @param file
+     *            段文件
+     * @param buffer
+     *            段文件的映射
+     * @return Commit
+     */
+    static Commit readCommit(File file, ByteBuffer buffer) {
+        Commit commit = sCommits.get(file.getAbsolutePath());
+        if (commit != null) {
+            return commit;
+        }
+        return new Commit(buffer.getInt(OFFSET_SSID_COUNT), buffer.getInt(OFFSET_RECORD_COUNT),
+                buffer.getLong(OFFSET_FIRST_TIME), buffer.getLong(OFFSET_LAST_TIME), buffer.capacity());
+    }
+
+    static byte[] toBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 超过SSID_MAX_BYTES时在字符边界截断
+     *
+     * @param utf8
+     *            UTF-8编码的SSID
+     * @return 保存的字节数
+     */
+    static int truncatedLength(byte[] utf8) {
+        if (utf8.length <= SSID_MAX_BYTES) {
+            return utf8.length;
+        }
+        int length = SSID_MAX_BYTES;
+        // 不从多字节字符的中间截断
+        while (length > 0 && (utf8[length] & 0xc0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * 段文件一次提交后的文件头内容, 不可变
+     */
+    static final class Commit {
+
+        final int ssidCount;
+
+        final int recordCount;
+
+        final long firstTime;
+
+        final long lastTime;
+
+        /**
+         * @param segmentSize
+         *            段文件大小, 用于限制记录数
+         */
+        Commit(int ssidCount, int recordCount, long firstTime, long lastTime, long segmentSize) {
+            this.ssidCount = Math.min(SSID_CAPACITY, Math.max(0, ssidCount));
+            this.recordCount = Math.min(recordCapacity(segmentSize), Math.max(0, recordCount));
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+        }
+    }
+}
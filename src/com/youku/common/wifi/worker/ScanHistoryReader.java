@@ -0,0 +1,297 @@
+package com.youku.common.wifi.worker;
+
+import android.util.Log;
+import com.youku.common.wifi.model.PskType;
+import com.youku.common.wifi.model.ScanSnapshot;
+import com.youku.common.wifi.model.SecurityMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 读取{@link ScanHistoryRecorder}写入的扫描历史
+ * <p>
+ * 段文件以只读方式映射, 按需读取记录, 不把整个段读入堆内存。可以在记录的同时读取, 只能看到已提交的记录;
+ * 在另一个进程中读取时只依赖文件头的写入顺序, 见{@link ScanHistoryFormat}。
+ */
+public class ScanHistoryReader {
+
+    private static final String TAG = "ScanHistoryReader";
+
+    private static final SecurityMode[] SECURITY_MODES = SecurityMode.values();
+
+    private static final PskType[] PSK_TYPES = PskType.values();
+
+    private final File mDirectory;
+
+    public ScanHistoryReader(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * 按时间查询
+     *
+     * @param from
+     *            起始时间(包含), System.currentTimeMillis()
+     * @param to
+     *            结束时间(不包含)
+     * @return Cursor, 按时间顺序
+     */
+    public Cursor query(long from, long to) {
+        return new Cursor(ScanHistoryFormat.listSegments(mDirectory), from, to);
+    }
+
+    /**
+     * 全部记录
+     *
+     * @return Cursor, 按时间顺序
+     */
+    public Cursor all() {
+        return query(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 最早一条记录的时间
+     *
+     * @return 没有记录时返回-1
+     */
+    public long getFirstTime() {
+        for (File file : ScanHistoryFormat.listSegments(mDirectory)) {
+            MappedByteBuffer buffer = map(file);
+            if (buffer != null) {
+                ScanHistoryFormat.Commit commit = ScanHistoryFormat.readCommit(file, buffer);
+                if (commit.recordCount > 0) {
+                    return commit.firstTime;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 最近一条记录的时间
+     *
+     * @return 没有记录时返回-1
+     */
+    public long getLastTime() {
+        File[] files = ScanHistoryFormat.listSegments(mDirectory);
+        for (int i = files.length - 1; i >= 0; i--) {
+            MappedByteBuffer buffer = map(files[i]);
+            if (buffer != null) {
+                ScanHistoryFormat.Commit commit = ScanHistoryFormat.readCommit(files[i], buffer);
+                if (commit.recordCount > 0) {
+                    return commit.lastTime;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // 只读映射, 格式不符或无法打开时返回null
+    private static MappedByteBuffer map(File file) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                long length = raf.length();
+                if (length < ScanHistoryFormat.RECORDS_OFFSET || length > Integer.MAX_VALUE) {
+                    return null;
+                }
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                if (buffer.getInt(ScanHistoryFormat.OFFSET_MAGIC) != ScanHistoryFormat.MAGIC
+                        || buffer.getInt(ScanHistoryFormat.OFFSET_VERSION) != ScanHistoryFormat.VERSION
+                        || buffer.getInt(ScanHistoryFormat.OFFSET_RECORD_SIZE) != ScanHistoryFormat.RECORD_SIZE) {
+                    return null;
+                }
+                return buffer;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            // 段文件可能正被删除
+            Log.w(TAG, "cannot read " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 按时间顺序遍历记录, 取值方法返回当前记录的字段。不是线程安全的
+     */
+    public static class Cursor {
+
+        private final File[] mFiles;
+
+        private final long mFrom;
+
+        private final long mTo;
+
+        private int mFileIndex = -1;
+
+        private MappedByteBuffer mBuffer;
+
+        // 本段SSID编号 -> SSID, 按需解码
+        private String[] mSsids;
+
+        private int mSsidCount;
+
+        private int mIndex;
+
+        private int mEnd;
+
+        private int mOffset = -1;
+
+        private boolean mIsFinished = false;
+
+        Cursor(File[] files, long from, long to) {
+            mFiles = files;
+            mFrom = from;
+            mTo = to;
+        }
+
+        /**
+         * 移动到下一条记录
+         *
+         * @return 没有更多记录时返回false
+         */
+        public boolean next() {
+            while (!mIsFinished) {
+                if (mBuffer != null && mIndex < mEnd) {
+                    int offset = ScanHistoryFormat.RECORDS_OFFSET + mIndex * ScanHistoryFormat.RECORD_SIZE;
+                    if (mBuffer.getLong(offset + ScanHistoryFormat.FIELD_TIME) >= mTo) {
+                        // 时间单调, 之后的段也都超出范围
+                        break;
+                    }
+                    mOffset = offset;
+                    mIndex++;
+                    return true;
+                }
+                if (!openNextSegment()) {
+                    break;
+                }
+            }
+            close();
+            return false;
+        }
+
+        private boolean openNextSegment() {
+            mBuffer = null;
+            while (++mFileIndex < mFiles.length) {
+                MappedByteBuffer buffer = map(mFiles[mFileIndex]);
+                if (buffer == null) {
+                    continue;
+                }
+                ScanHistoryFormat.Commit commit = ScanHistoryFormat.readCommit(mFiles[mFileIndex], buffer);
+                int count = commit.recordCount;
+                if (count == 0 || commit.lastTime < mFrom) {
+                    continue;
+                }
+                if (commit.firstTime >= mTo) {
+                    return false;
+                }
+                mBuffer = buffer;
+                mSsidCount = commit.ssidCount;
+                mSsids = new String[mSsidCount];
+                mIndex = lowerBound(buffer, count, mFrom);
+                mEnd = count;
+                return true;
+            }
+            return false;
+        }
+
+        // 第一条时间不小于from的记录
+        private static int lowerBound(MappedByteBuffer buffer, int count, long from) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int offset = ScanHistoryFormat.RECORDS_OFFSET + mid * ScanHistoryFormat.RECORD_SIZE;
+                if (buffer.getLong(offset + ScanHistoryFormat.FIELD_TIME) < from) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 结束遍历, 释放对映射的引用
+         */
+        public void close() {
+            mIsFinished = true;
+            mBuffer = null;
+            mSsids = null;
+            mOffset = -1;
+        }
+
+        /**
+         * 记录时间, 同一次扫描的记录时间相同
+         *
+         * @return System.currentTimeMillis()
+         */
+        public long getTime() {
+            return mBuffer.getLong(mOffset + ScanHistoryFormat.FIELD_TIME);
+        }
+
+        /**
+         * 压缩的BSSID
+         *
+         * @return 与{@link ScanSnapshot#packBssid(String)}相同
+         */
+        public long getBssid() {
+            long bssid = 0;
+            for (int i = 0; i < 6; i++) {
+                bssid = (bssid << 8) | (mBuffer.get(mOffset + ScanHistoryFormat.FIELD_BSSID + i) & 0xff);
+            }
+            return bssid;
+        }
+
+        public String getBssidString() {
+            return ScanSnapshot.formatBssid(getBssid());
+        }
+
+        public String getSsid() {
+            int id = mBuffer.getShort(mOffset + ScanHistoryFormat.FIELD_SSID) & 0xffff;
+            if (id >= mSsidCount) {
+                return null;
+            }
+            String ssid = mSsids[id];
+            if (ssid == null) {
+                ssid = ScanHistoryFormat.readSsid(mBuffer, id);
+                mSsids[id] = ssid;
+            }
+            return ssid;
+        }
+
+        public int getFrequency() {
+            return mBuffer.getShort(mOffset + ScanHistoryFormat.FIELD_FREQUENCY) & 0xffff;
+        }
+
+        public int getLevel() {
+            return mBuffer.get(mOffset + ScanHistoryFormat.FIELD_LEVEL);
+        }
+
+        public SecurityMode getSecurityMode() {
+            int ordinal = mBuffer.get(mOffset + ScanHistoryFormat.FIELD_SECURITY) & 0x0f;
+            return (ordinal < SECURITY_MODES.length) ? SECURITY_MODES[ordinal] : null;
+        }
+
+        public PskType getPskType() {
+            int ordinal = (mBuffer.get(mOffset + ScanHistoryFormat.FIELD_SECURITY) >> 4) & 0x0f;
+            return (ordinal < PSK_TYPES.length) ? PSK_TYPES[ordinal] : null;
+        }
+
+        /**
+         * 记录时是否为当前连接的AP
+         *
+         * @return result
+         */
+        public boolean isCurrent() {
+            return (mBuffer.get(mOffset + ScanHistoryFormat.FIELD_FLAGS) & ScanHistoryFormat.FLAG_CURRENT) != 0;
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package com.youku.common.wifi.worker;
+
+import android.util.Log;
+import com.youku.common.wifi.model.PskType;
+import com.youku.common.wifi.model.ScanSnapshot;
+import com.youku.common.wifi.model.SecurityMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 把每次扫描结果追加到内存映射的段文件中, 用于长时间记录覆盖情况
+ * <p>
+ * 每个AP一条定长记录, 格式见{@link ScanHistoryFormat}。段文件写满或SSID表满时换新段,
+ * 所有段的总大小超过上限时删除最旧的段。写入在执行器上进行, 来不及写入时丢弃最旧的扫描。
+ * 同一进程内的{@link ScanHistoryReader}只能看到完整提交的扫描, 见{@link ScanHistoryFormat}。
+ * 通过{@link WifiSearcher#setHistoryRecorder(ScanHistoryRecorder)}挂到扫描结果上,
+ * 用{@link ScanHistoryReader}读取。
+ */
+public class ScanHistoryRecorder {
+
+    private static final String TAG = "ScanHistoryRecorder";
+
+    /**
+     * 默认段文件大小
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * 默认所有段的总大小上限
+     */
+    public static final long DEFAULT_MAX_TOTAL_SIZE = 16 * 1024 * 1024;
+
+    // 段文件的最小大小, 至少能放下文件头、SSID表和一些记录
+    private static final long MIN_SEGMENT_SIZE = ScanHistoryFormat.RECORDS_OFFSET + 1024 * ScanHistoryFormat.RECORD_SIZE;
+
+    // 最多等待写入的扫描数
+    private static final int MAX_PENDING = 16;
+
+    private final File mDirectory;
+
+    private final long mSegmentSize;
+
+    private final long mMaxTotalSize;
+
+    private final Executor mExecutor;
+
+    // ArrayDeque需要API 9
+    private final LinkedList<Pending> mPending = new LinkedList<Pending>();
+
+    private boolean mIsWriting = false;
+
+    private boolean mIsClosed = false;
+
+    // 以下只在写入线程访问
+    private Segment mSegment;
+
+    private long mLastTime = Long.MIN_VALUE;
+
+    private long mRecordCount = 0;
+
+    private long mDroppedCount = 0;
+
+    private boolean mFailed = false;
+
+    public ScanHistoryRecorder(File directory, Executor executor) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_TOTAL_SIZE, executor);
+    }
+
+    /**
+     * @param directory
+     *            保存段文件的目录, 不存在时创建
+     * @param segmentSize
+     *            每个段文件的大小, 创建时即占用该大小
+     * @param maxTotalSize
+     *            所有段的总大小上限, 至少保留两个段
+     * @param executor
+     *            写文件的执行器
+     */
+    public ScanHistoryRecorder(File directory, long segmentSize, long maxTotalSize, Executor executor) {
+        mDirectory = directory;
+        mSegmentSize = Math.min(Integer.MAX_VALUE, Math.max(MIN_SEGMENT_SIZE, segmentSize));
+        mMaxTotalSize = Math.max(mSegmentSize * 2, maxTotalSize);
+        mExecutor = executor;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * 追加一次扫描结果, 在执行器上写入
+     *
+     * @param snapshot
+     *            扫描结果
+     */
+    public void record(ScanSnapshot snapshot) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            return;
+        }
+        Pending pending = new Pending(snapshot, System.currentTimeMillis());
+        synchronized (this) {
+            if (mIsClosed || mFailed) {
+                return;
+            }
+            if (mPending.size() >= MAX_PENDING) {
+                mPending.removeFirst();
+                mDroppedCount++;
+            }
+            mPending.add(pending);
+            if (mIsWriting) {
+                return;
+            }
+            mIsWriting = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    /**
+     * 停止记录, 已提交的记录写回磁盘。之后的record()被忽略
+     */
+    public void close() {
+        synchronized (this) {
+            if (mIsClosed) {
+                return;
+            }
+            mIsClosed = true;
+            if (mIsWriting) {
+                // 由写入线程在处理完队列后关闭
+                return;
+            }
+            mIsWriting = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    public synchronized boolean isClosed() {
+        return mIsClosed;
+    }
+
+    /**
+     * 已写入的AP记录数
+     *
+     * @return count
+     */
+    public synchronized long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * 因写入不及时而丢弃的扫描数
+     *
+     * @return count
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * 是否因IO错误停止了记录
+     *
+     * @return result
+     */
+    public synchronized boolean isFailed() {
+        return mFailed;
+    }
+
+    private void drain() {
+        while (true) {
+            Pending pending;
+            synchronized (this) {
+                pending = mPending.poll();
+                if (pending == null) {
+                    mIsWriting = false;
+                    if (mIsClosed) {
+                        closeSegment();
+                    }
+                    return;
+                }
+            }
+            try {
+                int written = append(pending.snapshot, pending.time);
+                synchronized (this) {
+                    mRecordCount += written;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "write scan history failed", e);
+                synchronized (this) {
+                    mFailed = true;
+                    mPending.clear();
+                }
+                closeSegment();
+            }
+        }
+    }
+
+    private void closeSegment() {
+        if (mSegment != null) {
+            mSegment.force();
+            mSegment = null;
+        }
+    }
+
+    private int append(ScanSnapshot snapshot, long time) throws IOException {
+        // 时间保持单调, 读取时可以二分查找
+        time = Math.max(time, mLastTime);
+        mLastTime = time;
+        Segment segment = getSegment();
+        // 快照内SSID下标 -> 段内SSID编号
+        int[] ssidIds = newSsidIds(snapshot);
+        int current = snapshot.getCurrentIndex();
+        int size = snapshot.size();
+        for (int i = 0; i < size; i++) {
+            int ssidIndex = snapshot.getSsidIndex(i);
+            int ssidId = ssidIds[ssidIndex];
+            if (ssidId < 0) {
+                ssidId = segment.ssidId(snapshot.getSsid(i));
+            }
+            if (ssidId < 0 || !segment.hasRoom()) {
+                // 换段后SSID编号重新分配
+                segment.commit(time);
+                segment = rotate();
+                ssidIds = newSsidIds(snapshot);
+                ssidId = segment.ssidId(snapshot.getSsid(i));
+            }
+            ssidIds[ssidIndex] = ssidId;
+            segment.append(time, snapshot.getBssid(i), ssidId, snapshot.getFrequency(i), snapshot.getLevel(i),
+                    snapshot.getSecurityMode(i), snapshot.getPskType(i), i == current);
+        }
+        segment.commit(time);
+        return size;
+    }
+
+    private static int[] newSsidIds(ScanSnapshot snapshot) {
+        int[] ids = new int[Math.max(1, snapshot.getSsidCount())];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+
+    private Segment getSegment() throws IOException {
+        if (mSegment == null) {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("cannot create " + mDirectory);
+            }
+            File[] files = ScanHistoryFormat.listSegments(mDirectory);
+            if (files.length > 0) {
+                // 接着写最新的段, 格式不符或已满时换新段
+                mSegment = Segment.open(files[files.length - 1], mSegmentSize);
+                if (mSegment != null) {
+                    mLastTime = Math.max(mLastTime, mSegment.lastTime);
+                }
+            }
+            if (mSegment == null || !mSegment.hasRoom()) {
+                mSegment = null;
+                rotate();
+            }
+        }
+        return mSegment;
+    }
+
+    private Segment rotate() throws IOException {
+        if (mSegment != null) {
+            mSegment.force();
+        }
+        File[] files = ScanHistoryFormat.listSegments(mDirectory);
+        long sequence = (files.length > 0) ? ScanHistoryFormat.sequenceOf(files[files.length - 1]) + 1 : 0;
+        mSegment = Segment.create(new File(mDirectory, ScanHistoryFormat.segmentName(sequence)), mSegmentSize);
+        // 总大小超过上限时删除最旧的段, 新段已计入
+        long total = mSegmentSize;
+        for (int i = files.length - 1; i >= 0; i--) {
+            total += files[i].length();
+            if (total > mMaxTotalSize) {
+                if (files[i].delete()) {
+                    ScanHistoryFormat.unpublish(files[i]);
+                } else {
+                    Log.w(TAG, "cannot delete " + files[i]);
+                }
+            }
+        }
+        return mSegment;
+    }
+
+    private static class Pending {
+
+        final ScanSnapshot snapshot;
+
+        final long time;
+
+        Pending(ScanSnapshot snapshot, long time) {
+            this.snapshot = snapshot;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 一个可写的段文件
+     */
+    private static class Segment {
+
+        private final File mFile;
+
+        private final MappedByteBuffer mBuffer;
+
+        private final long mSize;
+
+        private final int mCapacity;
+
+        // 截断后的SSID -> 编号, 与重新打开时从SSID表读出的值一致
+        private final Map<String, Integer> mSsids = new HashMap<String, Integer>();
+
+        private int mSsidCount;
+
+        private int mRecordCount;
+
+        private int mCommittedCount;
+
+        private long mFirstTime;
+
+        long lastTime;
+
+        private Segment(File file, MappedByteBuffer buffer, long size) {
+            mFile = file;
+            mBuffer = buffer;
+            mSize = size;
+            mCapacity = ScanHistoryFormat.recordCapacity(size);
+        }
+
+        static Segment create(File file, long size) throws IOException {
+            Segment segment = new Segment(file, map(file, size), size);
+            MappedByteBuffer buffer = segment.mBuffer;
+            buffer.putInt(ScanHistoryFormat.OFFSET_MAGIC, ScanHistoryFormat.MAGIC);
+            buffer.putInt(ScanHistoryFormat.OFFSET_VERSION, ScanHistoryFormat.VERSION);
+            buffer.putInt(ScanHistoryFormat.OFFSET_RECORD_SIZE, ScanHistoryFormat.RECORD_SIZE);
+            buffer.putInt(ScanHistoryFormat.OFFSET_SSID_COUNT, 0);
+            buffer.putInt(ScanHistoryFormat.OFFSET_RECORD_COUNT, 0);
+            buffer.putLong(ScanHistoryFormat.OFFSET_FIRST_TIME, 0);
+            buffer.putLong(ScanHistoryFormat.OFFSET_LAST_TIME, 0);
+            segment.publish();
+            return segment;
+        }
+
+        /**
+         * 打开已有的段继续写入
+         *
+         * @return 大小或格式不符时返回null
+         */
+        static Segment open(File file, long size) throws IOException {
+            if (file.length() != size) {
+                return null;
+            }
+            MappedByteBuffer buffer = map(file, size);
+            if (buffer.getInt(ScanHistoryFormat.OFFSET_MAGIC) != ScanHistoryFormat.MAGIC
+                    || buffer.getInt(ScanHistoryFormat.OFFSET_VERSION) != ScanHistoryFormat.VERSION
+                    || buffer.getInt(ScanHistoryFormat.OFFSET_RECORD_SIZE) != ScanHistoryFormat.RECORD_SIZE) {
+                return null;
+            }
+            Segment segment = new Segment(file, buffer, size);
+            ScanHistoryFormat.Commit commit = new ScanHistoryFormat.Commit(
+                    buffer.getInt(ScanHistoryFormat.OFFSET_SSID_COUNT),
+                    buffer.getInt(ScanHistoryFormat.OFFSET_RECORD_COUNT),
+                    buffer.getLong(ScanHistoryFormat.OFFSET_FIRST_TIME),
+                    buffer.getLong(ScanHistoryFormat.OFFSET_LAST_TIME), size);
+            for (int i = 0; i < commit.ssidCount; i++) {
+                // 同一前缀的长SSID截断后相同, 保留第一个编号
+                String ssid = ScanHistoryFormat.readSsid(buffer, i);
+                if (!segment.mSsids.containsKey(ssid)) {
+                    segment.mSsids.put(ssid, i);
+                }
+            }
+            segment.mSsidCount = commit.ssidCount;
+            segment.mRecordCount = commit.recordCount;
+            segment.mCommittedCount = commit.recordCount;
+            segment.mFirstTime = commit.firstTime;
+            segment.lastTime = commit.lastTime;
+            segment.publish();
+            return segment;
+        }
+
+        private static MappedByteBuffer map(File file, long size) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(size);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                return buffer;
+            } finally {
+                // 映射在关闭文件后仍然有效
+                raf.close();
+            }
+        }
+
+        boolean hasRoom() {
+            return mRecordCount < mCapacity;
+        }
+
+        /**
+         * 段内SSID编号, 没有时加入SSID表
+         *
+         * @return 编号, SSID表已满时返回-1
+         */
+        int ssidId(String ssid) {
+            String key = (ssid != null) ? ScanHistoryFormat.storedSsid(ssid) : "";
+            Integer id = mSsids.get(key);
+            if (id != null) {
+                return id;
+            }
+            int count = mSsidCount;
+            if (count >= ScanHistoryFormat.SSID_CAPACITY) {
+                return -1;
+            }
+            byte[] bytes = ScanHistoryFormat.toBytes(key);
+            int length = bytes.length;
+            int offset = ScanHistoryFormat.HEADER_SIZE + count * ScanHistoryFormat.SSID_ENTRY_SIZE;
+            mBuffer.put(offset, (byte) length);
+            for (int i = 0; i < length; i++) {
+                mBuffer.put(offset + 1 + i, bytes[i]);
+            }
+            mSsids.put(key, count);
+            mSsidCount++;
+            return count;
+        }
+
+        void append(long time, long bssid, int ssidId, int frequency, int level, SecurityMode mode,
+                PskType pskType, boolean current) {
+            int offset = ScanHistoryFormat.RECORDS_OFFSET + mRecordCount * ScanHistoryFormat.RECORD_SIZE;
+            MappedByteBuffer buffer = mBuffer;
+            buffer.putLong(offset + ScanHistoryFormat.FIELD_TIME, time);
+            for (int i = 0; i < 6; i++) {
+                buffer.put(offset + ScanHistoryFormat.FIELD_BSSID + i, (byte) (bssid >>> (40 - i * 8)));
+            }
+            buffer.putShort(offset + ScanHistoryFormat.FIELD_SSID, (short) ssidId);
+            buffer.putShort(offset + ScanHistoryFormat.FIELD_FREQUENCY, (short) frequency);
+            buffer.put(offset + ScanHistoryFormat.FIELD_LEVEL,
+                    (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, level)));
+            int security = ((mode != null) ? mode.ordinal() : ScanHistoryFormat.NULL_ORDINAL)
+                    | (((pskType != null) ? pskType.ordinal() : ScanHistoryFormat.NULL_ORDINAL) << 4);
+            buffer.put(offset + ScanHistoryFormat.FIELD_SECURITY, (byte) security);
+            buffer.put(offset + ScanHistoryFormat.FIELD_FLAGS, (byte) (current ? ScanHistoryFormat.FLAG_CURRENT : 0));
+            mRecordCount++;
+        }
+
+        /**
+         * 提交已写入的记录, 先写SSID数再写记录数, 最后发布给本进程内的读取者
+         */
+        void commit(long time) {
+            if (mRecordCount == mCommittedCount) {
+                return;
+            }
+            if (mCommittedCount == 0) {
+                mFirstTime = time;
+                mBuffer.putLong(ScanHistoryFormat.OFFSET_FIRST_TIME, time);
+            }
+            lastTime = time;
+            mBuffer.putInt(ScanHistoryFormat.OFFSET_SSID_COUNT, mSsidCount);
+            mBuffer.putLong(ScanHistoryFormat.OFFSET_LAST_TIME, time);
+            mBuffer.putInt(ScanHistoryFormat.OFFSET_RECORD_COUNT, mRecordCount);
+            mCommittedCount = mRecordCount;
+            publish();
+        }
+
+        private void publish() {
+            ScanHistoryFormat.publish(mFile,
+                    new ScanHistoryFormat.Commit(mSsidCount, mCommittedCount, mFirstTime, lastTime, mSize));
+        }
+
+        void force() {
+            mBuffer.force();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.youku.common.wifi.worker;
+
+import com.youku.common.wifi.backend.WifiClock;
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.ScanSnapshot;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 扫描结果缓存
+ * <p>
+ * 以{@link ScanSnapshot}保存最近一次扫描结果, 并统计命中/未命中/后台刷新次数, 用于调整缓存有效期。
+ */
+public class ScanResultCache {
+
+    /**
+     * 默认缓存有效期(毫秒)
+     */
+    public static final long DEFAULT_MAX_AGE = 10 * 1000;
+
+    private volatile long mMaxAge = DEFAULT_MAX_AGE;
+
+    private ScanSnapshot mSnapshot;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private final AtomicLong mRefreshCount = new AtomicLong();
+
+    private final WifiClock mClock;
+
+    public ScanResultCache() {
+        this(WifiClock.SYSTEM);
+    }
+
+    /**
+     * @param clock
+     *            计算缓存时间的时钟, 与快照的时间戳一致
+     */
+    public ScanResultCache(WifiClock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * 设置默认的缓存有效期
+     *
+     * @param maxAge
+     *            毫秒
+     */
+    public void setMaxAge(long maxAge) {
+        mMaxAge = maxAge;
+    }
+
+    public long getMaxAge() {
+        return mMaxAge;
+    }
+
+    /**
+     * 保存一次扫描结果
+     *
+     * @param snapshot
+     *            扫描结果, 时间戳为{@link WifiClock#elapsedRealtime()}
+     */
+    public synchronized void put(ScanSnapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    /**
+     * 获取不超过maxAge的缓存结果
+     *
+     * @param maxAge
+     *            可接受的最大缓存时间(毫秒)
+     * @return 由缓存生成的新列表, 没有或已过期时返回null
+     */
+    public List<AccessPoint> get(long maxAge) {
+        ScanSnapshot snapshot = getSnapshot();
+        if (snapshot == null || getAge(snapshot) > maxAge) {
+            return null;
+        }
+        return snapshot.toAccessPoints();
+    }
+
+    /**
+     * 获取最近一次结果, 不论是否过期
+     *
+     * @return 由缓存生成的新列表, 没有时返回null
+     */
+    public List<AccessPoint> getLatest() {
+        ScanSnapshot snapshot = getSnapshot();
+        return (snapshot == null) ? null : snapshot.toAccessPoints();
+    }
+
+    /**
+     * 获取最近一次结果的快照
+     *
+     * @return ScanSnapshot, 没有时返回null
+     */
+    public synchronized ScanSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * 当前缓存的时间
+     *
+     * @return 毫秒, 没有缓存时返回{@link Long#MAX_VALUE}
+     */
+    public long getAge() {
+        return getAge(getSnapshot());
+    }
+
+    private long getAge(ScanSnapshot snapshot) {
+        return (snapshot == null) ? Long.MAX_VALUE : mClock.elapsedRealtime() - snapshot.getTimestamp();
+    }
+
+    public synchronized void clear() {
+        mSnapshot = null;
+    }
+
+    void recordHit() {
+        mHitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        mMissCount.incrementAndGet();
+    }
+
+    void recordRefresh() {
+        mRefreshCount.incrementAndGet();
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public long getRefreshCount() {
+        return mRefreshCount.get();
+    }
+
+    public void resetStats() {
+        mHitCount.set(0);
+        mMissCount.set(0);
+        mRefreshCount.set(0);
+    }
+}
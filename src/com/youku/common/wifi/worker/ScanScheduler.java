@@ -0,0 +1,344 @@
+package com.youku.common.wifi.worker;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import com.youku.common.wifi.backend.AndroidWifiBackend;
+import com.youku.common.wifi.backend.WifiBackend;
+import com.youku.common.wifi.backend.WifiEvent;
+import com.youku.common.wifi.listener.WifiCachedSearchListener;
+import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.ErrorType;
+import com.youku.common.wifi.model.ScanPriority;
+import com.youku.common.wifi.model.ScanSnapshot;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应的后台周期扫描
+ * <p>
+ * 根据相邻两次扫描的变化程度调整间隔: BSSID集合和信号稳定时按倍数退避, 变化增大时迅速缩短间隔。
+ * Wi-Fi关闭时暂停, 不会主动打开Wi-Fi。扫描结果同样进入缓存并通知增量监听者。
+ * 以{@link ScanPriority#LOW}消耗扫描预算, 预算不足时视为结果没有变化继续退避。
+ */
+public class ScanScheduler {
+
+    /**
+     * 默认最小间隔(毫秒)
+     */
+    public static final long DEFAULT_MIN_INTERVAL = 10 * 1000;
+
+    /**
+     * 默认最大间隔(毫秒)
+     */
+    public static final long DEFAULT_MAX_INTERVAL = 5 * 60 * 1000;
+
+    // 变化比例低于该值时退避
+    private static final float STABLE_CHURN = 0.1f;
+
+    // 变化比例高于该值时回到最小间隔
+    private static final float VOLATILE_CHURN = 0.3f;
+
+    // 信号变化超过该值(dB)才算变化
+    private static final int RSSI_DELTA = 6;
+
+    private WifiBackend mBackend;
+
+    private WifiSearcher mSearcher;
+
+    private ScheduledExecutorService mExecutor;
+
+    private volatile long mMinInterval = DEFAULT_MIN_INTERVAL;
+
+    private volatile long mMaxInterval = DEFAULT_MAX_INTERVAL;
+
+    private volatile long mInterval = DEFAULT_MIN_INTERVAL;
+
+    private volatile float mLastChurn = 0;
+
+    private final AtomicLong mScanCount = new AtomicLong();
+
+    private final AtomicLong mFailedCount = new AtomicLong();
+
+    private boolean mIsRunning = false;
+
+    private boolean mIsPaused = false;
+
+    private ScheduledFuture<?> mNextScan;
+
+    private ScanSnapshot mLastSnapshot;
+
+    private final WifiStateListener mStateListener = new WifiStateListener();
+
+    private final AtomicLong mThrottledCount = new AtomicLong();
+
+    private final WifiCachedSearchListener mListener = new WifiCachedSearchListener() {
+        @Override
+        public void onSearchWifiFailed(ErrorType errorType) {
+            if (errorType == ErrorType.SCAN_THROTTLED) {
+                mThrottledCount.incrementAndGet();
+                backOff();
+                return;
+            }
+            mFailedCount.incrementAndGet();
+            if (errorType == ErrorType.NO_WIFI_FOUND) {
+                // 空结果不会进入缓存, 按空快照计算变化, 之前的AP全部消失时变化为1
+                onScanned(ScanSnapshot.from(null, null, mBackend.elapsedRealtime()));
+            } else {
+                scheduleNext(mInterval);
+            }
+        }
+
+        @Override
+        public void onSearchWifiSuccess(List<AccessPoint> results) {
+            onScanned(mSearcher.getLastSnapshot());
+        }
+
+        @Override
+        public void onSearchWifiCached(List<AccessPoint> results, long age) {
+            mThrottledCount.incrementAndGet();
+            backOff();
+        }
+    };
+
+    public ScanScheduler(Context context, WifiManager wifiManager, WifiSearcher searcher,
+            ScheduledExecutorService executor) {
+        this(new AndroidWifiBackend(context, wifiManager), searcher, executor);
+    }
+
+    public ScanScheduler(WifiBackend backend, WifiSearcher searcher, ScheduledExecutorService executor) {
+        mBackend = backend;
+        mSearcher = searcher;
+        mExecutor = executor;
+    }
+
+    /**
+     * 设置间隔范围
+     *
+     * @param minInterval
+     *            最小间隔(毫秒)
+     * @param maxInterval
+     *            最大间隔(毫秒)
+     */
+    public void setIntervalRange(long minInterval, long maxInterval) {
+        mMinInterval = minInterval;
+        mMaxInterval = Math.max(minInterval, maxInterval);
+        mInterval = Math.min(Math.max(mInterval, mMinInterval), mMaxInterval);
+    }
+
+    /**
+     * 开始周期扫描, 立即进行第一次扫描
+     */
+    public synchronized void start() {
+        if (mIsRunning) {
+            return;
+        }
+        mIsRunning = true;
+        mIsPaused = false;
+        mInterval = mMinInterval;
+        mLastSnapshot = mSearcher.getLastSnapshot();
+        mBackend.addEventListener(mStateListener);
+        scheduleNext(0);
+    }
+
+    /**
+     * 停止周期扫描
+     */
+    public synchronized void stop() {
+        if (!mIsRunning) {
+            return;
+        }
+        mIsRunning = false;
+        if (mNextScan != null) {
+            mNextScan.cancel(false);
+            mNextScan = null;
+        }
+        mSearcher.cancel(mListener);
+        mBackend.removeEventListener(mStateListener);
+    }
+
+    public synchronized boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /**
+     * 是否因Wi-Fi关闭而暂停
+     *
+     * @return result
+     */
+    public synchronized boolean isPaused() {
+        return mIsPaused;
+    }
+
+    /**
+     * 当前生效的扫描间隔
+     *
+     * @return 毫秒
+     */
+    public long getEffectiveInterval() {
+        return mInterval;
+    }
+
+    /**
+     * 已发起的扫描次数
+     *
+     * @return count
+     */
+    public long getScanCount() {
+        return mScanCount.get();
+    }
+
+    /**
+     * 失败的扫描次数
+     *
+     * @return count
+     */
+    public long getFailedCount() {
+        return mFailedCount.get();
+    }
+
+    /**
+     * 因预算不足而没有真正扫描的次数
+     *
+     * @return count
+     */
+    public long getThrottledCount() {
+        return mThrottledCount.get();
+    }
+
+    /**
+     * 最近两次扫描的变化比例
+     *
+     * @return 0~1
+     */
+    public float getLastChurn() {
+        return mLastChurn;
+    }
+
+    private synchronized void scheduleNext(long delay) {
+        if (!mIsRunning || mIsPaused) {
+            return;
+        }
+        if (mNextScan != null) {
+            mNextScan.cancel(false);
+        }
+        mNextScan = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        synchronized (this) {
+            if (!mIsRunning || mIsPaused) {
+                return;
+            }
+            mNextScan = null;
+            // Wi-Fi关闭时暂停, 等待WIFI_STATE_CHANGED恢复
+            if (!mBackend.isWifiEnabled()) {
+                mIsPaused = true;
+                return;
+            }
+        }
+        mScanCount.incrementAndGet();
+        mSearcher.search(mListener, ScanPriority.LOW);
+    }
+
+    private void backOff() {
+        long interval = Math.min(mInterval * 2, mMaxInterval);
+        mInterval = interval;
+        scheduleNext(interval);
+    }
+
+    private void onScanned(ScanSnapshot snapshot) {
+        float churn;
+        synchronized (this) {
+            churn = computeChurn(mLastSnapshot, snapshot);
+            mLastSnapshot = snapshot;
+        }
+        mLastChurn = churn;
+        long interval = mInterval;
+        if (churn >= VOLATILE_CHURN) {
+            interval = mMinInterval;
+        } else if (churn <= STABLE_CHURN) {
+            interval = Math.min(interval * 2, mMaxInterval);
+        } else {
+            interval = Math.max(interval / 2, mMinInterval);
+        }
+        mInterval = interval;
+        scheduleNext(interval);
+    }
+
+    /**
+     * 计算两次扫描之间的变化比例: (新增 + 消失 + 信号明显变化) / 两次扫描BSSID的并集
+     *
+     * @param previous
+     *            上一次扫描
+     * @param current
+     *            本次扫描
+     * @return 0~1
+     */
+    static float computeChurn(ScanSnapshot previous, ScanSnapshot current) {
+        if (previous == null || current == null) {
+            return 1;
+        }
+        if (previous == current) {
+            return 0;
+        }
+        Map<Long, Integer> levels = new HashMap<Long, Integer>(previous.size() * 4 / 3 + 1);
+        for (int i = 0; i < previous.size(); i++) {
+            levels.put(previous.getBssid(i), previous.getLevel(i));
+        }
+        int changed = 0;
+        int matched = 0;
+        for (int i = 0; i < current.size(); i++) {
+            Integer level = levels.get(current.getBssid(i));
+            if (level == null) {
+                changed++;
+            } else {
+                matched++;
+                if (Math.abs(level - current.getLevel(i)) >= RSSI_DELTA) {
+                    changed++;
+                }
+            }
+        }
+        // 上一次有、这一次没有的
+        changed += previous.size() - matched;
+        int union = previous.size() + current.size() - matched;
+        return (union == 0) ? 0 : (float) changed / union;
+    }
+
+    // Wi-Fi打开后恢复扫描
+    private class WifiStateListener implements WifiEvent.Listener {
+        @Override
+        public void onWifiEvent(WifiEvent event) {
+            if (event.type != WifiEvent.Type.WIFI_STATE_CHANGED) {
+                return;
+            }
+            int state = event.wifiState;
+            synchronized (ScanScheduler.this) {
+                if (!mIsRunning) {
+                    return;
+                }
+                if (state == WifiManager.WIFI_STATE_ENABLED && mIsPaused) {
+                    mIsPaused = false;
+                    mInterval = mMinInterval;
+                    scheduleNext(0);
+                } else if (state == WifiManager.WIFI_STATE_DISABLED) {
+                    mIsPaused = true;
+                    if (mNextScan != null) {
+                        mNextScan.cancel(false);
+                        mNextScan = null;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,28 +1,41 @@
 
 package com.youku.common.wifi.worker;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
+import android.net.NetworkInfo;
 import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiConfiguration;
-import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.util.Log;
+import com.youku.common.wifi.backend.AndroidWifiBackend;
+import com.youku.common.wifi.backend.WifiBackend;
+import com.youku.common.wifi.backend.WifiEvent;
+import com.youku.common.wifi.listener.WifiCallback;
+import com.youku.common.wifi.listener.WifiConnectErrorListener;
 import com.youku.common.wifi.listener.WifiConnectListener;
 import com.youku.common.wifi.model.AccessPoint;
+import com.youku.common.wifi.model.ConnectPhase;
+import com.youku.common.wifi.model.ConnectPolicy;
+import com.youku.common.wifi.model.ConnectionSnapshot;
+import com.youku.common.wifi.model.ErrorType;
 import com.youku.common.wifi.model.SecurityMode;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Wi-Fi连接类 Created by MoiTempete.
+ * <p>
+ * 连接过程由supplicant状态和网络状态广播驱动: 关联 -> 认证 -> DHCP -> 可用,
+ * 每个阶段有独立的超时, 等待期间不占用线程。只有在网络真正可用时才通知成功。
  */
 public class WifiConnector {
 
@@ -30,27 +43,42 @@ public class WifiConnector {
 
     private static final int WIFI_CONNECT_TIMEOUT = 10; // 连接WIFI的超时时间
 
-    private Context mContext;
+    private static final int ASSOCIATE_TIMEOUT = WIFI_CONNECT_TIMEOUT; // 关联超时
 
-    private WifiManager mWifiManager;
+    private static final int AUTHENTICATE_TIMEOUT = WIFI_CONNECT_TIMEOUT; // 认证超时
 
-    private Lock mLock;
+    private static final int OBTAIN_IPADDR_TIMEOUT = 15; // DHCP超时
 
-    private Condition mCondition;
+    private WifiBackend mBackend;
+
+    private ScheduledExecutorService mExecutor;
 
     private WiFiConnectReceiver mWifiConnectReceiver;
 
     private WifiConnectListener mWifiConnectListener;
 
-    private boolean mIsConnnected = false;
+    private ConfiguredNetworkIndex mNetworkIndex;
+
+    // 当前进行中的连接, 同一时间只有一个
+    private ConnectAttempt mAttempt;
+
+    private boolean mIsReceiverRegistered = false;
 
-    private int mNetworkID = -1;
+    // SSID -> {成功次数, 失败次数}
+    private final Map<String, int[]> mHistory = new HashMap<String, int[]>();
 
     public WifiConnector(Context context, WifiManager wifiManager, WifiConnectListener listener) {
-        mContext = context;
-        mLock = new ReentrantLock();
-        mCondition = mLock.newCondition();
-        mWifiManager = wifiManager;
+        this(context, wifiManager, listener, WifiExecutors.shared());
+    }
+
+    public WifiConnector(Context context, WifiManager wifiManager, WifiConnectListener listener,
+            ScheduledExecutorService executor) {
+        this(new AndroidWifiBackend(context, wifiManager), listener, executor);
+    }
+
+    public WifiConnector(WifiBackend backend, WifiConnectListener listener, ScheduledExecutorService executor) {
+        mBackend = backend;
+        mExecutor = executor;
         mWifiConnectReceiver = new WiFiConnectReceiver();
         mWifiConnectListener = listener;
     }
@@ -63,6 +91,16 @@ public class WifiConnector {
         return mWifiConnectListener;
     }
 
+    /**
+     * 设置已配置网络索引, 添加网络后会使其失效
+     *
+     * @param index
+     *            ConfiguredNetworkIndex
+     */
+    public void setConfiguredNetworkIndex(ConfiguredNetworkIndex index) {
+        mNetworkIndex = index;
+    }
+
     /**
      * 链接指定Wi-Fi
      *
@@ -72,81 +110,574 @@ public class WifiConnector {
      * @param saveConfig
      *            disable | enable to save config
      */
-    public void connect(final AccessPoint accessPoint, final boolean saveConfig) {
-        new Thread(new Runnable() {
+    public void connect(AccessPoint accessPoint, boolean saveConfig) {
+        connect(accessPoint, saveConfig, mWifiConnectListener);
+    }
+
+    /**
+     * 链接指定Wi-Fi, 进行中的连接会以{@link ErrorType#CANCELLED}结束
+     *
+     * @param accessPoint
+     *            AP实例中需要包含如下信息: ssid SSID securityMode 加密方式 password 密码
+     *            userName 用户名(only in EAP)
+     * @param saveConfig
+     *            disable | enable to save config
+     * @param listener
+     *            连接状态监听
+     */
+    public void connect(AccessPoint accessPoint, boolean saveConfig, WifiConnectListener listener) {
+        start(accessPoint, saveConfig, listener);
+    }
+
+    /**
+     * 异步连接指定Wi-Fi
+     *
+     * @param accessPoint
+     *            AP实例中需要包含如下信息: ssid SSID securityMode 加密方式 password 密码
+     *            userName 用户名(only in EAP)
+     * @param saveConfig
+     *            disable | enable to save config
+     * @param deadline
+     *            截止时间(毫秒), 到期后以{@link ErrorType#CONNECT_TIMEOUT}失败, 不大于0时只使用各阶段的超时
+     * @return WifiFuture, 成功时结果为accessPoint; 取消后连接立即结束并注销广播接收者
+     */
+    public WifiFuture<AccessPoint> connectAsync(AccessPoint accessPoint, boolean saveConfig, long deadline) {
+        return connectAsync(accessPoint, null, saveConfig, deadline);
+    }
+
+    private WifiFuture<AccessPoint> connectAsync(final AccessPoint accessPoint, WifiConfiguration config,
+            boolean saveConfig, long deadline) {
+        final WifiFuture<AccessPoint> future = new WifiFuture<AccessPoint>();
+        final ConnectAttempt attempt = start(accessPoint, config, saveConfig, new WifiConnectErrorListener() {
+            @Override
+            public void OnWifiConnectFailed(ErrorType errorType) {
+                future.setError(errorType);
+            }
+
+            @Override
+            public void OnWifiConnectCompleted() {
+                future.setResult(accessPoint);
+            }
+
+            @Override
+            public void OnWifiConnectFailed() {
+                future.setError(ErrorType.CONNECT_FAILED);
+            }
+        });
+        future.setDeadline(mExecutor, deadline, TimeUnit.MILLISECONDS, ErrorType.CONNECT_TIMEOUT);
+        future.setCancelHandler(new Runnable() {
             @Override
             public void run() {
-                // 如果WIFI没有打开，则打开WIFI
-                if (!mWifiManager.isWifiEnabled()) {
-                    mWifiManager.setWifiEnabled(true);
-                }
-                // 注册连接结果监听对象
-                mContext.registerReceiver(mWifiConnectReceiver, new IntentFilter(
-                        WifiManager.SUPPLICANT_STATE_CHANGED_ACTION));
-                Log.e(TAG, "registerReceiver @ connect @ 86");
-                // 连接指定SSID
-                if (!onConnect(accessPoint.ssid, accessPoint.securityMode, accessPoint.password, accessPoint.userName)) {
-                    mWifiConnectListener.OnWifiConnectFailed();
-                    Log.e(TAG, "OnWifiConnectFailed @ connect @ 90");
-                    if (saveConfig) {
-                        mWifiManager.saveConfiguration();
+                // 超过截止时间时以CONNECT_TIMEOUT结束, 计入历史; 用户取消时不计入
+                ErrorType error = future.getError();
+                attempt.fail((error != null) ? error : ErrorType.CANCELLED);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 按策略对候选排序后依次尝试连接, 失败或超时则尝试下一个, 全部尝试受总截止时间限制
+     *
+     * @param candidates
+     *            候选AP, 需包含ssid/securityMode/password等连接信息, 以及level/frequency用于排序
+     * @param policy
+     *            ConnectPolicy, 为null时使用默认策略
+     * @return WifiFuture, 成功时结果为连接上的候选; 取消后立即结束当前尝试。
+     *         缺少连接信息的候选会被跳过, 不会抛出异常
+     */
+    public WifiFuture<AccessPoint> connectBest(List<AccessPoint> candidates, ConnectPolicy policy) {
+        if (policy == null) {
+            policy = ConnectPolicy.defaultPolicy();
+        }
+        List<AccessPoint> ranked = rank((candidates != null) ? candidates : Collections.<AccessPoint> emptyList(),
+                policy);
+        // 预先生成所有候选的配置, 切换候选时不再等待; 无效的候选配置为null
+        List<WifiConfiguration> configs = new ArrayList<WifiConfiguration>(ranked.size());
+        for (AccessPoint ap : ranked) {
+            configs.add(buildConfig(ap));
+        }
+        FallbackChain chain = new FallbackChain(ranked, configs, policy);
+        chain.next();
+        return chain.mFuture;
+    }
+
+    /**
+     * 按策略对候选排序, 过滤信号过弱的候选
+     *
+     * @param candidates
+     *            候选AP
+     * @param policy
+     *            ConnectPolicy
+     * @return 排序后的新列表
+     */
+    public List<AccessPoint> rank(List<AccessPoint> candidates, final ConnectPolicy policy) {
+        final Map<AccessPoint, Integer> scores = new HashMap<AccessPoint, Integer>();
+        List<AccessPoint> ranked = new ArrayList<AccessPoint>(candidates.size());
+        for (AccessPoint ap : candidates) {
+            // 没有扫描信息(level为0)的候选不过滤
+            if (ap == null || (ap.level != 0 && ap.level < policy.minLevel)) {
+                continue;
+            }
+            scores.put(ap, policy.score(ap, getSuccessRate(ap.ssid)));
+            ranked.add(ap);
+        }
+        Collections.sort(ranked, new Comparator<AccessPoint>() {
+            @Override
+            public int compare(AccessPoint lhs, AccessPoint rhs) {
+                return scores.get(rhs).compareTo(scores.get(lhs));
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * 某个SSID的历史连接成功率
+     *
+     * @param ssid
+     *            SSID
+     * @return 0~1, 没有历史时返回-1
+     */
+    public float getSuccessRate(String ssid) {
+        synchronized (mHistory) {
+            int[] counts = mHistory.get(ssid);
+            if (counts == null || counts[0] + counts[1] == 0) {
+                return -1;
+            }
+            return (float) counts[0] / (counts[0] + counts[1]);
+        }
+    }
+
+    private void recordResult(String ssid, boolean success) {
+        if (ssid == null) {
+            return;
+        }
+        synchronized (mHistory) {
+            int[] counts = mHistory.get(ssid);
+            if (counts == null) {
+                counts = new int[2];
+                mHistory.put(ssid, counts);
+            }
+            counts[success ? 0 : 1]++;
+        }
+    }
+
+    /**
+     * 依次尝试排序后的候选
+     */
+    private class FallbackChain {
+
+        private final List<AccessPoint> mCandidates;
+
+        private final List<WifiConfiguration> mConfigs;
+
+        private final ConnectPolicy mPolicy;
+
+        private final long mDeadlineTime;
+
+        private final WifiFuture<AccessPoint> mFuture = new WifiFuture<AccessPoint>();
+
+        private int mIndex = 0;
+
+        private WifiFuture<AccessPoint> mCurrent;
+
+        FallbackChain(List<AccessPoint> candidates, List<WifiConfiguration> configs, ConnectPolicy policy) {
+            mCandidates = candidates;
+            mConfigs = configs;
+            mPolicy = policy;
+            mDeadlineTime = mBackend.elapsedRealtime() + policy.deadline;
+            mFuture.setDeadline(mExecutor, policy.deadline, TimeUnit.MILLISECONDS, ErrorType.CONNECT_TIMEOUT);
+            mFuture.setCancelHandler(new Runnable() {
+                @Override
+                public void run() {
+                    WifiFuture<AccessPoint> current;
+                    synchronized (FallbackChain.this) {
+                        current = mCurrent;
                     }
+                    if (current != null) {
+                        // 总截止时间到期时当前候选同样记为超时
+                        ErrorType error = mFuture.getError();
+                        current.abort((error != null) ? error : ErrorType.CANCELLED);
+                    }
+                }
+            });
+        }
+
+        void next() {
+            WifiFuture<AccessPoint> current;
+            synchronized (this) {
+                if (mFuture.isDone()) {
+                    return;
+                }
+                long remaining = mDeadlineTime - mBackend.elapsedRealtime();
+                if (mIndex >= mCandidates.size() || remaining <= 0) {
+                    mFuture.setError(remaining <= 0 ? ErrorType.CONNECT_TIMEOUT : ErrorType.CONNECT_FAILED);
+                    return;
+                }
+                long timeout = (mPolicy.attemptTimeout > 0) ? Math.min(mPolicy.attemptTimeout, remaining) : remaining;
+                AccessPoint candidate = mCandidates.get(mIndex);
+                WifiConfiguration config = mConfigs.get(mIndex);
+                mIndex++;
+                if (config == null) {
+                    current = null;
                 } else {
-                    mWifiConnectListener.OnWifiConnectCompleted();
-                    Log.e(TAG, "OnWifiConnectFailed @ connect @ 96");
+                    current = connectAsync(candidate, config, mPolicy.saveConfig, timeout);
                 }
-                // 删除注册的监听类对象
-                mContext.unregisterReceiver(mWifiConnectReceiver);
-                Log.e(TAG, "unregisterReceiver @ connect @ 100");
+                mCurrent = current;
             }
-        }).start();
+            if (current == null) {
+                next();
+                return;
+            }
+            current.addCallback(new WifiCallback<AccessPoint>() {
+                @Override
+                public void onSuccess(AccessPoint result) {
+                    mFuture.setResult(result);
+                }
+
+                @Override
+                public void onFailure(ErrorType errorType) {
+                    if (errorType == ErrorType.CANCELLED) {
+                        // 链自身结束时mFuture已完成, 这里无效果; 否则是其他connect()/cancel()取消了当前候选
+                        mFuture.setError(ErrorType.CANCELLED);
+                    } else {
+                        next();
+                    }
+                }
+            });
+        }
     }
 
-    protected boolean onConnect(String ssid, SecurityMode mode, String password, String userName) {
-        // 添加新的网络配置
-        // WifiConfiguration cfg = new WifiConfiguration();
-        // cfg.SSID = "\"" + ssid + "\"";
-        // if (password != null && !"".equals(password)) {
-        // //如果是WEP加密方式的网络，密码需要放到cfg.wepKeys[0]里面
-        // if (mode == SecurityMode.WEP) {
-        // cfg.wepKeys[0] = "\"" + password + "\"";
-        // cfg.wepTxKeyIndex = 0;
-        // } else {
-        // cfg.preSharedKey = "\"" + password + "\"";
-        // }
-        // }
-
-        WifiConfiguration cfg = getConfig(ssid, mode, password, userName);
-        cfg.status = WifiConfiguration.Status.ENABLED;
-
-        // 添加网络配置
-        mNetworkID = mWifiManager.addNetwork(cfg);
-        mLock.lock();
-        mIsConnnected = false;
-        // 连接该网络
-        if (!mWifiManager.enableNetwork(mNetworkID, true)) {
-            mLock.unlock();
-            mContext.unregisterReceiver(mWifiConnectReceiver);
-            Log.e(TAG, "unregisterReceiver @ onConnect @ 130");
-            return false;
-        } else {
-            mLock.unlock();
-            mContext.unregisterReceiver(mWifiConnectReceiver);
-            Log.e(TAG, "unregisterReceiver @ onConnect @ 135");
-            return true;
-        }
-//        try {
-//            // 等待连接结果
-//            mCondition.await(WIFI_CONNECT_TIMEOUT, TimeUnit.SECONDS);
-//        } catch (InterruptedException e) {
-//            e.printStackTrace();
-//            mContext.unregisterReceiver(mWifiConnectReceiver);
-//            Log.e(TAG, "unregisterReceiver @ onConnect @ 140");
-//        }
-//        mLock.unlock();
-//        mContext.unregisterReceiver(mWifiConnectReceiver);
-//        Log.e(TAG, "unregisterReceiver @ onConnect @ 143");
-//        return mIsConnnected;
+    /**
+     * 当前连接所处的阶段
+     *
+     * @return ConnectPhase
+     */
+    public synchronized ConnectPhase getPhase() {
+        return (mAttempt == null) ? ConnectPhase.IDLE : mAttempt.getPhase();
+    }
+
+    /**
+     * 取消进行中的连接
+     */
+    public void cancel() {
+        ConnectAttempt attempt;
+        synchronized (this) {
+            attempt = mAttempt;
+        }
+        if (attempt != null) {
+            attempt.fail(ErrorType.CANCELLED);
+        }
+    }
+
+    ConnectAttempt start(AccessPoint accessPoint, boolean saveConfig, WifiConnectListener listener) {
+        return start(accessPoint, null, saveConfig, listener);
+    }
+
+    ConnectAttempt start(AccessPoint accessPoint, WifiConfiguration config, boolean saveConfig,
+            WifiConnectListener listener) {
+        final ConnectAttempt attempt = new ConnectAttempt(accessPoint, config, saveConfig, listener);
+        ConnectAttempt previous;
+        synchronized (this) {
+            previous = mAttempt;
+            mAttempt = attempt;
+        }
+        if (previous != null) {
+            previous.fail(ErrorType.CANCELLED);
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                attempt.begin();
+            }
+        });
+        return attempt;
+    }
+
+    private synchronized void registerReceiver() {
+        if (!mIsReceiverRegistered) {
+            mBackend.addEventListener(mWifiConnectReceiver);
+            mIsReceiverRegistered = true;
+        }
+    }
+
+    private synchronized void onAttemptFinished(ConnectAttempt attempt) {
+        if (mAttempt == attempt) {
+            mAttempt = null;
+            if (mIsReceiverRegistered) {
+                mBackend.removeEventListener(mWifiConnectReceiver);
+                mIsReceiverRegistered = false;
+            }
+        }
+    }
+
+    private void invalidateNetworkIndex() {
+        if (mNetworkIndex != null) {
+            mNetworkIndex.invalidate();
+        }
+    }
+
+    /**
+     * 一次连接过程的状态机
+     */
+    class ConnectAttempt {
+
+        private final AccessPoint mAccessPoint;
+
+        private final WifiConfiguration mConfig;
+
+        private final boolean mSaveConfig;
+
+        private final WifiConnectListener mListener;
+
+        private ConnectPhase mPhase = ConnectPhase.IDLE;
+
+        private int mNetworkId = -1;
+
+        private ErrorType mError;
+
+        private ScheduledFuture<?> mTimeoutFuture;
+
+        private boolean mDispatched = false;
+
+        ConnectAttempt(AccessPoint accessPoint, WifiConfiguration config, boolean saveConfig,
+                WifiConnectListener listener) {
+            mAccessPoint = accessPoint;
+            mConfig = config;
+            mSaveConfig = saveConfig;
+            mListener = listener;
+        }
+
+        void begin() {
+            synchronized (this) {
+                if (isFinished()) {
+                    return;
+                }
+            }
+            // 如果WIFI没有打开，则打开WIFI
+            if (!mBackend.isWifiEnabled()) {
+                mBackend.setWifiEnabled(true);
+            }
+            WifiConfiguration cfg = (mConfig != null) ? mConfig : buildConfig(mAccessPoint);
+            if (cfg == null) {
+                fail(ErrorType.CONNECT_FAILED);
+                return;
+            }
+            cfg.status = WifiConfiguration.Status.ENABLED;
+            // 注册连接结果监听对象
+            registerReceiver();
+            if (isFinished()) {
+                return;
+            }
+            // binder调用不持有锁, 避免主线程的广播处理被system_server阻塞
+            // 添加网络配置
+            int networkId = mBackend.addNetwork(cfg);
+            invalidateNetworkIndex();
+            boolean abandoned;
+            synchronized (this) {
+                abandoned = isFinished();
+                if (!abandoned) {
+                    mNetworkId = networkId;
+                    if (networkId == -1) {
+                        failLocked(ErrorType.CONNECT_FAILED);
+                    } else {
+                        enterPhase(ConnectPhase.ASSOCIATING);
+                    }
+                }
+            }
+            if (abandoned) {
+                // 添加期间已被取消, 结果已经分发, 这里补做清理
+                if (!mSaveConfig && networkId != -1) {
+                    mBackend.removeNetwork(networkId);
+                    invalidateNetworkIndex();
+                }
+                return;
+            }
+            if (networkId != -1) {
+                // 连接该网络
+                if (!mBackend.enableNetwork(networkId, true)) {
+                    fail(ErrorType.CONNECT_FAILED);
+                    return;
+                }
+                // 已经连接在该网络上时系统可能不再发出广播, 直接结束
+                ConnectionSnapshot snapshot = mBackend.getConnectionSnapshot();
+                if (snapshot.connected && snapshot.networkId == networkId) {
+                    synchronized (this) {
+                        if (!isFinished()) {
+                            enterPhase(ConnectPhase.CONNECTED);
+                        }
+                    }
+                }
+            }
+            dispatchIfFinished();
+        }
+
+        synchronized boolean isFinished() {
+            return mPhase == ConnectPhase.CONNECTED || mPhase == ConnectPhase.FAILED;
+        }
+
+        void onSupplicantStateChanged(SupplicantState state, boolean authenticationFailed) {
+            if (isFinished()) {
+                return;
+            }
+            int currentNetworkId = (state == SupplicantState.COMPLETED) ? mBackend.getCurrentNetworkId() : -1;
+            synchronized (this) {
+                if (isFinished() || mPhase == ConnectPhase.IDLE) {
+                    return;
+                }
+                if (authenticationFailed) {
+                    failLocked(ErrorType.AUTHENTICATION_FAILED);
+                } else if (state == SupplicantState.ASSOCIATED || state == SupplicantState.FOUR_WAY_HANDSHAKE
+                        || state == SupplicantState.GROUP_HANDSHAKE) {
+                    enterPhase(ConnectPhase.AUTHENTICATING);
+                } else if (state == SupplicantState.COMPLETED) {
+                    if (currentNetworkId == mNetworkId) {
+                        enterPhase(ConnectPhase.OBTAINING_IPADDR);
+                    }
+                }
+            }
+            dispatchIfFinished();
+        }
+
+        void onNetworkStateChanged(NetworkInfo.DetailedState state) {
+            if (state == null || isFinished()) {
+                return;
+            }
+            int currentNetworkId = (state == NetworkInfo.DetailedState.CONNECTED) ? mBackend.getCurrentNetworkId()
+                    : -1;
+            synchronized (this) {
+                if (isFinished() || mPhase == ConnectPhase.IDLE) {
+                    return;
+                }
+                if (state == NetworkInfo.DetailedState.OBTAINING_IPADDR) {
+                    enterPhase(ConnectPhase.OBTAINING_IPADDR);
+                } else if (state == NetworkInfo.DetailedState.CONNECTED) {
+                    if (currentNetworkId == mNetworkId) {
+                        enterPhase(ConnectPhase.CONNECTED);
+                    }
+                }
+            }
+            dispatchIfFinished();
+        }
+
+        void fail(ErrorType error) {
+            synchronized (this) {
+                failLocked(error);
+            }
+            dispatchIfFinished();
+        }
+
+        private void failLocked(ErrorType error) {
+            if (!isFinished()) {
+                mError = error;
+                enterPhase(ConnectPhase.FAILED);
+            }
+        }
+
+        // 阶段只能前进, 每进入一个新阶段重新计时
+        private void enterPhase(ConnectPhase phase) {
+            if (phase.ordinal() <= mPhase.ordinal()) {
+                return;
+            }
+            mPhase = phase;
+            if (mTimeoutFuture != null) {
+                mTimeoutFuture.cancel(false);
+                mTimeoutFuture = null;
+            }
+            int timeout;
+            switch (phase) {
+                case ASSOCIATING:
+                    timeout = ASSOCIATE_TIMEOUT;
+                    break;
+                case AUTHENTICATING:
+                    timeout = AUTHENTICATE_TIMEOUT;
+                    break;
+                case OBTAINING_IPADDR:
+                    timeout = OBTAIN_IPADDR_TIMEOUT;
+                    break;
+                default:
+                    return;
+            }
+            mTimeoutFuture = mExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    fail(ErrorType.CONNECT_TIMEOUT);
+                }
+            }, timeout, TimeUnit.SECONDS);
+        }
+
+        private void dispatchIfFinished() {
+            ConnectPhase phase;
+            synchronized (this) {
+                if (!isFinished() || mDispatched) {
+                    return;
+                }
+                mDispatched = true;
+                phase = mPhase;
+            }
+            onAttemptFinished(this);
+            if (phase == ConnectPhase.CONNECTED || mError != ErrorType.CANCELLED) {
+                recordResult(mAccessPoint.ssid, phase == ConnectPhase.CONNECTED);
+            }
+            if (phase == ConnectPhase.CONNECTED) {
+                if (mSaveConfig) {
+                    mBackend.saveConfiguration();
+                }
+                Log.d(TAG, "connected: " + mAccessPoint.ssid);
+                if (mListener != null) {
+                    mListener.OnWifiConnectCompleted();
+                }
+            } else {
+                // 未要求保存时删除本次添加的配置
+                if (!mSaveConfig && mNetworkId != -1) {
+                    mBackend.removeNetwork(mNetworkId);
+                    invalidateNetworkIndex();
+                }
+                Log.d(TAG, "connect failed: " + mAccessPoint.ssid + " " + mError);
+                if (mListener instanceof WifiConnectErrorListener) {
+                    ((WifiConnectErrorListener) mListener).OnWifiConnectFailed(mError);
+                } else if (mListener != null) {
+                    mListener.OnWifiConnectFailed();
+                }
+            }
+        }
+
+        ConnectPhase getPhase() {
+            synchronized (this) {
+                return mPhase;
+            }
+        }
+
+        ErrorType getError() {
+            synchronized (this) {
+                return mError;
+            }
+        }
+    }
+
+    /**
+     * 检查连接信息后生成配置
+     *
+     * @param accessPoint
+     *            AccessPoint
+     * @return 缺少SSID、加密方式或所需密码时返回null
+     */
+    private WifiConfiguration buildConfig(AccessPoint accessPoint) {
+        if (accessPoint.ssid == null || accessPoint.securityMode == null) {
+            Log.w(TAG, "invalid candidate: " + accessPoint.ssid);
+            return null;
+        }
+        if ((accessPoint.securityMode == SecurityMode.WEP || accessPoint.securityMode == SecurityMode.PSK)
+                && accessPoint.password == null) {
+            Log.w(TAG, "missing password: " + accessPoint.ssid);
+            return null;
+        }
+        try {
+            return getConfig(accessPoint.ssid, accessPoint.securityMode, accessPoint.password, accessPoint.userName);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "build config failed: " + accessPoint.ssid, e);
+            return null;
+        }
     }
 
     protected WifiConfiguration getConfig(String ssid, SecurityMode mode, String password, String userName) {
@@ -198,21 +729,21 @@ public class WifiConnector {
     }
 
     // 监听系统的WIFI连接消息
-    protected class WiFiConnectReceiver extends BroadcastReceiver {
+    protected class WiFiConnectReceiver implements WifiEvent.Listener {
         @Override
-        public void onReceive(Context context, Intent intent) {
-
-            if (!WifiManager.SUPPLICANT_STATE_CHANGED_ACTION.equals(intent.getAction())) {
+        public void onWifiEvent(WifiEvent event) {
+            ConnectAttempt attempt;
+            synchronized (WifiConnector.this) {
+                attempt = mAttempt;
+            }
+            if (attempt == null) {
                 return;
             }
-            mLock.lock();
-
-            WifiInfo info = mWifiManager.getConnectionInfo();
-            if (info.getNetworkId() == mNetworkID && info.getSupplicantState() == SupplicantState.COMPLETED) {
-                mIsConnnected = true;
-                mCondition.signalAll();
+            if (event.type == WifiEvent.Type.SUPPLICANT_STATE_CHANGED) {
+                attempt.onSupplicantStateChanged(event.supplicantState, event.authenticationFailed);
+            } else if (event.type == WifiEvent.Type.NETWORK_STATE_CHANGED) {
+                attempt.onNetworkStateChanged(event.networkState);
             }
-            mLock.unlock();
         }
     }
 
@@ -250,46 +781,18 @@ public class WifiConnector {
 
         Log.d("WifiPreference", "-----wcEnterpriseField-----");
 
-        Class[] wcClasses = WifiConfiguration.class.getClasses();
-
-        Class wcEnterpriseField = null;
-
-        for (Class wcClass : wcClasses) {
-
-            if (wcClass.getName().contains("EnterpriseField")) {
-                wcEnterpriseField = wcClass;
-                break;
-            }
-        }
-
-        Method wcefSetValue = null;
-
-        if (wcEnterpriseField != null) {
-            for (Method m : wcEnterpriseField.getMethods()) {
-                // System.out.println("getName" + m.getName());
-                if ("value".equals(m.getName())) {
-                    wcefSetValue = m;
-                    break;
-                }
-
-            }
-        }
-
-        // Dispatching Field vars
-        Field[] wcefFields = WifiConfiguration.class.getFields();
-        for (Field wcefField : wcefFields) {
-            try {
-                assert wcefSetValue != null;
-                Log.d("WifiPreference", wcefField.getName() + "=" + wcefSetValue.invoke(wcefField.get(config)));
-            } catch (Exception e) {
-                e.printStackTrace();
+        EnterpriseConfigurator configurator = EnterpriseConfigurator.get();
+        for (Field wcefField : WifiConfiguration.class.getFields()) {
+            Object value = configurator.readValue(config, wcefField);
+            if (value != null) {
+                Log.d("WifiPreference", wcefField.getName() + "=" + value);
             }
         }
     }
 
     protected WifiConfiguration getEapConfig(String ssid, String passString, String userName) {
 
-        final String ENTERPRISE_EAP = "PEAP";
+        final String ENTERPRISE_EAP = EnterpriseConfigurator.ENTERPRISE_EAP;
 
         /* Create a WifiConfig */
         WifiConfiguration selectedConfig = new WifiConfiguration();
@@ -319,59 +822,8 @@ public class WifiConnector {
         selectedConfig.allowedProtocols.set(WifiConfiguration.Protocol.RSN);
         selectedConfig.allowedProtocols.set(WifiConfiguration.Protocol.WPA);
 
-        Class[] wcClasses = WifiConfiguration.class.getClasses();
-
-        Class wcEnterpriseField = null;
-
-        for (Class wcClass : wcClasses) {
-            if (wcClass.getName().contains("EnterpriseField")) {
-                wcEnterpriseField = wcClass;
-                break;
-            }
-        }
-
-        Field wcefEap = null, wcefIdentity = null, wcefPassword = null;
-        Field[] wcefFields = WifiConfiguration.class.getFields();
-        // Dispatching Field vars
-        for (Field wcefField : wcefFields) {
-            if (wcefField.getName().equals("eap")) {
-                wcefEap = wcefField;
-            } else if (wcefField.getName().equals("identity")) {
-                wcefIdentity = wcefField;
-            } else if (wcefField.getName().equals("password")) {
-                wcefPassword = wcefField;
-            }
-
-        }
-
-        Method wcefSetValue = null;
-
-        if (wcEnterpriseField != null) {
-            for (Method m : wcEnterpriseField.getMethods()) {
-                System.out.println("methodName--->" + m.getName());
-                if (m.getName().trim().equals("setValue")) {
-                    wcefSetValue = m;
-                    break;
-                }
-
-            }
-        }
-        try {
-            /* EAP Method */
-            if (wcEnterpriseField != null) {
-                assert wcefEap != null;
-                assert wcefSetValue != null;
-                wcefSetValue.invoke(wcefEap.get(selectedConfig), ENTERPRISE_EAP);
-
-                assert wcefIdentity != null;
-                wcefSetValue.invoke(wcefIdentity.get(selectedConfig), userName);
-
-                assert wcefPassword != null;
-                wcefSetValue.invoke(wcefPassword.get(selectedConfig), passString);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        /* EAP Method */
+        EnterpriseConfigurator.get().apply(selectedConfig, ENTERPRISE_EAP, userName, passString);
 
         // readEap(selectedConfig);
         return selectedConfig;
@@ -0,0 +1,86 @@
+package com.youku.common.wifi.worker;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wi-Fi扫描/连接任务的执行器工厂
+ * <p>
+ * 所有WifiSearcher和WifiConnector的任务都运行在同一个有界线程池上，
+ * 无论请求有多少，线程数都保持不变。
+ */
+public final class WifiExecutors {
+
+    /**
+     * 默认线程池大小: 一个给扫描, 一个给连接
+     */
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static volatile ScheduledExecutorService sShared;
+
+    private WifiExecutors() {
+    }
+
+    /**
+     * 获取进程内共享的默认执行器
+     *
+     * @return ScheduledExecutorService
+     */
+    public static ScheduledExecutorService shared() {
+        ScheduledExecutorService executor = sShared;
+        if (executor == null) {
+            synchronized (WifiExecutors.class) {
+                executor = sShared;
+                if (executor == null) {
+                    executor = newBounded(DEFAULT_POOL_SIZE);
+                    sShared = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 创建一个新的有界执行器, 空闲线程会在超时后回收
+     *
+     * @param poolSize
+     *            最大线程数
+     * @return ScheduledExecutorService
+     */
+    public static ScheduledExecutorService newBounded(int poolSize) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(poolSize, new WorkerThreadFactory());
+        executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            allowCoreThreadTimeOut(executor);
+        }
+        return executor;
+    }
+
+    /**
+     * allowCoreThreadTimeOut是API 9才有的方法, Froyo上核心线程常驻
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private static void allowCoreThreadTimeOut(ScheduledThreadPoolExecutor executor) {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "wifi-worker-" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
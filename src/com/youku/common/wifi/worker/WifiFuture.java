@@ -0,0 +1,262 @@
+package com.youku.common.wifi.worker;
+
+import com.youku.common.wifi.listener.WifiCallback;
+import com.youku.common.wifi.model.ErrorType;
+import com.youku.common.wifi.model.WifiException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 异步扫描/连接请求的句柄
+ * <p>
+ * 支持取消、截止时间以及在指定Executor上回调。取消或超过截止时间时会立即注销请求占用的广播接收者。
+ *
+ * @param <T>
+ *            结果类型
+ */
+public class WifiFuture<T> implements Future<T> {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    private final List<CallbackEntry<? super T>> mCallbacks = new ArrayList<CallbackEntry<? super T>>();
+
+    private boolean mFinished = false;
+
+    // 因取消或超过截止时间而结束
+    private boolean mAborted = false;
+
+    private T mResult;
+
+    private ErrorType mError;
+
+    private Runnable mCancelHandler;
+
+    private ScheduledFuture<?> mDeadlineFuture;
+
+    WifiFuture() {
+    }
+
+    /**
+     * 设置取消或超时时用于释放资源的操作
+     */
+    void setCancelHandler(Runnable cancelHandler) {
+        boolean finished;
+        synchronized (this) {
+            mCancelHandler = cancelHandler;
+            finished = mAborted;
+        }
+        // 在设置之前已经取消
+        if (finished) {
+            cancelHandler.run();
+        }
+    }
+
+    /**
+     * 设置截止时间, 到期后以errorType失败并释放资源
+     */
+    void setDeadline(ScheduledExecutorService scheduler, long timeout, TimeUnit unit, final ErrorType errorType) {
+        if (timeout <= 0) {
+            return;
+        }
+        ScheduledFuture<?> deadline = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                abort(errorType);
+            }
+        }, timeout, unit);
+        synchronized (this) {
+            if (mFinished) {
+                deadline.cancel(false);
+            } else {
+                mDeadlineFuture = deadline;
+            }
+        }
+    }
+
+    boolean setResult(T result) {
+        return complete(result, null);
+    }
+
+    boolean setError(ErrorType errorType) {
+        return complete(null, errorType);
+    }
+
+    /**
+     * 以errorType结束并执行取消操作, 取消操作先于回调执行
+     */
+    boolean abort(ErrorType errorType) {
+        return complete(null, errorType, true);
+    }
+
+    private boolean complete(T result, ErrorType errorType) {
+        return complete(result, errorType, false);
+    }
+
+    private boolean complete(T result, ErrorType errorType, boolean aborted) {
+        List<CallbackEntry<? super T>> callbacks;
+        Runnable cancelHandler;
+        synchronized (this) {
+            if (mFinished) {
+                return false;
+            }
+            mFinished = true;
+            mAborted = aborted;
+            mResult = result;
+            mError = errorType;
+            if (mDeadlineFuture != null) {
+                mDeadlineFuture.cancel(false);
+                mDeadlineFuture = null;
+            }
+            cancelHandler = aborted ? mCancelHandler : null;
+            callbacks = new ArrayList<CallbackEntry<? super T>>(mCallbacks);
+            mCallbacks.clear();
+        }
+        if (cancelHandler != null) {
+            cancelHandler.run();
+        }
+        mDone.countDown();
+        for (CallbackEntry<? super T> entry : callbacks) {
+            dispatch(entry);
+        }
+        return true;
+    }
+
+    /**
+     * 添加结果回调, 在调用者的线程上执行
+     *
+     * @param callback
+     *            WifiCallback
+     * @return this
+     */
+    public WifiFuture<T> addCallback(WifiCallback<? super T> callback) {
+        return addCallback(callback, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * 添加结果回调, 已完成时立即回调
+     *
+     * @param callback
+     *            WifiCallback
+     * @param executor
+     *            执行回调的Executor
+     * @return this
+     */
+    public WifiFuture<T> addCallback(WifiCallback<? super T> callback, Executor executor) {
+        CallbackEntry<? super T> entry = newEntry(callback, executor);
+        synchronized (this) {
+            if (!mFinished) {
+                mCallbacks.add(entry);
+                return this;
+            }
+        }
+        dispatch(entry);
+        return this;
+    }
+
+    private static <C> CallbackEntry<C> newEntry(WifiCallback<C> callback, Executor executor) {
+        return new CallbackEntry<C>(callback, executor);
+    }
+
+    private void dispatch(final CallbackEntry<? super T> entry) {
+        final T result;
+        final ErrorType error;
+        synchronized (this) {
+            result = mResult;
+            error = mError;
+        }
+        entry.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (error == null) {
+                    entry.callback.onSuccess(result);
+                } else {
+                    entry.callback.onFailure(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * 取消请求, 回调收到{@link ErrorType#CANCELLED}
+     *
+     * @param mayInterruptIfRunning
+     *            无作用, 请求不占用线程
+     * @return 是否取消成功
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return abort(ErrorType.CANCELLED);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mFinished && mError == ErrorType.CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mFinished;
+    }
+
+    /**
+     * 失败原因
+     *
+     * @return ErrorType, 未完成或成功时返回null
+     */
+    public synchronized ErrorType getError() {
+        return mError;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        mDone.await();
+        return getResult();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private synchronized T getResult() throws ExecutionException {
+        if (mError == ErrorType.CANCELLED) {
+            throw new CancellationException();
+        }
+        if (mError != null) {
+            throw new ExecutionException(new WifiException(mError));
+        }
+        return mResult;
+    }
+
+    private static class CallbackEntry<T> {
+
+        final WifiCallback<T> callback;
+
+        final Executor executor;
+
+        CallbackEntry(WifiCallback<T> callback, Executor executor) {
+            this.callback = callback;
+            this.executor = executor;
+        }
+    }
+}
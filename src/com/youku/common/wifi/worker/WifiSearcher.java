@@ -1,50 +1,94 @@
-
 package com.youku.common.wifi.worker;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiManager;
+import com.youku.common.wifi.backend.AndroidWifiBackend;
+import com.youku.common.wifi.backend.WifiBackend;
+import com.youku.common.wifi.backend.WifiEvent;
+import com.youku.common.wifi.listener.WifiCachedSearchListener;
+import com.youku.common.wifi.listener.WifiScanDiffListener;
 import com.youku.common.wifi.listener.WifiSearchListener;
 import com.youku.common.wifi.model.AccessPoint;
 import com.youku.common.wifi.model.ApStatus;
 import com.youku.common.wifi.model.ErrorType;
+import com.youku.common.wifi.model.ScanDiff;
+import com.youku.common.wifi.model.ScanPriority;
+import com.youku.common.wifi.model.ScanSnapshot;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Wi-Fi扫描类 Created by MoiTempete.
+ * <p>
+ * 同一时间最多只有一次扫描在进行, 扫描期间到达的请求会合并到当前扫描中,
+ * 扫描完成后所有请求者得到同一份结果。新的扫描需要从{@link ScanBudget}获取令牌,
+ * 预算不足时返回最近一次的扫描结果。
  */
 public class WifiSearcher {
     private static final int WIFI_SEARCH_TIMEOUT = 20; // 扫描WIFI的超时时间
 
-    private Context mContext;
+    private WifiBackend mBackend;
 
-    private WifiManager mWifiManager;
+    private ScheduledExecutorService mExecutor;
 
     private WiFiScanReceiver mWifiReceiver;
 
-    private Lock mLock;
+    private WifiSearchListener mWifiSearchListener;
 
-    private Condition mCondition;
+    private final Object mScanLock = new Object();
 
-    private WifiSearchListener mWifiSearchListener;
+    // 等待当前扫描结果的监听者
+    private final List<WifiSearchListener> mPendingListeners = new ArrayList<WifiSearchListener>();
+
+    private boolean mIsScanning = false;
+
+    // 本次扫描是否有不带监听者的后台刷新请求, 有则不因监听者全部取消而中止
+    private boolean mIsBackgroundScan = false;
+
+    // 每次扫描递增, 用于丢弃过期的超时任务
+    private int mScanGeneration = 0;
+
+    private boolean mIsReceiverRegistered = false;
+
+    private ScheduledFuture<?> mTimeoutFuture;
+
+    private final ScanResultCache mCache;
 
-    private boolean mIsWifiScanCompleted = false;
+    private volatile ScanBudget mBudget;
+
+    private volatile ScanHistoryRecorder mHistoryRecorder;
+
+    private final RssiTracker mRssiTracker = new RssiTracker();
+
+    private final List<DiffRegistration> mDiffListeners = new CopyOnWriteArrayList<DiffRegistration>();
+
+    // 上一次扫描结果的BSSID索引, 仅在有增量监听者时维护
+    private Map<String, AccessPoint> mDiffBaseline;
 
     public WifiSearcher(Context context, WifiManager wifiManager, WifiSearchListener listener) {
-        mContext = context;
+        this(context, wifiManager, listener, WifiExecutors.shared());
+    }
+
+    public WifiSearcher(Context context, WifiManager wifiManager, WifiSearchListener listener,
+            ScheduledExecutorService executor) {
+        this(new AndroidWifiBackend(context, wifiManager), listener, executor);
+    }
+
+    public WifiSearcher(WifiBackend backend, WifiSearchListener listener, ScheduledExecutorService executor) {
+        mBackend = backend;
+        mExecutor = executor;
         mWifiSearchListener = listener;
-        mLock = new ReentrantLock();
-        mCondition = mLock.newCondition();
-        mWifiManager = wifiManager;
+        mCache = new ScanResultCache(backend);
+        mBudget = ScanBudget.forBackend(backend);
         mWifiReceiver = new WiFiScanReceiver();
     }
 
@@ -56,67 +100,504 @@ public class WifiSearcher {
         return mWifiSearchListener;
     }
 
+    /**
+     * 设置扫描预算, 默认为{@link ScanBudget#forBackend(WifiBackend)}
+     *
+     * @param budget
+     *            ScanBudget
+     */
+    public void setScanBudget(ScanBudget budget) {
+        mBudget = budget;
+    }
+
+    public ScanBudget getScanBudget() {
+        return mBudget;
+    }
+
+    /**
+     * 设置扫描历史记录器, 每次成功的扫描结果都会追加到记录中
+     *
+     * @param recorder
+     *            ScanHistoryRecorder, 为null时不再记录
+     */
+    public void setHistoryRecorder(ScanHistoryRecorder recorder) {
+        mHistoryRecorder = recorder;
+    }
+
+    public ScanHistoryRecorder getHistoryRecorder() {
+        return mHistoryRecorder;
+    }
+
+    /**
+     * 使用{@link #setListener(WifiSearchListener)}设置的监听者扫描
+     */
     public void search() {
-        new Thread(new Runnable() {
+        search(mWifiSearchListener);
+    }
+
+    /**
+     * 以{@link ScanPriority#NORMAL}扫描Wi-Fi
+     *
+     * @param listener
+     *            WifiSearchListener
+     * @see #search(WifiSearchListener, ScanPriority)
+     */
+    public void search(WifiSearchListener listener) {
+        search(listener, ScanPriority.NORMAL);
+    }
+
+    /**
+     * 扫描Wi-Fi, 如果已有扫描在进行则加入该次扫描。
+     * 扫描预算不足时返回缓存结果, {@link WifiCachedSearchListener}会收到onSearchWifiCached;
+     * 没有缓存时以{@link ErrorType#SCAN_THROTTLED}失败。
+     *
+     * @param listener
+     *            WifiSearchListener
+     * @param priority
+     *            请求优先级
+     */
+    public void search(WifiSearchListener listener, ScanPriority priority) {
+        final int generation;
+        synchronized (mScanLock) {
+            if (mIsScanning) {
+                // 加入当前扫描不消耗预算
+                if (listener != null) {
+                    mPendingListeners.add(listener);
+                }
+                mIsBackgroundScan |= (listener == null);
+                return;
+            }
+            if (!mBudget.tryAcquire(priority)) {
+                generation = -1;
+            } else {
+                if (listener != null) {
+                    mPendingListeners.add(listener);
+                }
+                mIsScanning = true;
+                mIsBackgroundScan = (listener == null);
+                generation = ++mScanGeneration;
+            }
+        }
+        if (generation < 0) {
+            deliverThrottled(listener);
+            return;
+        }
+        mExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                // 如果WIFI没有打开，则打开WIFI
-                if (!mWifiManager.isWifiEnabled()) {
-                    mWifiManager.setWifiEnabled(true);
+                startScan(generation);
+            }
+        });
+    }
+
+    /**
+     * 取消listener的扫描请求, 如果当前扫描已没有任何等待者则中止扫描并注销广播接收者
+     *
+     * @param listener
+     *            WifiSearchListener
+     */
+    public void cancel(WifiSearchListener listener) {
+        synchronized (mScanLock) {
+            mPendingListeners.remove(listener);
+            if (!mIsScanning || !mPendingListeners.isEmpty() || mIsBackgroundScan || !mDiffListeners.isEmpty()) {
+                return;
+            }
+            mIsScanning = false;
+            releaseScanLocked();
+        }
+    }
+
+    /**
+     * 异步扫描, 并发的请求会合并为一次扫描
+     *
+     * @param deadline
+     *            截止时间(毫秒), 到期后以{@link ErrorType#SEARCH_WIFI_TIMEOUT}失败, 不大于0时不设截止时间
+     * @return WifiFuture, 取消后会移除本次请求
+     */
+    public WifiFuture<List<AccessPoint>> searchAsync(long deadline) {
+        final WifiFuture<List<AccessPoint>> future = new WifiFuture<List<AccessPoint>>();
+        final WifiSearchListener listener = new WifiSearchListener() {
+            @Override
+            public void onSearchWifiFailed(ErrorType errorType) {
+                future.setError(errorType);
+            }
+
+            @Override
+            public void onSearchWifiSuccess(List<AccessPoint> results) {
+                future.setResult(results);
+            }
+        };
+        future.setDeadline(mExecutor, deadline, TimeUnit.MILLISECONDS, ErrorType.SEARCH_WIFI_TIMEOUT);
+        future.setCancelHandler(new Runnable() {
+            @Override
+            public void run() {
+                cancel(listener);
+            }
+        });
+        search(listener);
+        return future;
+    }
+
+    /**
+     * 使用缓存有效期{@link ScanResultCache#getMaxAge()}扫描
+     *
+     * @param listener
+     *            WifiSearchListener
+     * @see #search(WifiSearchListener, long)
+     */
+    public void searchCached(WifiSearchListener listener) {
+        search(listener, mCache.getMaxAge());
+    }
+
+    /**
+     * 扫描Wi-Fi, 如果缓存的结果不超过maxAge则直接在当前线程返回缓存结果。
+     * 缓存已超过maxAge一半时会在后台重新扫描以刷新缓存。
+     *
+     * @param listener
+     *            WifiSearchListener
+     * @param maxAge
+     *            可接受的最大缓存时间(毫秒)
+     */
+    public void search(WifiSearchListener listener, long maxAge) {
+        long age = mCache.getAge();
+        List<AccessPoint> cached = mCache.get(maxAge);
+        if (cached == null) {
+            mCache.recordMiss();
+            search(listener);
+            return;
+        }
+        mCache.recordHit();
+        mRssiTracker.attach(cached);
+        if (age > maxAge / 2 && !isScanning()) {
+            mCache.recordRefresh();
+            search(null, ScanPriority.LOW);
+        }
+        if (listener != null) {
+            listener.onSearchWifiSuccess(cached);
+        }
+    }
+
+    /**
+     * 添加增量结果监听者, 之后每次扫描完成都会收到与上一次扫描的差异
+     *
+     * @param listener
+     *            WifiScanDiffListener
+     */
+    public void addDiffListener(WifiScanDiffListener listener) {
+        for (DiffRegistration registration : mDiffListeners) {
+            if (registration.listener == listener) {
+                return;
+            }
+        }
+        mDiffListeners.add(new DiffRegistration(listener));
+    }
+
+    /**
+     * 移除增量结果监听者
+     *
+     * @param listener
+     *            WifiScanDiffListener
+     */
+    public void removeDiffListener(WifiScanDiffListener listener) {
+        for (DiffRegistration registration : mDiffListeners) {
+            if (registration.listener == listener) {
+                mDiffListeners.remove(registration);
+            }
+        }
+        if (mDiffListeners.isEmpty()) {
+            synchronized (mDiffListeners) {
+                mDiffBaseline = null;
+            }
+        }
+    }
+
+    /**
+     * 最近一次扫描结果的列式快照
+     *
+     * @return ScanSnapshot, 尚未扫描时返回null
+     */
+    public ScanSnapshot getLastSnapshot() {
+        return mCache.getSnapshot();
+    }
+
+    /**
+     * 扫描结果缓存
+     *
+     * @return ScanResultCache
+     */
+    public ScanResultCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * 跨扫描的信号统计
+     *
+     * @return RssiTracker
+     */
+    public RssiTracker getRssiTracker() {
+        return mRssiTracker;
+    }
+
+    /**
+     * 是否有扫描正在进行
+     *
+     * @return result
+     */
+    public boolean isScanning() {
+        synchronized (mScanLock) {
+            return mIsScanning;
+        }
+    }
+
+    private void startScan(final int generation) {
+        // 如果WIFI没有打开，则打开WIFI
+        if (!mBackend.isWifiEnabled()) {
+            mBackend.setWifiEnabled(true);
+        }
+        synchronized (mScanLock) {
+            if (!mIsScanning || generation != mScanGeneration) {
+                return;
+            }
+            // 注册接收WIFI扫描结果的监听类对象
+            mBackend.addEventListener(mWifiReceiver);
+            mIsReceiverRegistered = true;
+            // 超时后通知所有等待者, 不占用线程等待
+            mTimeoutFuture = mExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    finishScan(generation, null, null, ErrorType.SEARCH_WIFI_TIMEOUT);
                 }
-                // 注册接收WIFI扫描结果的监听类对象
-                mContext.registerReceiver(mWifiReceiver, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
-                // 开始扫描
-                mWifiManager.startScan();
-
-                mLock.lock();
-                // 阻塞等待扫描结果
-                try {
-                    mIsWifiScanCompleted = false;
-                    mCondition.await(WIFI_SEARCH_TIMEOUT, TimeUnit.SECONDS);
-                    if (!mIsWifiScanCompleted) {
-                        mWifiSearchListener.onSearchWifiFailed(ErrorType.SEARCH_WIFI_TIMEOUT);
+            }, WIFI_SEARCH_TIMEOUT, TimeUnit.SECONDS);
+        }
+        // 开始扫描, 被系统限流时立即结束
+        if (!mBackend.startScan()) {
+            mBudget.onThrottled();
+            finishScan(generation, null, null, ErrorType.SCAN_THROTTLED);
+        }
+    }
+
+    /**
+     * 预算不足时把缓存结果交给listener
+     */
+    private void deliverThrottled(WifiSearchListener listener) {
+        if (listener == null) {
+            return;
+        }
+        ScanSnapshot snapshot = mCache.getSnapshot();
+        if (snapshot == null) {
+            listener.onSearchWifiFailed(ErrorType.SCAN_THROTTLED);
+            return;
+        }
+        List<AccessPoint> results = snapshot.toAccessPoints();
+        mRssiTracker.attach(results);
+        if (listener instanceof WifiCachedSearchListener) {
+            long age = mBackend.elapsedRealtime() - snapshot.getTimestamp();
+            ((WifiCachedSearchListener) listener).onSearchWifiCached(results, age);
+        } else {
+            listener.onSearchWifiSuccess(results);
+        }
+    }
+
+    // 取消超时任务并注销广播接收者, 需持有mScanLock
+    private void releaseScanLocked() {
+        if (mTimeoutFuture != null) {
+            mTimeoutFuture.cancel(false);
+            mTimeoutFuture = null;
+        }
+        // 删除注册的监听类对象
+        if (mIsReceiverRegistered) {
+            mBackend.removeEventListener(mWifiReceiver);
+            mIsReceiverRegistered = false;
+        }
+    }
+
+    /**
+     * 结束本次扫描并把结果分发给所有等待者
+     */
+    private void finishScan(int generation, ScanSnapshot snapshot, List<AccessPoint> results, ErrorType errorType) {
+        List<WifiSearchListener> listeners;
+        synchronized (mScanLock) {
+            if (!mIsScanning || generation != mScanGeneration) {
+                return;
+            }
+            mIsScanning = false;
+            releaseScanLocked();
+            listeners = new ArrayList<WifiSearchListener>(mPendingListeners);
+            mPendingListeners.clear();
+        }
+        if (errorType == null) {
+            mCache.put(snapshot);
+            mRssiTracker.update(snapshot);
+            mRssiTracker.attach(results);
+            ScanHistoryRecorder recorder = mHistoryRecorder;
+            if (recorder != null) {
+                recorder.record(snapshot);
+            }
+        }
+        if (errorType == ErrorType.SCAN_THROTTLED) {
+            for (WifiSearchListener listener : listeners) {
+                deliverThrottled(listener);
+            }
+            return;
+        }
+        dispatchDiff(results, errorType);
+        for (int i = 0; i < listeners.size(); i++) {
+            WifiSearchListener listener = listeners.get(i);
+            if (errorType != null) {
+                listener.onSearchWifiFailed(errorType);
+            } else {
+                // 每个监听者拿到独立的列表, 其中的AccessPoint不复制, 由所有监听者共享
+                listener.onSearchWifiSuccess(i == 0 ? results : new ArrayList<AccessPoint>(results));
+            }
+        }
+    }
+
+    /**
+     * 计算一次差异并分发给所有增量监听者, 新注册的监听者收到全部AP作为新增
+     */
+    private void dispatchDiff(List<AccessPoint> results, ErrorType errorType) {
+        if (mDiffListeners.isEmpty()) {
+            return;
+        }
+        if (errorType == ErrorType.NO_WIFI_FOUND) {
+            // 没有任何AP, 相当于全部消失
+            results = Collections.emptyList();
+        } else if (errorType != null) {
+            for (DiffRegistration registration : mDiffListeners) {
+                registration.listener.onSearchWifiFailed(errorType);
+            }
+            return;
+        }
+        ScanDiff diff = null;
+        ScanDiff full = null;
+        synchronized (mDiffListeners) {
+            Map<String, AccessPoint> current = ScanDiff.index(results);
+            for (DiffRegistration registration : mDiffListeners) {
+                if (registration.primed && mDiffBaseline != null) {
+                    if (diff == null) {
+                        diff = ScanDiff.compute(mDiffBaseline, results);
+                    }
+                    registration.pending = diff;
+                } else {
+                    if (full == null) {
+                        full = ScanDiff.compute(Collections.<String, AccessPoint> emptyMap(), results);
                     }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    registration.pending = full;
+                    registration.primed = true;
                 }
-                mLock.unlock();
-                // 删除注册的监听类对象
-                mContext.unregisterReceiver(mWifiReceiver);
             }
-        }).start();
+            mDiffBaseline = current;
+        }
+        for (DiffRegistration registration : mDiffListeners) {
+            ScanDiff pending = registration.pending;
+            registration.pending = null;
+            if (pending != null) {
+                registration.listener.onScanDiff(pending);
+            }
+        }
+    }
+
+    private static class DiffRegistration {
+
+        final WifiScanDiffListener listener;
+
+        boolean primed;
+
+        ScanDiff pending;
+
+        DiffRegistration(WifiScanDiffListener listener) {
+            this.listener = listener;
+        }
     }
 
     // 系统WIFI扫描结果消息的接收者
-    protected class WiFiScanReceiver extends BroadcastReceiver {
-        public void onReceive(Context c, Intent intent) {
-            // 提取扫描结果
-            List<ScanResult> scanResults = mWifiManager.getScanResults();
-            List<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
-            for (ScanResult scanResult : scanResults) {
-                AccessPoint ap = AccessPoint.loadData(scanResult);
-                if (isCurrent(scanResult)) {
-                    ap.status = ApStatus.CURRENT;
-                    accessPoints.add(0, ap);
-                } else {
-                    ap.status = ApStatus.ENABLED;
-                    accessPoints.add(ap);
-                }
+    protected class WiFiScanReceiver implements WifiEvent.Listener {
+        @Override
+        public void onWifiEvent(WifiEvent event) {
+            if (event.type != WifiEvent.Type.SCAN_RESULTS_AVAILABLE) {
+                return;
+            }
+            final int generation;
+            synchronized (mScanLock) {
+                generation = mScanGeneration;
             }
+            // 提取扫描结果
+            List<ScanResult> scanResults = mBackend.getScanResults();
+            // 每批结果只读取一次当前连接
+            String currentBssid = mBackend.getCurrentBssid();
+            ScanSnapshot snapshot = ScanSnapshot.from(scanResults, currentBssid, mBackend.elapsedRealtime());
+            List<AccessPoint> accessPoints = toAccessPoints(scanResults, currentBssid);
             // 检测扫描结果
             if (scanResults.isEmpty()) {
-                mWifiSearchListener.onSearchWifiFailed(ErrorType.NO_WIFI_FOUND);
+                finishScan(generation, snapshot, null, ErrorType.NO_WIFI_FOUND);
             } else {
-                mWifiSearchListener.onSearchWifiSuccess(accessPoints);
+                finishScan(generation, snapshot, accessPoints, null);
+            }
+        }
+    }
+
+    /**
+     * 把扫描结果转换为AccessPoint, 当前连接的AP排在最前
+     *
+     * @param scanResults
+     *            扫描结果
+     * @return 新的列表
+     */
+    protected List<AccessPoint> toAccessPoints(List<ScanResult> scanResults) {
+        return toAccessPoints(scanResults, mBackend.getCurrentBssid());
+    }
+
+    /**
+     * 把扫描结果转换为AccessPoint, 当前连接的AP排在最前, 其余保持扫描顺序
+     * <p>
+     * 先找出当前AP再按顺序填入预先分配大小的列表, 不移动元素, 每个结果只创建一个AccessPoint。
+     *
+     * @param scanResults
+     *            扫描结果
+     * @param currentBssid
+     *            当前连接的BSSID, 可为null
+     * @return 新的列表
+     */
+    static List<AccessPoint> toAccessPoints(List<ScanResult> scanResults, String currentBssid) {
+        if (!(scanResults instanceof RandomAccess)) {
+            scanResults = new ArrayList<ScanResult>(scanResults);
+        }
+        int size = scanResults.size();
+        List<AccessPoint> accessPoints = new ArrayList<AccessPoint>(size);
+        // 当前AP的位置, 没有时为-1
+        int current = -1;
+        if (currentBssid != null) {
+            for (int i = 0; i < size; i++) {
+                if (currentBssid.equals(scanResults.get(i).BSSID)) {
+                    current = i;
+                    break;
+                }
+            }
+        }
+        if (current >= 0) {
+            AccessPoint ap = AccessPoint.loadData(scanResults.get(current));
+            ap.status = ApStatus.CURRENT;
+            accessPoints.add(ap);
+        }
+        for (int i = 0; i < size; i++) {
+            if (i == current) {
+                continue;
             }
-            mLock.lock();
-            mIsWifiScanCompleted = true;
-            mCondition.signalAll();
-            mLock.unlock();
+            AccessPoint ap = AccessPoint.loadData(scanResults.get(i));
+            ap.status = ApStatus.ENABLED;
+            accessPoints.add(ap);
         }
+        return accessPoints;
     }
 
+    /**
+     * 单个结果是否为当前连接, 每次调用都会读取一次连接信息, 批量转换时不再使用
+     *
+     * @param scanResult
+     *            ScanResult
+     * @return result
+     */
     protected boolean isCurrent(ScanResult scanResult) {
-        return scanResult.BSSID.equals(mWifiManager.getConnectionInfo().getBSSID());
+        return scanResult.BSSID.equals(mBackend.getCurrentBssid());
     }
 }